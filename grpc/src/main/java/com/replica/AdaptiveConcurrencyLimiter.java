@@ -0,0 +1,148 @@
+package com.replica;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import com.timgroup.statsd.StatsDClient;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of calls in flight to a limit that adapts to observed latency, shedding calls
+ * over the limit with UNAVAILABLE (which clients treat as retryable) instead of queueing them
+ * until they time out.
+ *
+ * The limit is adjusted with a latency gradient: each successful call's latency is compared to a
+ * long-term average latency of calls to the same method, as methods differ widely in how long they
+ * take (e.g. a matrix call vs. a single street route), so a mix of methods isn't mistaken for
+ * slowing down. While calls are as fast as usual the limit grows (by about the square
+ * root of the limit, as long as the limit is actually being used); as calls slow down because work
+ * is queueing, it shrinks in proportion. Changes are smoothed, and the limit is kept between
+ * minLimit and maxLimit.
+ */
+public class AdaptiveConcurrencyLimiter implements ServerInterceptor {
+
+    // Weight of each sample in the long-term average latency
+    private static final double LONG_TERM_WEIGHT = 1.0 / 500;
+    // Calls can take this much longer than the long-term average before the limit shrinks
+    private static final double TOLERANCE = 1.5;
+    // Fraction of each computed change applied to the limit
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final StatsDClient statsDClient;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private double limit;
+    // Long-term average latency by full method name
+    private final Map<String, Double> longTermLatencyNanosByMethod = Maps.newHashMap();
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, StatsDClient statsDClient) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Concurrency limits must satisfy 1 <= min <= initial <= max, got min "
+                    + minLimit + ", initial " + initialLimit + ", max " + maxLimit);
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.statsDClient = statsDClient;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        int callsInFlight = inFlight.incrementAndGet();
+        if (callsInFlight > getLimit()) {
+            inFlight.decrementAndGet();
+            if (statsDClient != null) {
+                statsDClient.incrementCounter("routers.concurrency_limit.shed");
+            }
+            call.close(Status.UNAVAILABLE.withDescription("Router is overloaded; retry with backoff"), new Metadata());
+            return new ServerCall.Listener<ReqT>() {};
+        }
+
+        String fullMethodName = call.getMethodDescriptor().getFullMethodName();
+        long startNanos = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean();
+        // Only calls that complete successfully are used as latency samples; failed and cancelled
+        // calls just release their slot
+        AtomicBoolean succeeded = new AtomicBoolean();
+        ServerCall<ReqT, RespT> statusRecordingCall = new SimpleForwardingServerCall<ReqT, RespT>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                succeeded.set(status.isOk());
+                super.close(status, trailers);
+            }
+        };
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                if (succeeded.get()) {
+                    onSample(fullMethodName, System.nanoTime() - startNanos, callsInFlight);
+                }
+            }
+        };
+
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(statusRecordingCall, headers);
+        } catch (RuntimeException e) {
+            release.run();
+            throw e;
+        }
+        return new SimpleForwardingServerCallListener<ReqT>(listener) {
+            @Override
+            public void onCancel() {
+                try {
+                    super.onCancel();
+                } finally {
+                    release.run();
+                }
+            }
+
+            @Override
+            public void onComplete() {
+                try {
+                    super.onComplete();
+                } finally {
+                    release.run();
+                }
+            }
+        };
+    }
+
+    @VisibleForTesting
+    synchronized void onSample(String fullMethodName, long latencyNanos, int callsInFlight) {
+        Double previousLatencyNanos = longTermLatencyNanosByMethod.get(fullMethodName);
+        double longTermLatencyNanos = previousLatencyNanos == null ? latencyNanos
+                : previousLatencyNanos + (latencyNanos - previousLatencyNanos) * LONG_TERM_WEIGHT;
+        longTermLatencyNanosByMethod.put(fullMethodName, longTermLatencyNanos);
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longTermLatencyNanos / latencyNanos));
+        // Don't grow the limit while well under it, as latency then says nothing about whether more
+        // calls could be handled
+        double queueAllowance = callsInFlight < limit / 2 ? 0 : Math.sqrt(limit);
+        double newLimit = limit * gradient + queueAllowance;
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+
+    public void report(StatsDClient statsDClient) {
+        statsDClient.gauge("routers.concurrency_limit.limit", getLimit());
+        statsDClient.gauge("routers.concurrency_limit.in_flight", getInFlight());
+    }
+}
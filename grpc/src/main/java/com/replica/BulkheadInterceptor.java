@@ -0,0 +1,143 @@
+package com.replica;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.timgroup.statsd.StatsDClient;
+import io.grpc.Context;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs each configured RPC method on its own bulkhead: a separate pool of threads, with a bound on
+ * the number of calls running or queued on it. Calls beyond that bound are rejected immediately
+ * with RESOURCE_EXHAUSTED, so e.g. a burst of large matrix calls can't take every thread away
+ * from street routing. Methods without a bulkhead run on the server's executor, as usual.
+ *
+ * The call's listener callbacks (in which the service method is invoked) are moved onto the
+ * bulkhead's pool in order, through a sequential executor per call.
+ */
+public class BulkheadInterceptor implements ServerInterceptor {
+
+    public static class Bulkhead {
+        private final InstrumentedExecutor executor;
+        private final Semaphore permits;
+        private final int maxCalls;
+
+        /**
+         * @param threads number of calls that can run at once
+         * @param queueSize number of calls that can wait for a thread before further calls are rejected
+         */
+        public Bulkhead(String name, int threads, int queueSize) {
+            if (queueSize < 0) {
+                throw new IllegalArgumentException("Bulkhead " + name + " queue size must not be negative, got " + queueSize);
+            }
+            this.executor = InstrumentedExecutor.create(name, InstrumentedExecutor.Strategy.FIXED, threads);
+            this.maxCalls = threads + queueSize;
+            this.permits = new Semaphore(maxCalls);
+        }
+
+        public InstrumentedExecutor getExecutor() {
+            return executor;
+        }
+
+        public String getName() {
+            return executor.getName();
+        }
+
+        public int getCallsInUse() {
+            return maxCalls - permits.availablePermits();
+        }
+
+        public void report(StatsDClient statsDClient) {
+            executor.report(statsDClient);
+            statsDClient.gauge("routers.bulkhead.saturation", (double) getCallsInUse() / maxCalls,
+                    "executor:" + getName());
+        }
+    }
+
+    private final Map<String, Bulkhead> bulkheadsByMethod = Maps.newHashMap();
+    private final StatsDClient statsDClient;
+
+    public BulkheadInterceptor(StatsDClient statsDClient) {
+        this.statsDClient = statsDClient;
+    }
+
+    public BulkheadInterceptor addBulkhead(String fullMethodName, Bulkhead bulkhead) {
+        bulkheadsByMethod.put(fullMethodName, bulkhead);
+        return this;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        Bulkhead bulkhead = bulkheadsByMethod.get(call.getMethodDescriptor().getFullMethodName());
+        if (bulkhead == null) {
+            return next.startCall(call, headers);
+        }
+        if (!bulkhead.permits.tryAcquire()) {
+            if (statsDClient != null) {
+                statsDClient.incrementCounter("routers.bulkhead.rejected", "executor:" + bulkhead.getName());
+            }
+            call.close(Status.RESOURCE_EXHAUSTED.withDescription("Too many concurrent "
+                    + call.getMethodDescriptor().getFullMethodName() + " calls; try again later"), new Metadata());
+            return new ServerCall.Listener<ReqT>() {};
+        }
+
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(call, headers);
+        } catch (RuntimeException e) {
+            bulkhead.permits.release();
+            throw e;
+        }
+        // Callbacks run in the call's Context, which is current when they're dispatched, so the service
+        // can see the call's deadline and cancellation
+        Executor callExecutor = Context.currentContextExecutor(MoreExecutors.newSequentialExecutor(bulkhead.executor));
+        return new SimpleForwardingServerCallListener<ReqT>(listener) {
+            @Override
+            public void onMessage(ReqT message) {
+                callExecutor.execute(() -> super.onMessage(message));
+            }
+
+            @Override
+            public void onHalfClose() {
+                callExecutor.execute(super::onHalfClose);
+            }
+
+            @Override
+            public void onReady() {
+                callExecutor.execute(super::onReady);
+            }
+
+            @Override
+            public void onCancel() {
+                callExecutor.execute(() -> {
+                    try {
+                        super.onCancel();
+                    } finally {
+                        bulkhead.permits.release();
+                    }
+                });
+            }
+
+            @Override
+            public void onComplete() {
+                callExecutor.execute(() -> {
+                    try {
+                        super.onComplete();
+                    } finally {
+                        bulkhead.permits.release();
+                    }
+                });
+            }
+        };
+    }
+}
@@ -0,0 +1,133 @@
+package com.replica;
+
+import com.timgroup.statsd.StatsDClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor for gRPC calls, backed by one of several strategies, which tracks the number of tasks
+ * waiting to run (queue depth) and running (active threads) for reporting to statsd.
+ *
+ * Strategies are selected by code, so they can be set through RouterServer's integer-valued
+ * SETTABLE_PARAMETERS:
+ * 0 = FIXED: fixed pool of the given number of threads
+ * 1 = WORK_STEALING: ForkJoinPool with the given parallelism
+ * 2 = VIRTUAL: new virtual thread per task, when running on a JDK that supports them; otherwise
+ *     falls back to FIXED
+ */
+public class InstrumentedExecutor implements Executor {
+    private static final Logger logger = LoggerFactory.getLogger(InstrumentedExecutor.class);
+
+    public enum Strategy {
+        FIXED, WORK_STEALING, VIRTUAL;
+
+        public static Strategy fromCode(int code) {
+            if (code < 0 || code >= values().length) {
+                throw new IllegalArgumentException("Unknown executor strategy code " + code
+                        + "; must be 0 (fixed), 1 (work-stealing) or 2 (virtual threads)");
+            }
+            return values()[code];
+        }
+    }
+
+    private final String name;
+    private final Strategy strategy;
+    private final ExecutorService delegate;
+    private final AtomicInteger queuedTasks = new AtomicInteger();
+    private final AtomicInteger activeTasks = new AtomicInteger();
+
+    private InstrumentedExecutor(String name, Strategy strategy, ExecutorService delegate) {
+        this.name = name;
+        this.strategy = strategy;
+        this.delegate = delegate;
+    }
+
+    public static InstrumentedExecutor create(String name, Strategy strategy, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Executor " + name + " needs at least one thread, got " + threads);
+        }
+        ExecutorService delegate;
+        switch (strategy) {
+            case WORK_STEALING:
+                delegate = new ForkJoinPool(threads);
+                break;
+            case VIRTUAL:
+                delegate = newVirtualThreadExecutor();
+                if (delegate == null) {
+                    logger.warn("Virtual threads aren't supported by this JDK; using a fixed pool of "
+                            + threads + " threads for executor " + name);
+                    strategy = Strategy.FIXED;
+                    delegate = Executors.newFixedThreadPool(threads);
+                }
+                break;
+            default:
+                delegate = Executors.newFixedThreadPool(threads);
+        }
+        logger.info("Created " + strategy + " executor " + name
+                + (strategy == Strategy.VIRTUAL ? "" : " with " + threads + " threads"));
+        return new InstrumentedExecutor(name, strategy, delegate);
+    }
+
+    // Looked up reflectively, as the code is compiled for a JDK without virtual threads
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        queuedTasks.incrementAndGet();
+        try {
+            delegate.execute(() -> {
+                queuedTasks.decrementAndGet();
+                activeTasks.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    activeTasks.decrementAndGet();
+                }
+            });
+        } catch (RuntimeException e) {
+            queuedTasks.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The strategy actually in use, which is FIXED if VIRTUAL was requested but isn't supported
+     */
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public int getQueuedTasks() {
+        return queuedTasks.get();
+    }
+
+    public int getActiveTasks() {
+        return activeTasks.get();
+    }
+
+    public void report(StatsDClient statsDClient) {
+        String[] tags = {"executor:" + name};
+        statsDClient.gauge("routers.executor.queue_depth", getQueuedTasks(), tags);
+        statsDClient.gauge("routers.executor.active_threads", getActiveTasks(), tags);
+    }
+
+    public void shutdown() {
+        delegate.shutdown();
+    }
+}
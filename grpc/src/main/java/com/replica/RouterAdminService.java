@@ -0,0 +1,87 @@
+package com.replica;
+
+import com.google.protobuf.StringValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import com.google.rpc.Code;
+import com.google.rpc.Status;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.protobuf.StatusProto;
+import io.grpc.stub.ServerCalls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Management RPCs for RouterServer. These are defined with protobuf's well-known types rather than
+ * in the router IDL, so they can be served without regenerating the Router service:
+ *
+ * router.RouterAdmin/ReloadGraph: takes a Struct with string fields `graph_location` (required) and
+ *     `link_mappings_db` (optional; defaults to the path used at startup). Starts loading the graph
+ *     in the background and returns immediately with a StringValue message; the new graph is
+ *     swapped in once it's loaded and warmed up. Fails with INVALID_ARGUMENT if graph_location
+ *     doesn't hold an already-imported graph under the configured root (nothing is imported), and
+ *     with FAILED_PRECONDITION if a reload is already in progress.
+ */
+public class RouterAdminService {
+    private static final Logger logger = LoggerFactory.getLogger(RouterAdminService.class);
+
+    public static final String SERVICE_NAME = "router.RouterAdmin";
+
+    public static final MethodDescriptor<Struct, StringValue> RELOAD_GRAPH_METHOD =
+            MethodDescriptor.<Struct, StringValue>newBuilder()
+                    .setType(MethodDescriptor.MethodType.UNARY)
+                    .setFullMethodName(MethodDescriptor.generateFullMethodName(SERVICE_NAME, "ReloadGraph"))
+                    .setRequestMarshaller(ProtoUtils.marshaller(Struct.getDefaultInstance()))
+                    .setResponseMarshaller(ProtoUtils.marshaller(StringValue.getDefaultInstance()))
+                    .build();
+
+    public interface GraphReloader {
+        /**
+         * Starts reloading the graph, returning a description of the reload; throws
+         * IllegalArgumentException if the graph can't be loaded from graphLocation, and
+         * IllegalStateException if a reload is already in progress
+         */
+        String reloadGraph(String graphLocation, String linkMappingsPath);
+    }
+
+    public static ServerServiceDefinition bindService(GraphReloader reloader) {
+        return ServerServiceDefinition.builder(SERVICE_NAME)
+                .addMethod(RELOAD_GRAPH_METHOD, ServerCalls.asyncUnaryCall((request, responseObserver) -> {
+                    String graphLocation = getString(request, "graph_location");
+                    if (graphLocation == null || graphLocation.isEmpty()) {
+                        Status status = Status.newBuilder()
+                                .setCode(Code.INVALID_ARGUMENT.getNumber())
+                                .setMessage("graph_location must be set")
+                                .build();
+                        responseObserver.onError(StatusProto.toStatusRuntimeException(status));
+                        return;
+                    }
+                    try {
+                        String message = reloader.reloadGraph(graphLocation, getString(request, "link_mappings_db"));
+                        logger.info(message);
+                        responseObserver.onNext(StringValue.of(message));
+                        responseObserver.onCompleted();
+                    } catch (IllegalArgumentException e) {
+                        Status status = Status.newBuilder()
+                                .setCode(Code.INVALID_ARGUMENT.getNumber())
+                                .setMessage(e.getMessage())
+                                .build();
+                        responseObserver.onError(StatusProto.toStatusRuntimeException(status));
+                    } catch (IllegalStateException e) {
+                        Status status = Status.newBuilder()
+                                .setCode(Code.FAILED_PRECONDITION.getNumber())
+                                .setMessage(e.getMessage())
+                                .build();
+                        responseObserver.onError(StatusProto.toStatusRuntimeException(status));
+                    }
+                }))
+                .build();
+    }
+
+    private static String getString(Struct request, String field) {
+        Value value = request.getFieldsMap().get(field);
+        return value == null ? null : value.getStringValue();
+    }
+}
@@ -32,6 +32,7 @@ import com.graphhopper.util.PMap;
 import com.graphhopper.util.exceptions.PointNotFoundException;
 import com.graphhopper.util.shapes.GHPoint;
 import com.timgroup.statsd.StatsDClient;
+import io.grpc.Context;
 import io.grpc.protobuf.StatusProto;
 import io.grpc.stub.StreamObserver;
 import org.slf4j.Logger;
@@ -98,7 +99,9 @@ public class RouterImpl extends router.RouterGrpc.RouterImplBase {
         ghRequest.getHints().putAll(hints);
 
         try {
+            checkNotCancelled();
             GHResponse ghResponse = graphHopper.route(ghRequest);
+            checkNotCancelled();
             if (ghResponse.getAll().size() == 0) {
                 String message = "Path could not be found between "
                         + ghRequest.getPoints().get(0).lat + "," + ghRequest.getPoints().get(0).lon + " to "
@@ -142,6 +145,8 @@ public class RouterImpl extends router.RouterGrpc.RouterImplBase {
                 responseObserver.onNext(replyBuilder.build());
                 responseObserver.onCompleted();
             }
+        } catch (CallCancelledException e) {
+            onCancelled(e, new String[]{"mode:" + request.getProfile(), "api:grpc"}, startTime, responseObserver);
         } catch (Exception e) {
             String message = "GH internal error! Path could not be found between "
                     + ghRequest.getPoints().get(0).lat + "," + ghRequest.getPoints().get(0).lon + " to "
@@ -179,7 +184,11 @@ public class RouterImpl extends router.RouterGrpc.RouterImplBase {
         ghMatrixRequest.setFailFast(request.getFailFast());
 
         try {
+            // The matrix is calculated by the external graphhopper-matrix artifact, which can't be interrupted
+            // part-way, so cancellation is only checked before and after the calculation
+            checkNotCancelled();
             GHMResponse ghMatrixResponse = matrixAPI.calc(ghMatrixRequest);
+            checkNotCancelled();
 
             if (ghMatrixRequest.getFailFast() && ghMatrixResponse.hasInvalidPoints()) {
                 MatrixErrors matrixErrors = new MatrixErrors();
@@ -241,6 +250,8 @@ public class RouterImpl extends router.RouterGrpc.RouterImplBase {
             MatrixRouteReply result = MatrixRouteReply.newBuilder().addAllTimes(timeRows).addAllDistances(distanceRows).build();
             responseObserver.onNext(result);
             responseObserver.onCompleted();
+        } catch (CallCancelledException e) {
+            onCancelled(e, new String[]{"mode:" + request.getMode() + "_matrix", "api:grpc"}, startTime, responseObserver);
         } catch (Exception e) {
             logger.error("Error while completing GraphHopper matrix request! ", e);
 
@@ -287,9 +298,11 @@ public class RouterImpl extends router.RouterGrpc.RouterImplBase {
         ghPtRequest.setBetaTransfers(request.getBetaTransfers());
 
         try {
+            checkNotCancelled();
             GHResponse ghResponse = ptRouter.route(ghPtRequest);
             List<ResponsePath> pathsWithStableIds = Lists.newArrayList();
             for (ResponsePath path : ghResponse.getAll()) {
+                checkNotCancelled();
                 // Ignore walking-only responses, because we route those separately from PT
                 if (path.getLegs().size() == 1 && path.getLegs().get(0).type.equals("walk")) {
                     continue;
@@ -413,6 +426,8 @@ public class RouterImpl extends router.RouterGrpc.RouterImplBase {
                 responseObserver.onNext(replyBuilder.build());
                 responseObserver.onCompleted();
             }
+        } catch (CallCancelledException e) {
+            onCancelled(e, new String[]{"mode:pt", "api:grpc"}, startTime, responseObserver);
         } catch (PointNotFoundException e) {
             String message = "Path could not be found between " + fromPoint.getLat() + "," +
                     fromPoint.getLon() + " to " + toPoint.getLat() + "," + toPoint.getLon() +
@@ -446,6 +461,38 @@ public class RouterImpl extends router.RouterGrpc.RouterImplBase {
         }
     }
 
+    /**
+     * Thrown when the call's context has been cancelled, because the client cancelled the call or its
+     * deadline expired, so that no further routing work is done for it
+     */
+    private static class CallCancelledException extends RuntimeException {
+        private final io.grpc.Status status;
+
+        CallCancelledException(io.grpc.Status status) {
+            super(status.getDescription(), null, false, false);
+            this.status = status;
+        }
+    }
+
+    private static void checkNotCancelled() {
+        Context context = Context.current();
+        if (context.isCancelled()) {
+            if (context.getDeadline() != null && context.getDeadline().isExpired()) {
+                throw new CallCancelledException(io.grpc.Status.DEADLINE_EXCEEDED.withDescription("Deadline expired before routing completed"));
+            }
+            throw new CallCancelledException(io.grpc.Status.CANCELLED.withDescription("Call cancelled before routing completed"));
+        }
+    }
+
+    private void onCancelled(CallCancelledException e, String[] tags, long startTime, StreamObserver<?> responseObserver) {
+        double durationSeconds = (System.currentTimeMillis() - startTime) / 1000.0;
+        List<String> cancelledTags = Lists.newArrayList(tags);
+        cancelledTags.add("routes_found:cancelled");
+        sendDatadogStats(statsDClient, applyRegionName(cancelledTags.toArray(new String[0]), regionName), durationSeconds);
+        // No one is listening for the reply, but this completes the call on the server
+        responseObserver.onError(e.status.asRuntimeException());
+    }
+
     public static class CustomWalkLeg extends Trip.WalkLeg {
         public final List<String> stableEdgeIds;
         public final String type;
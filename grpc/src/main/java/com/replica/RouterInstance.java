@@ -0,0 +1,255 @@
+package com.replica;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.gtfs.GraphHopperGtfs;
+import com.graphhopper.gtfs.PtRouter;
+import com.graphhopper.gtfs.PtRouterImpl;
+import com.graphhopper.gtfs.RealtimeFeed;
+import com.graphhopper.http.GraphHopperManaged;
+import com.graphhopper.jackson.Jackson;
+import com.graphhopper.routing.GHMatrixAPI;
+import com.graphhopper.routing.MatrixAPI;
+import com.timgroup.statsd.StatsDClient;
+import io.grpc.Context;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A loaded graph, with the PT router, matrix API and GTFS maps built on it, and the RouterImpl that
+ * serves them. RouterServer serves one instance at a time, and can swap in a newly loaded instance
+ * to reload the graph; the old instance is closed once the calls it's serving have finished.
+ */
+public class RouterInstance {
+    private static final Logger logger = LoggerFactory.getLogger(RouterInstance.class);
+    private static final int CLOSED = -1;
+    private static final long DRAIN_LOG_INTERVAL_SECS = 30;
+    private static final Context.Key<InFlightCall> IN_FLIGHT_CALL = Context.key("inFlightCall");
+
+    private final GraphHopperManaged graphHopperManaged;
+    private final DB linkMappingsDb;
+    private final RouterImpl router;
+    private final RouterImpl warmUpRouter;
+    private final boolean hasPtRouter;
+    // Number of calls in flight on this instance, or CLOSED once it's been closed
+    private final AtomicInteger inFlightCalls = new AtomicInteger();
+
+    private RouterInstance(GraphHopperManaged graphHopperManaged, DB linkMappingsDb, RouterImpl router,
+                           RouterImpl warmUpRouter, boolean hasPtRouter) {
+        this.graphHopperManaged = graphHopperManaged;
+        this.linkMappingsDb = linkMappingsDb;
+        this.router = router;
+        this.warmUpRouter = warmUpRouter;
+        this.hasPtRouter = hasPtRouter;
+    }
+
+    /**
+     * Loads (or imports) the graph for the given config, and the GTFS link mappings and route info
+     * from the MapDB file at linkMappingsPath, if it exists
+     */
+    public static RouterInstance load(GraphHopperConfig graphHopperConfiguration, String linkMappingsPath,
+                                      StatsDClient statsDClient, String regionName) {
+        ObjectMapper json = Jackson.newObjectMapper();
+        GraphHopperManaged graphHopperManaged = new GraphHopperManaged(graphHopperConfiguration, json);
+        graphHopperManaged.start();
+
+        // Grab instances of auto/bike/ped router and PT router (if applicable)
+        GraphHopper graphHopper = graphHopperManaged.getGraphHopper();
+        PtRouter ptRouter = null;
+        if (graphHopper instanceof GraphHopperGtfs) {
+            ptRouter = new PtRouterImpl(graphHopper.getTranslationMap(), graphHopper.getGraphHopperStorage(), graphHopper.getLocationIndex(), ((GraphHopperGtfs) graphHopper).getGtfsStorage(), RealtimeFeed.empty(((GraphHopperGtfs) graphHopper).getGtfsStorage()), graphHopper.getPathDetailsBuilderFactory());
+        }
+
+        // Create matrix API instance
+        MatrixAPI matrixAPI = new GHMatrixAPI(graphHopper, graphHopperConfiguration);
+
+        // Load GTFS link mapping and GTFS info maps for use in building responses
+        Map<String, String> gtfsLinkMappings = null;
+        Map<String, List<String>> gtfsRouteInfo = null;
+        Map<String, String> gtfsFeedIdMapping = null;
+
+        DB db = null;
+        File linkMappingsDbFile = new File(linkMappingsPath);
+        if (linkMappingsDbFile.exists()) {
+            db = DBMaker.newFileDB(linkMappingsDbFile).readOnly().make();
+            gtfsLinkMappings = db.getHashMap("gtfsLinkMappings");
+            gtfsRouteInfo = db.getHashMap("gtfsRouteInfo");
+            gtfsFeedIdMapping = db.getHashMap("gtfsFeedIdMap");
+            logger.info("Done loading GTFS link mappings and route info. Total number of mappings: " + gtfsLinkMappings.size());
+        } else {
+            logger.info("No GTFS link mapping mapdb file found at " + linkMappingsPath + "! Skipped loading GTFS link mappings.");
+        }
+
+        RouterImpl router = new RouterImpl(graphHopper, ptRouter, matrixAPI, gtfsLinkMappings, gtfsRouteInfo, gtfsFeedIdMapping, statsDClient, regionName);
+        // Used for warm-up queries, which shouldn't be reported as requests
+        RouterImpl warmUpRouter = new RouterImpl(graphHopper, ptRouter, matrixAPI, gtfsLinkMappings, gtfsRouteInfo, gtfsFeedIdMapping, null, regionName);
+        return new RouterInstance(graphHopperManaged, db, router, warmUpRouter, ptRouter != null);
+    }
+
+    public GraphHopper getGraphHopper() {
+        return graphHopperManaged.getGraphHopper();
+    }
+
+    public RouterImpl getRouter() {
+        return router;
+    }
+
+    public RouterImpl getWarmUpRouter() {
+        return warmUpRouter;
+    }
+
+    public boolean hasPtRouter() {
+        return hasPtRouter;
+    }
+
+    public int getInFlightCalls() {
+        return Math.max(0, inFlightCalls.get());
+    }
+
+    /**
+     * Binds the router with the given interceptors (the last of which runs first), counting the
+     * calls in flight on this instance. Calls are counted as soon as they're dispatched to this
+     * instance, before any of the interceptors run, and until the router has finished with them.
+     */
+    public ServerServiceDefinition bindService(ServerInterceptor... interceptors) {
+        ServerServiceDefinition router = ServerInterceptors.intercept(this.router, new InFlightCallReleaser());
+        return ServerInterceptors.intercept(ServerInterceptors.intercept(router, interceptors), new InFlightCallCounter());
+    }
+
+    /**
+     * Waits for the calls in flight on this instance to finish, however long that takes, then closes
+     * the graph and link mapping DB. Calls must be cancelled (e.g. by shutting down the server) for
+     * them to finish sooner. Calls still dispatched to this instance once it's closed, which can only
+     * happen right after a reload has swapped it out, fail with UNAVAILABLE so they can be retried on
+     * the new instance.
+     */
+    public void close() throws InterruptedException {
+        long startNanos = System.nanoTime();
+        long nextLogNanos = startNanos + TimeUnit.SECONDS.toNanos(DRAIN_LOG_INTERVAL_SECS);
+        while (!inFlightCalls.compareAndSet(0, CLOSED)) {
+            if (System.nanoTime() >= nextLogNanos) {
+                logger.warn("Still waiting for " + getInFlightCalls() + " calls in flight to finish before closing graph, after "
+                        + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos) + " seconds");
+                nextLogNanos += TimeUnit.SECONDS.toNanos(DRAIN_LOG_INTERVAL_SECS);
+            }
+            Thread.sleep(100);
+        }
+        graphHopperManaged.stop();
+        if (linkMappingsDb != null) {
+            linkMappingsDb.close();
+        }
+    }
+
+    // Counts a call in, unless this instance has been closed
+    private boolean tryCountCall() {
+        while (true) {
+            int calls = inFlightCalls.get();
+            if (calls == CLOSED) {
+                return false;
+            }
+            if (inFlightCalls.compareAndSet(calls, calls + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * A call counted in flight, which is counted out once, when the router has finished with it or
+     * when it's rejected before reaching the router
+     */
+    private class InFlightCall {
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private boolean reachedRouter = false;
+
+        void finish() {
+            if (finished.compareAndSet(false, true)) {
+                inFlightCalls.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Outermost interceptor, which counts each call as it's dispatched. The call is handed to
+     * InFlightCallReleaser through the Context if it gets as far as the router; otherwise (e.g. it was
+     * shed by an interceptor) it's counted out as soon as it's been started.
+     */
+    private class InFlightCallCounter implements ServerInterceptor {
+        @Override
+        public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                     ServerCallHandler<ReqT, RespT> next) {
+            if (!tryCountCall()) {
+                call.close(Status.UNAVAILABLE.withDescription("Graph has been reloaded; retry"), new Metadata());
+                return new ServerCall.Listener<ReqT>() {};
+            }
+            InFlightCall inFlightCall = new InFlightCall();
+            ServerCall.Listener<ReqT> listener;
+            Context previous = Context.current().withValue(IN_FLIGHT_CALL, inFlightCall).attach();
+            try {
+                listener = next.startCall(call, headers);
+            } catch (RuntimeException e) {
+                inFlightCall.finish();
+                throw e;
+            } finally {
+                Context.current().detach(previous);
+            }
+            if (!inFlightCall.reachedRouter) {
+                inFlightCall.finish();
+            }
+            return listener;
+        }
+    }
+
+    /**
+     * Innermost interceptor, which counts the call out once the router's last callback for it has run.
+     * Callbacks for a call run in order (on a bulkhead or the server executor), so by then the router
+     * is done with the call, even if it was cancelled while being routed.
+     */
+    private static class InFlightCallReleaser implements ServerInterceptor {
+        @Override
+        public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                     ServerCallHandler<ReqT, RespT> next) {
+            InFlightCall inFlightCall = IN_FLIGHT_CALL.get();
+            if (inFlightCall == null) {
+                return next.startCall(call, headers);
+            }
+            inFlightCall.reachedRouter = true;
+            return new SimpleForwardingServerCallListener<ReqT>(next.startCall(call, headers)) {
+                @Override
+                public void onCancel() {
+                    try {
+                        super.onCancel();
+                    } finally {
+                        inFlightCall.finish();
+                    }
+                }
+
+                @Override
+                public void onComplete() {
+                    try {
+                        super.onComplete();
+                    } finally {
+                        inFlightCall.finish();
+                    }
+                }
+            };
+        }
+    }
+}
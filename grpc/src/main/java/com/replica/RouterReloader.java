@@ -0,0 +1,136 @@
+package com.replica;
+
+import io.grpc.ServerInterceptor;
+import io.grpc.util.MutableHandlerRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Serves the ReloadGraph RPC for RouterServer: loads a graph that's already been imported into a
+ * directory under graphRoot, and swaps it in for the graph being served, one reload at a time.
+ * Graphs are only ever loaded, never imported, so a bad path can't start an import on a server
+ * that's handling traffic.
+ */
+public class RouterReloader implements RouterAdminService.GraphReloader {
+    private static final Logger logger = LoggerFactory.getLogger(RouterReloader.class);
+    // Written by GraphHopper into every graph directory it's imported
+    private static final String GRAPH_PROPERTIES_FILE = "properties";
+
+    public interface InstanceLoader {
+        /**
+         * Loads (and warms up, if need be) the graph at graphLocation, which holds an imported graph
+         */
+        RouterInstance load(String graphLocation, String linkMappingsPath) throws Exception;
+    }
+
+    private final MutableHandlerRegistry registry;
+    private final ServerInterceptor[] interceptors;
+    private final Path graphRoot;
+    private final String defaultLinkMappingsPath;
+    private final InstanceLoader loader;
+    private final ExecutorService executor;
+    private final AtomicBoolean reloadInProgress = new AtomicBoolean();
+    private volatile RouterInstance routerInstance;
+
+    /**
+     * Reloads replace routerInstance, which must already be bound in registry with the given
+     * interceptors. Only graphs (and link mapping DBs) under graphRoot can be loaded.
+     */
+    public RouterReloader(RouterInstance routerInstance, MutableHandlerRegistry registry, ServerInterceptor[] interceptors,
+                          String graphRoot, String defaultLinkMappingsPath, InstanceLoader loader) throws IOException {
+        this.routerInstance = routerInstance;
+        this.registry = registry;
+        this.interceptors = interceptors;
+        this.graphRoot = Paths.get(graphRoot).toRealPath();
+        this.defaultLinkMappingsPath = defaultLinkMappingsPath;
+        this.loader = loader;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "graph-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public RouterInstance getRouterInstance() {
+        return routerInstance;
+    }
+
+    public boolean isReloadInProgress() {
+        return reloadInProgress.get();
+    }
+
+    /**
+     * Checks the graph directory, then loads it in the background and swaps it in; the current graph
+     * is closed once the calls in flight on it have finished. Both graphs are held in memory until
+     * then. Throws IllegalArgumentException if graphLocation isn't a graph directory under graphRoot
+     * (or linkMappingsPath isn't under it), and IllegalStateException if a reload is already in progress.
+     */
+    @Override
+    public String reloadGraph(String graphLocation, String linkMappingsPath) {
+        Path graphDirectory = checkGraphDirectory(graphLocation);
+        String linkMappings = linkMappingsPath == null || linkMappingsPath.isEmpty() ? defaultLinkMappingsPath
+                : checkUnderGraphRoot(Paths.get(linkMappingsPath).toAbsolutePath().normalize(), linkMappingsPath).toString();
+        if (!reloadInProgress.compareAndSet(false, true)) {
+            throw new IllegalStateException("A graph reload is already in progress");
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    reload(graphDirectory.toString(), linkMappings);
+                } catch (Exception e) {
+                    logger.error("Failed to reload graph from " + graphDirectory + "; still serving the previous graph", e);
+                } finally {
+                    reloadInProgress.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            reloadInProgress.set(false);
+            throw e;
+        }
+        return "Reloading graph from " + graphDirectory + " with link mappings from " + linkMappings;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void reload(String graphLocation, String linkMappingsPath) throws Exception {
+        RouterInstance newInstance = loader.load(graphLocation, linkMappingsPath);
+        RouterInstance oldInstance = routerInstance;
+        registry.addService(newInstance.bindService(interceptors));
+        routerInstance = newInstance;
+        logger.info("Swapped in graph from " + graphLocation + "; draining " + oldInstance.getInFlightCalls()
+                + " calls in flight on the previous graph");
+        oldInstance.close();
+        logger.info("Closed previous graph");
+    }
+
+    private Path checkGraphDirectory(String graphLocation) {
+        Path graphDirectory;
+        try {
+            graphDirectory = Paths.get(graphLocation).toRealPath();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("No graph directory at " + graphLocation);
+        }
+        checkUnderGraphRoot(graphDirectory, graphLocation);
+        if (!new File(graphDirectory.toFile(), GRAPH_PROPERTIES_FILE).isFile()) {
+            throw new IllegalArgumentException(graphLocation + " doesn't hold an imported graph");
+        }
+        return graphDirectory;
+    }
+
+    private Path checkUnderGraphRoot(Path path, String location) {
+        if (!path.startsWith(graphRoot) || path.equals(graphRoot)) {
+            throw new IllegalArgumentException(location + " isn't under the graph reload root " + graphRoot);
+        }
+        return path;
+    }
+}
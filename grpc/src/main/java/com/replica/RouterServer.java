@@ -21,19 +21,12 @@ package com.replica;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
-import com.graphhopper.gtfs.GraphHopperGtfs;
-import com.graphhopper.gtfs.PtRouter;
-import com.graphhopper.gtfs.PtRouterImpl;
-import com.graphhopper.gtfs.RealtimeFeed;
-import com.graphhopper.http.GraphHopperManaged;
 import com.graphhopper.jackson.GraphHopperConfigModule;
 import com.graphhopper.jackson.Jackson;
-import com.graphhopper.routing.GHMatrixAPI;
-import com.graphhopper.routing.MatrixAPI;
 import com.timgroup.statsd.NonBlockingStatsDClientBuilder;
 import com.timgroup.statsd.StatsDClient;
 import io.dropwizard.Application;
@@ -43,19 +36,31 @@ import io.dropwizard.bundles.redirect.RedirectBundle;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import io.grpc.Server;
+import io.grpc.ServerInterceptor;
+import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.internal.GrpcUtil;
 import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.ServerChannel;
+import io.grpc.netty.shaded.io.netty.channel.epoll.Epoll;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollServerSocketChannel;
 import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
 import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.grpc.protobuf.services.ProtoReflectionService;
+import io.grpc.util.MutableHandlerRegistry;
 import io.grpcweb.GrpcPortNumRelay;
 import io.grpcweb.GrpcWebTrafficServlet;
-import org.mapdb.DB;
-import org.mapdb.DBMaker;
+import io.grpcweb.NettyGrpcWebServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import router.RouterGrpc;
 
+import javax.servlet.ServletRegistration;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -65,14 +70,26 @@ import java.util.concurrent.TimeUnit;
 public class RouterServer {
 
     private static final Logger logger = LoggerFactory.getLogger(RouterServer.class);
+    private static final String IN_PROCESS_SERVER_NAME = "router";
     private Server server;
+    private Server inProcessServer;
+    private NettyGrpcWebServer grpcWebServer;
+    private InstrumentedExecutor serverExecutor;
+    private List<BulkheadInterceptor.Bulkhead> bulkheads = Lists.newArrayList();
     private String configPath;
     private Map<String, Integer> defaultProperties;
     private Map<String, Integer> userDefinedProperties;
     private String regionName;
-    private GraphHopperManaged graphHopperManaged;
+    private StatsDClient statsDClient;
+    private final MutableHandlerRegistry routerRegistry = new MutableHandlerRegistry();
+    private ServerInterceptor[] routerInterceptors;
+    private RouterInstance routerInstance;
+    private RouterReloader reloader;
+    private static final String LINK_MAPPINGS_PATH = "transit_data/gtfs_link_mappings.db";
+    private static final long EXECUTOR_METRICS_INTERVAL_SECS = 10;
     public static final Set<String> SETTABLE_PARAMETERS = Sets.newHashSet(
             "SERVER_THREADS",
+            "SERVER_EXECUTOR",
             "BOSS_EVENT_LOOP_THREADS",
             "WORKER_EVENT_LOOP_THREADS",
             "CONN_TIME_MAX_AGE_SECS",
@@ -80,7 +97,29 @@ public class RouterServer {
             "MAX_CONC_CALLS_PER_CONN",
             "KEEP_ALIVE_TIME_SECS",
             "KEEP_ALIVE_TIMEOUT_SECS",
-            "FLOW_CONTROL_WINDOW_BYTES"
+            "FLOW_CONTROL_WINDOW_BYTES",
+            "GRPC_WEB_CHANNELS",
+            "GRPC_WEB_EXECUTOR_THREADS",
+            "GRPC_WEB_IN_PROCESS",
+            "GRPC_WEB_DEADLINE_SECS",
+            "GRPC_WEB_NETTY",
+            "GRPC_WEB_PORT",
+            "BULKHEADS",
+            "STREET_BULKHEAD_THREADS",
+            "STREET_BULKHEAD_QUEUE",
+            "PT_BULKHEAD_THREADS",
+            "PT_BULKHEAD_QUEUE",
+            "MATRIX_BULKHEAD_THREADS",
+            "MATRIX_BULKHEAD_QUEUE",
+            "INFO_BULKHEAD_THREADS",
+            "INFO_BULKHEAD_QUEUE",
+            "ADAPTIVE_CONCURRENCY_LIMIT",
+            "CONCURRENCY_LIMIT_INITIAL",
+            "CONCURRENCY_LIMIT_MIN",
+            "CONCURRENCY_LIMIT_MAX",
+            "EPOLL",
+            "GRAPH_RELOAD_RPC",
+            "WARM_UP_QUERIES"
     );
 
     public RouterServer(String configPath, Map<String, Integer> defaultProperties,
@@ -92,43 +131,7 @@ public class RouterServer {
     }
 
     private void start() throws Exception {
-        // Start GH instance based on config given as command-line arg
-        ObjectMapper yaml = Jackson.initObjectMapper(new ObjectMapper(new YAMLFactory()));
-        yaml.registerModule(new GraphHopperConfigModule());
-        JsonNode yamlNode = yaml.readTree(new File(configPath));
-        GraphHopperConfig graphHopperConfiguration = yaml.convertValue(yamlNode.get("graphhopper"), GraphHopperConfig.class);
-        ObjectMapper json = Jackson.newObjectMapper();
-        graphHopperManaged = new GraphHopperManaged(graphHopperConfiguration, json);
-        graphHopperManaged.start();
-
-        // Grab instances of auto/bike/ped router and PT router (if applicable)
-        GraphHopper graphHopper = graphHopperManaged.getGraphHopper();
-        PtRouter ptRouter = null;
-        if (graphHopper instanceof GraphHopperGtfs) {
-            ptRouter = new PtRouterImpl(graphHopper.getTranslationMap(), graphHopper.getGraphHopperStorage(), graphHopper.getLocationIndex(), ((GraphHopperGtfs) graphHopper).getGtfsStorage(), RealtimeFeed.empty(((GraphHopperGtfs) graphHopper).getGtfsStorage()), graphHopper.getPathDetailsBuilderFactory());
-        }
-
-        // Create matrix API instance
-        MatrixAPI matrixAPI = new GHMatrixAPI(graphHopper, graphHopperConfiguration);
-
-        // Load GTFS link mapping and GTFS info maps for use in building responses
-        Map<String, String> gtfsLinkMappings = null;
-        Map<String, List<String>> gtfsRouteInfo = null;
-        Map<String, String> gtfsFeedIdMapping = null;
-
-        File linkMappingsDbFile = new File("transit_data/gtfs_link_mappings.db");
-        if (linkMappingsDbFile.exists()) {
-            DB db = DBMaker.newFileDB(linkMappingsDbFile).readOnly().make();
-            gtfsLinkMappings = db.getHashMap("gtfsLinkMappings");
-            gtfsRouteInfo = db.getHashMap("gtfsRouteInfo");
-            gtfsFeedIdMapping = db.getHashMap("gtfsFeedIdMap");
-            logger.info("Done loading GTFS link mappings and route info. Total number of mappings: " + gtfsLinkMappings.size());
-        } else {
-            logger.info("No GTFS link mapping mapdb file found! Skipped loading GTFS link mappings.");
-        }
-
         String datadogHost = System.getenv("DD_AGENT_HOST");
-        StatsDClient statsDClient = null;
         if (datadogHost != null) {
             // Initialize Datadog client
             statsDClient = new NonBlockingStatsDClientBuilder()
@@ -139,23 +142,110 @@ public class RouterServer {
 
         logger.info("Datadog agent host IP is: " + System.getenv("DD_AGENT_HOST"));
 
+        // Start GH instance based on config given as command-line arg
+        GraphHopperConfig graphHopperConfiguration = readGraphHopperConfig();
+        routerInstance = RouterInstance.load(graphHopperConfiguration, LINK_MAPPINGS_PATH, statsDClient, regionName);
+        // Warm up before the server is started, so neither traffic nor health checks reach it while cold
+        warmUp(routerInstance);
+
         // Start server
         int grpcPort = 50051;
-        server = NettyServerBuilder.forPort(grpcPort)
-                .addService(new RouterImpl(graphHopper, ptRouter, matrixAPI, gtfsLinkMappings, gtfsRouteInfo, gtfsFeedIdMapping, statsDClient, regionName))
+        serverExecutor = InstrumentedExecutor.create("server",
+                InstrumentedExecutor.Strategy.fromCode(userDefinedProperties.getOrDefault("SERVER_EXECUTOR", defaultProperties.get("SERVER_EXECUTOR"))),
+                userDefinedProperties.getOrDefault("SERVER_THREADS", defaultProperties.get("SERVER_THREADS")));
+
+        // If enabled, each RPC method runs on its own bounded pool rather than the server executor,
+        // so slow matrix or PT calls can't starve street routing of threads
+        BulkheadInterceptor bulkheadInterceptor = new BulkheadInterceptor(statsDClient);
+        if (userDefinedProperties.getOrDefault("BULKHEADS", defaultProperties.get("BULKHEADS")) != 0) {
+            bulkheadInterceptor
+                    .addBulkhead(RouterGrpc.getRouteStreetModeMethod().getFullMethodName(), createBulkhead("street", "STREET"))
+                    .addBulkhead(RouterGrpc.getRoutePtMethod().getFullMethodName(), createBulkhead("pt", "PT"))
+                    .addBulkhead(RouterGrpc.getRouteMatrixMethod().getFullMethodName(), createBulkhead("matrix", "MATRIX"))
+                    .addBulkhead(RouterGrpc.getInfoMethod().getFullMethodName(), createBulkhead("info", "INFO"));
+        }
+
+        // If enabled, calls beyond an adaptive concurrency limit are shed before reaching a bulkhead
+        // or the server executor (interceptors added last run first)
+        AdaptiveConcurrencyLimiter concurrencyLimiter = null;
+        if (userDefinedProperties.getOrDefault("ADAPTIVE_CONCURRENCY_LIMIT", defaultProperties.get("ADAPTIVE_CONCURRENCY_LIMIT")) != 0) {
+            concurrencyLimiter = new AdaptiveConcurrencyLimiter(
+                    userDefinedProperties.getOrDefault("CONCURRENCY_LIMIT_INITIAL", defaultProperties.get("CONCURRENCY_LIMIT_INITIAL")),
+                    userDefinedProperties.getOrDefault("CONCURRENCY_LIMIT_MIN", defaultProperties.get("CONCURRENCY_LIMIT_MIN")),
+                    userDefinedProperties.getOrDefault("CONCURRENCY_LIMIT_MAX", defaultProperties.get("CONCURRENCY_LIMIT_MAX")),
+                    statsDClient);
+            routerInterceptors = new ServerInterceptor[]{bulkheadInterceptor, concurrencyLimiter};
+        } else {
+            routerInterceptors = new ServerInterceptor[]{bulkheadInterceptor};
+        }
+        // The router is served from a mutable registry, so a reloaded graph can be swapped in
+        routerRegistry.addService(routerInstance.bindService(routerInterceptors));
+
+        if (statsDClient != null) {
+            final StatsDClient executorStatsDClient = statsDClient;
+            final AdaptiveConcurrencyLimiter reportedLimiter = concurrencyLimiter;
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "executor-metrics");
+                thread.setDaemon(true);
+                return thread;
+            }).scheduleAtFixedRate(() -> {
+                serverExecutor.report(executorStatsDClient);
+                for (BulkheadInterceptor.Bulkhead bulkhead : bulkheads) {
+                    bulkhead.report(executorStatsDClient);
+                }
+                if (reportedLimiter != null) {
+                    reportedLimiter.report(executorStatsDClient);
+                }
+            }, EXECUTOR_METRICS_INTERVAL_SECS, EXECUTOR_METRICS_INTERVAL_SECS, TimeUnit.SECONDS);
+        }
+        // NIO transport by default; with EPOLL set, the native epoll transport where it's available (Linux)
+        int workerEventLoopThreads = userDefinedProperties.getOrDefault("WORKER_EVENT_LOOP_THREADS", defaultProperties.get("WORKER_EVENT_LOOP_THREADS"));
+        int bossEventLoopThreads = userDefinedProperties.getOrDefault("BOSS_EVENT_LOOP_THREADS", defaultProperties.get("BOSS_EVENT_LOOP_THREADS"));
+        EventLoopGroup workerEventLoopGroup;
+        EventLoopGroup bossEventLoopGroup;
+        Class<? extends ServerChannel> serverChannelType;
+        boolean useEpoll = userDefinedProperties.getOrDefault("EPOLL", defaultProperties.get("EPOLL")) != 0;
+        if (useEpoll && Epoll.isAvailable()) {
+            workerEventLoopGroup = new EpollEventLoopGroup(workerEventLoopThreads);
+            bossEventLoopGroup = new EpollEventLoopGroup(bossEventLoopThreads);
+            serverChannelType = EpollServerSocketChannel.class;
+            logger.info("Using epoll transport");
+        } else {
+            if (useEpoll) {
+                logger.warn("Epoll transport isn't available; using NIO transport", Epoll.unavailabilityCause());
+            }
+            workerEventLoopGroup = new NioEventLoopGroup(workerEventLoopThreads);
+            bossEventLoopGroup = new NioEventLoopGroup(bossEventLoopThreads);
+            serverChannelType = NioServerSocketChannel.class;
+            logger.info("Using NIO transport");
+        }
+        NettyServerBuilder serverBuilder = NettyServerBuilder.forPort(grpcPort)
+                .fallbackHandlerRegistry(routerRegistry)
                 .addService(ProtoReflectionService.newInstance())
                 .maxConnectionAge(userDefinedProperties.getOrDefault("CONN_TIME_MAX_AGE_SECS", defaultProperties.get("CONN_TIME_MAX_AGE_SECS")), TimeUnit.SECONDS)
                 .maxConnectionAgeGrace(userDefinedProperties.getOrDefault("CONN_TIME_GRACE_PERIOD_SECS", defaultProperties.get("CONN_TIME_GRACE_PERIOD_SECS")), TimeUnit.SECONDS)
                 .maxConcurrentCallsPerConnection(userDefinedProperties.getOrDefault("MAX_CONC_CALLS_PER_CONN", defaultProperties.get("MAX_CONC_CALLS_PER_CONN")))
-                .executor(Executors.newFixedThreadPool(userDefinedProperties.getOrDefault("SERVER_THREADS", defaultProperties.get("SERVER_THREADS"))))
-                .workerEventLoopGroup(new NioEventLoopGroup(userDefinedProperties.getOrDefault("WORKER_EVENT_LOOP_THREADS", defaultProperties.get("WORKER_EVENT_LOOP_THREADS"))))
-                .bossEventLoopGroup(new NioEventLoopGroup(userDefinedProperties.getOrDefault("BOSS_EVENT_LOOP_THREADS", defaultProperties.get("BOSS_EVENT_LOOP_THREADS"))))
-                .channelType(NioServerSocketChannel.class)
+                .executor(serverExecutor)
+                .workerEventLoopGroup(workerEventLoopGroup)
+                .bossEventLoopGroup(bossEventLoopGroup)
+                .channelType(serverChannelType)
                 .keepAliveTime(userDefinedProperties.getOrDefault("KEEP_ALIVE_TIME_SECS", defaultProperties.get("KEEP_ALIVE_TIME_SECS")), TimeUnit.SECONDS)
                 .keepAliveTimeout(userDefinedProperties.getOrDefault("KEEP_ALIVE_TIMEOUT_SECS", defaultProperties.get("KEEP_ALIVE_TIMEOUT_SECS")), TimeUnit.SECONDS)
-                .flowControlWindow(userDefinedProperties.getOrDefault("FLOW_CONTROL_WINDOW_BYTES", defaultProperties.get("FLOW_CONTROL_WINDOW_BYTES")))
-                .build()
-                .start();
+                .flowControlWindow(userDefinedProperties.getOrDefault("FLOW_CONTROL_WINDOW_BYTES", defaultProperties.get("FLOW_CONTROL_WINDOW_BYTES")));
+        if (userDefinedProperties.getOrDefault("GRAPH_RELOAD_RPC", defaultProperties.get("GRAPH_RELOAD_RPC")) != 0) {
+            // Graphs can only be reloaded from under GRAPH_RELOAD_ROOT, which defaults to the directory
+            // holding the graph loaded at startup
+            String graphRoot = System.getenv("GRAPH_RELOAD_ROOT");
+            if (graphRoot == null) {
+                graphRoot = Paths.get(graphHopperConfiguration.getString("graph.location", "graph-cache"))
+                        .toAbsolutePath().getParent().toString();
+            }
+            reloader = new RouterReloader(routerInstance, routerRegistry, routerInterceptors, graphRoot,
+                    LINK_MAPPINGS_PATH, this::loadGraph);
+            serverBuilder.addService(RouterAdminService.bindService(reloader));
+            logger.info("Serving graph reloads from under " + graphRoot);
+        }
+        server = serverBuilder.build().start();
 
         logger.info("Started server with the following user-provided properties: " + userDefinedProperties);
         logger.info("All other properties utilize the default values: " + defaultProperties);
@@ -163,27 +253,125 @@ public class RouterServer {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.err.println("*** shutting down gRPC server since JVM is shutting down");
             try {
-                graphHopperManaged.stop();
                 RouterServer.this.stop();
+                (reloader != null ? reloader.getRouterInstance() : routerInstance).close();
             } catch (InterruptedException e) {
                 e.printStackTrace(System.err);
             }
             System.err.println("*** server shut down");
         }));
 
-        // Start the grpc-web proxy on grpc-web-port.
-        new MyApplication().run("server", "config-proxy.yaml");
-        logger.info("Started grpc-web proxy server");
-
         // grpc-web proxy needs to know the grpc-port# so it could connect to the grpc service.
-        GrpcPortNumRelay.setGrpcPortNum(grpcPort);
+        GrpcPortNumRelay.registerServices(RouterGrpc.getServiceDescriptor());
 
+        // If enabled, the proxy calls the same RouterImpl through an in-process server, sharing the
+        // Netty server's executor, rather than over a loopback connection. Responses are still written
+        // to browser clients from the proxy's own callback threads.
+        long grpcWebDeadlineMillis = TimeUnit.SECONDS.toMillis(userDefinedProperties.getOrDefault("GRPC_WEB_DEADLINE_SECS", defaultProperties.get("GRPC_WEB_DEADLINE_SECS")));
+        if (userDefinedProperties.getOrDefault("GRPC_WEB_IN_PROCESS", defaultProperties.get("GRPC_WEB_IN_PROCESS")) != 0) {
+            inProcessServer = InProcessServerBuilder.forName(IN_PROCESS_SERVER_NAME)
+                    .fallbackHandlerRegistry(routerRegistry)
+                    .executor(serverExecutor)
+                    .build()
+                    .start();
+            GrpcPortNumRelay.setInProcessServerName(IN_PROCESS_SERVER_NAME,
+                    userDefinedProperties.getOrDefault("GRPC_WEB_EXECUTOR_THREADS", defaultProperties.get("GRPC_WEB_EXECUTOR_THREADS")),
+                    grpcWebDeadlineMillis, statsDClient);
+        } else {
+            GrpcPortNumRelay.setGrpcPortNum(grpcPort,
+                    userDefinedProperties.getOrDefault("GRPC_WEB_CHANNELS", defaultProperties.get("GRPC_WEB_CHANNELS")),
+                    userDefinedProperties.getOrDefault("GRPC_WEB_EXECUTOR_THREADS", defaultProperties.get("GRPC_WEB_EXECUTOR_THREADS")),
+                    grpcWebDeadlineMillis, statsDClient);
+        }
+
+        // Start the grpc-web proxy on grpc-web-port: either served from Netty, on the gRPC server's
+        // event loops, or from a separate Dropwizard/Jetty server that also serves the debug UI
+        if (userDefinedProperties.getOrDefault("GRPC_WEB_NETTY", defaultProperties.get("GRPC_WEB_NETTY")) != 0) {
+            grpcWebServer = new NettyGrpcWebServer(userDefinedProperties.getOrDefault("GRPC_WEB_PORT", defaultProperties.get("GRPC_WEB_PORT")),
+                    bossEventLoopGroup, workerEventLoopGroup, serverChannelType).start();
+        } else {
+            new MyApplication().run("server", "config-proxy.yaml");
+        }
+        logger.info("Started grpc-web proxy server");
     }
 
     private void stop() throws InterruptedException {
-        if (server != null) {
-            server.shutdown().awaitTermination(30, TimeUnit.SECONDS);
+        if (grpcWebServer != null) {
+            grpcWebServer.stop();
+        }
+        // Close the proxy's channels before the servers they're connected to, so proxied calls can finish
+        GrpcPortNumRelay.shutdown();
+        // Calls still running after the grace period are cancelled, so they stop routing and the graph can
+        // be closed
+        if (inProcessServer != null && !inProcessServer.shutdown().awaitTermination(30, TimeUnit.SECONDS)) {
+            inProcessServer.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        }
+        if (server != null && !server.shutdown().awaitTermination(30, TimeUnit.SECONDS)) {
+            server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        }
+        if (serverExecutor != null) {
+            serverExecutor.shutdown();
         }
+        if (reloader != null) {
+            reloader.shutdown();
+        }
+        for (BulkheadInterceptor.Bulkhead bulkhead : bulkheads) {
+            bulkhead.getExecutor().shutdown();
+        }
+    }
+
+    /**
+     * Loads the graph already imported at graphLocation, with the rest of the startup config, for
+     * RouterReloader, and warms it up
+     */
+    private RouterInstance loadGraph(String graphLocation, String linkMappingsPath) throws IOException {
+        GraphHopperConfig graphHopperConfiguration = readGraphHopperConfig();
+        graphHopperConfiguration.putObject("graph.location", graphLocation);
+        RouterInstance instance = RouterInstance.load(graphHopperConfiguration, linkMappingsPath, statsDClient, regionName);
+        try {
+            warmUp(instance);
+        } catch (IOException | RuntimeException e) {
+            try {
+                instance.close();
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            throw e;
+        }
+        return instance;
+    }
+
+    /**
+     * Replays queries through the instance: the O/D pairs in the CSV file given by the WARM_UP_OD_FILE
+     * env var if set, otherwise WARM_UP_QUERIES random pairs (none by default). PT queries depart at
+     * the time given by the WARM_UP_PT_DEPARTURE_TIME env var (an ISO-8601 instant within the GTFS
+     * feeds' service period), and are skipped if it isn't set.
+     */
+    private void warmUp(RouterInstance instance) throws IOException {
+        String odFilePath = System.getenv("WARM_UP_OD_FILE");
+        int queries = userDefinedProperties.getOrDefault("WARM_UP_QUERIES", defaultProperties.get("WARM_UP_QUERIES"));
+        if (odFilePath == null && queries == 0) {
+            return;
+        }
+        List<double[]> odPairs = odFilePath != null ? RouterWarmUp.readOdPairs(odFilePath)
+                : RouterWarmUp.randomOdPairs(instance.getGraphHopper().getGraphHopperStorage().getBounds(), queries);
+        String ptDepartureTime = System.getenv("WARM_UP_PT_DEPARTURE_TIME");
+        new RouterWarmUp(instance, ptDepartureTime != null ? Instant.parse(ptDepartureTime) : null).run(odPairs);
+    }
+
+    private GraphHopperConfig readGraphHopperConfig() throws IOException {
+        ObjectMapper yaml = Jackson.initObjectMapper(new ObjectMapper(new YAMLFactory()));
+        yaml.registerModule(new GraphHopperConfigModule());
+        JsonNode yamlNode = yaml.readTree(new File(configPath));
+        return yaml.convertValue(yamlNode.get("graphhopper"), GraphHopperConfig.class);
+    }
+
+    private BulkheadInterceptor.Bulkhead createBulkhead(String name, String propertyPrefix) {
+        BulkheadInterceptor.Bulkhead bulkhead = new BulkheadInterceptor.Bulkhead(name,
+                userDefinedProperties.getOrDefault(propertyPrefix + "_BULKHEAD_THREADS", defaultProperties.get(propertyPrefix + "_BULKHEAD_THREADS")),
+                userDefinedProperties.getOrDefault(propertyPrefix + "_BULKHEAD_QUEUE", defaultProperties.get(propertyPrefix + "_BULKHEAD_QUEUE")));
+        bulkheads.add(bulkhead);
+        return bulkhead;
     }
 
     /**
@@ -241,18 +429,62 @@ public class RouterServer {
 
         @Override
         public void run(MyConfiguration configuration, Environment environment) throws Exception {
-            environment.servlets().addServlet("grpc-web", GrpcWebTrafficServlet.class).addMapping("/api/*");
+            ServletRegistration.Dynamic grpcWeb = environment.servlets().addServlet("grpc-web", GrpcWebTrafficServlet.class);
+            grpcWeb.setAsyncSupported(true);
+            grpcWeb.addMapping("/api/*");
         }
     }
 
     private static Map<String, Integer> makeDefaultPropertiesMap() {
         Map<String, Integer> defaultProperties = Maps.newHashMap();
         defaultProperties.put("SERVER_THREADS", 3);
+        // Executor strategy for RPCs: 0 = fixed pool of SERVER_THREADS, 1 = work-stealing ForkJoinPool with
+        // SERVER_THREADS parallelism, 2 = virtual thread per call (on JDKs that support them)
+        defaultProperties.put("SERVER_EXECUTOR", 0);
         defaultProperties.put("BOSS_EVENT_LOOP_THREADS", 1);
         defaultProperties.put("WORKER_EVENT_LOOP_THREADS", 2);
         defaultProperties.put("CONN_TIME_MAX_AGE_SECS", 120);
         defaultProperties.put("CONN_TIME_GRACE_PERIOD_SECS", 60);
         defaultProperties.put("MAX_CONC_CALLS_PER_CONN", 500);
+        // Channels and callback threads used by the grpc-web proxy to call the gRPC service (in-process,
+        // only the callback threads are used)
+        defaultProperties.put("GRPC_WEB_CHANNELS", 2);
+        defaultProperties.put("GRPC_WEB_EXECUTOR_THREADS", 4);
+        // 1 to connect the grpc-web proxy to the gRPC service in-process, 0 to use a loopback connection
+        defaultProperties.put("GRPC_WEB_IN_PROCESS", 1);
+        // Deadline for each call made through the grpc-web proxy
+        defaultProperties.put("GRPC_WEB_DEADLINE_SECS", 150);
+        // 1 to serve grpc-web from Netty instead of Jetty (without the debug UI), on GRPC_WEB_PORT;
+        // with Jetty, the port is set in config-proxy.yaml
+        defaultProperties.put("GRPC_WEB_NETTY", 0);
+        defaultProperties.put("GRPC_WEB_PORT", 8998);
+        // 1 to run each RPC method on its own pool of *_BULKHEAD_THREADS threads, rejecting calls with
+        // RESOURCE_EXHAUSTED once *_BULKHEAD_QUEUE calls are waiting for one; 0 to run all on SERVER_THREADS
+        defaultProperties.put("BULKHEADS", 0);
+        defaultProperties.put("STREET_BULKHEAD_THREADS", 3);
+        defaultProperties.put("STREET_BULKHEAD_QUEUE", 200);
+        defaultProperties.put("PT_BULKHEAD_THREADS", 2);
+        defaultProperties.put("PT_BULKHEAD_QUEUE", 50);
+        defaultProperties.put("MATRIX_BULKHEAD_THREADS", 1);
+        defaultProperties.put("MATRIX_BULKHEAD_QUEUE", 10);
+        defaultProperties.put("INFO_BULKHEAD_THREADS", 1);
+        defaultProperties.put("INFO_BULKHEAD_QUEUE", 50);
+        // 1 to shed calls with UNAVAILABLE once more are in flight than a limit adapted to observed
+        // latency, kept between CONCURRENCY_LIMIT_MIN and CONCURRENCY_LIMIT_MAX
+        defaultProperties.put("ADAPTIVE_CONCURRENCY_LIMIT", 0);
+        defaultProperties.put("CONCURRENCY_LIMIT_INITIAL", 20);
+        defaultProperties.put("CONCURRENCY_LIMIT_MIN", 4);
+        defaultProperties.put("CONCURRENCY_LIMIT_MAX", 500);
+        // 1 to use the native epoll transport when running on Linux (falling back to NIO elsewhere), 0 for NIO.
+        // Off until scripts.PerformanceTest (e.g. with 16 concurrent requests) shows epoll is faster for our load
+        defaultProperties.put("EPOLL", 0);
+        // 1 to serve the router.RouterAdmin/ReloadGraph RPC, which swaps in a graph already imported into
+        // another directory under the GRAPH_RELOAD_ROOT env var, without restarting; see RouterReloader
+        defaultProperties.put("GRAPH_RELOAD_RPC", 0);
+        // Number of random O/D pairs to route with each profile, PT and matrix before serving a graph (at startup
+        // or after a reload), unless WARM_UP_OD_FILE is set; 0 to skip warm-up. Warm-up runs serially before serving,
+        // so it's opt-in. See RouterServer.warmUp()
+        defaultProperties.put("WARM_UP_QUERIES", 0);
         // Defaults for below settings are all GRPC defaults
         defaultProperties.put("KEEP_ALIVE_TIME_SECS", (int) (GrpcUtil.DEFAULT_SERVER_KEEPALIVE_TIME_NANOS * 1e-9));
         defaultProperties.put("KEEP_ALIVE_TIMEOUT_SECS", (int) (GrpcUtil.DEFAULT_SERVER_KEEPALIVE_TIMEOUT_NANOS * 1e-9));
@@ -0,0 +1,204 @@
+package com.replica;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.protobuf.Timestamp;
+import com.graphhopper.config.Profile;
+import com.graphhopper.util.shapes.BBox;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import router.RouterOuterClass.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Replays sample queries through a RouterInstance before it serves traffic, so that the first real
+ * calls don't pay for cold memory-mapped graph pages, cold JIT-compiled code and cold MapDB caches.
+ *
+ * Queries are made for O/D pairs read from a CSV file in the format used by scripts.PerformanceTest
+ * (a header, then from_lat,from_lon,to_lat,to_lon per line), or generated at random within the
+ * graph's bounds. Each pair is routed with every street profile and, if the graph has transit and a
+ * PT departure time is given, PT; consecutive pairs are also grouped into matrix requests. PT queries
+ * need a departure time within the GTFS feeds' service period to find any trips, so there's no
+ * default. Calls go through RouterImpl (without reporting stats), so reply building is warmed too.
+ * Latency percentiles for each kind of query are logged at the end.
+ */
+public class RouterWarmUp {
+    private static final Logger logger = LoggerFactory.getLogger(RouterWarmUp.class);
+
+    private static final int MATRIX_SIZE = 10;
+
+    private final RouterInstance routerInstance;
+    private final Instant ptDepartureTime;
+    private final Map<String, List<Double>> latenciesMillis = Maps.newLinkedHashMap();
+    private final Map<String, Integer> errorCounts = Maps.newHashMap();
+
+    /**
+     * @param ptDepartureTime departure time for PT queries, or null to skip them
+     */
+    public RouterWarmUp(RouterInstance routerInstance, Instant ptDepartureTime) {
+        this.routerInstance = routerInstance;
+        this.ptDepartureTime = ptDepartureTime;
+    }
+
+    /**
+     * Reads O/D pairs as {from_lat, from_lon, to_lat, to_lon}, skipping the header line and blank lines
+     */
+    public static List<double[]> readOdPairs(String odFilePath) throws IOException {
+        try (Stream<String> lines = Files.lines(Paths.get(odFilePath))) {
+            return lines.skip(1)
+                    .filter(line -> !line.trim().isEmpty())
+                    .map(line -> line.split(","))
+                    .map(line -> new double[]{Double.parseDouble(line[0]), Double.parseDouble(line[1]),
+                            Double.parseDouble(line[2]), Double.parseDouble(line[3])})
+                    .collect(Collectors.toList());
+        }
+    }
+
+    public static List<double[]> randomOdPairs(BBox bounds, int count) {
+        Random random = new Random(0);
+        List<double[]> odPairs = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            odPairs.add(new double[]{
+                    bounds.minLat + random.nextDouble() * (bounds.maxLat - bounds.minLat),
+                    bounds.minLon + random.nextDouble() * (bounds.maxLon - bounds.minLon),
+                    bounds.minLat + random.nextDouble() * (bounds.maxLat - bounds.minLat),
+                    bounds.minLon + random.nextDouble() * (bounds.maxLon - bounds.minLon)});
+        }
+        return odPairs;
+    }
+
+    public void run(List<double[]> odPairs) {
+        long startTime = System.currentTimeMillis();
+        RouterImpl router = routerInstance.getWarmUpRouter();
+        List<String> profiles = routerInstance.getGraphHopper().getProfiles().stream()
+                .map(Profile::getName).collect(Collectors.toList());
+        boolean warmUpPt = routerInstance.hasPtRouter() && ptDepartureTime != null;
+        if (routerInstance.hasPtRouter() && ptDepartureTime == null) {
+            logger.warn("No PT departure time given for warm-up; skipping PT queries");
+        }
+        logger.info("Warming up router with " + odPairs.size() + " O/D pairs for profiles " + profiles
+                + (warmUpPt ? " and PT" : ""));
+
+        for (double[] odPair : odPairs) {
+            for (String profile : profiles) {
+                StreetRouteRequest request = StreetRouteRequest.newBuilder()
+                        .addPoints(point(odPair[0], odPair[1]))
+                        .addPoints(point(odPair[2], odPair[3]))
+                        .setProfile(profile)
+                        .build();
+                time(profile, (StreamObserver<StreetRouteReply> observer) -> router.routeStreetMode(request, observer));
+            }
+            if (warmUpPt) {
+                // Same settings as scripts.PerformanceTest
+                PtRouteRequest request = PtRouteRequest.newBuilder()
+                        .addPoints(point(odPair[0], odPair[1]))
+                        .addPoints(point(odPair[2], odPair[3]))
+                        .setEarliestDepartureTime(Timestamp.newBuilder().setSeconds(ptDepartureTime.getEpochSecond()).build())
+                        .setLimitSolutions(4)
+                        .setMaxProfileDuration(10)
+                        .setBetaWalkTime(1.5)
+                        .setLimitStreetTimeSeconds(1440)
+                        .setBetaTransfers(1440000)
+                        .build();
+                time("pt", (StreamObserver<PtRouteReply> observer) -> router.routePt(request, observer));
+            }
+        }
+
+        for (int i = 0; i + MATRIX_SIZE <= odPairs.size(); i += MATRIX_SIZE) {
+            List<double[]> block = odPairs.subList(i, i + MATRIX_SIZE);
+            for (String profile : profiles) {
+                MatrixRouteRequest request = MatrixRouteRequest.newBuilder()
+                        .addAllFromPoints(block.stream().map(odPair -> point(odPair[0], odPair[1])).collect(Collectors.toList()))
+                        .addAllToPoints(block.stream().map(odPair -> point(odPair[2], odPair[3])).collect(Collectors.toList()))
+                        .addOutArrays("times")
+                        .addOutArrays("distances")
+                        .setMode(profile)
+                        .build();
+                time(profile + "_matrix", (StreamObserver<MatrixRouteReply> observer) -> router.routeMatrix(request, observer));
+            }
+        }
+
+        logger.info("Finished warm-up in " + (System.currentTimeMillis() - startTime) + " ms");
+        report();
+    }
+
+    private static Point point(double lat, double lon) {
+        return Point.newBuilder().setLat(lat).setLon(lon).build();
+    }
+
+    private interface Call<T> {
+        void run(StreamObserver<T> observer);
+    }
+
+    // RouterImpl's methods complete their calls before returning, so a call's latency is the time it takes to run
+    private <T> void time(String queryType, Call<T> call) {
+        boolean[] failed = new boolean[1];
+        long startNanos = System.nanoTime();
+        try {
+            call.run(new StreamObserver<T>() {
+                @Override
+                public void onNext(T value) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    failed[0] = true;
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+            });
+        } catch (RuntimeException e) {
+            failed[0] = true;
+        }
+        record(queryType, (System.nanoTime() - startNanos) / 1e6, failed[0]);
+    }
+
+    @VisibleForTesting
+    void record(String queryType, double latencyMillis, boolean failed) {
+        latenciesMillis.computeIfAbsent(queryType, type -> Lists.newArrayList()).add(latencyMillis);
+        if (failed) {
+            // Errors are expected for pairs that can't be routed (e.g. random points off the network)
+            errorCounts.merge(queryType, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Logs, and returns, a line of latency percentiles for each kind of query
+     */
+    @VisibleForTesting
+    List<String> report() {
+        List<String> lines = Lists.newArrayList();
+        for (Map.Entry<String, List<Double>> entry : latenciesMillis.entrySet()) {
+            List<Double> latencies = entry.getValue();
+            Collections.sort(latencies);
+            String line = String.format(Locale.ROOT, "Warm-up latency for %s: %d queries (%d errors); p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms",
+                    entry.getKey(), latencies.size(), errorCounts.getOrDefault(entry.getKey(), 0),
+                    percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                    latencies.get(latencies.size() - 1));
+            logger.info(line);
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    @VisibleForTesting
+    static double percentile(List<Double> sortedValues, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedValues.size()) - 1;
+        return sortedValues.get(Math.max(0, index));
+    }
+}
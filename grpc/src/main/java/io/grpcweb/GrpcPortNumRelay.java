@@ -15,9 +15,60 @@
  */
 package io.grpcweb;
 
+import com.timgroup.statsd.StatsDClient;
+import io.grpc.ServiceDescriptor;
+
 public class GrpcPortNumRelay {
+  private static final long DEFAULT_CALL_DEADLINE_MILLIS = 150000;
+
   public static void setGrpcPortNum(int i) {
+    setGrpcPortNum(i, 1, 1, DEFAULT_CALL_DEADLINE_MILLIS, null);
+  }
+
+  /**
+   * @param channelCount number of channels (each with its own connection) to the grpc-service
+   * @param executorThreads number of threads running the proxied calls' callbacks
+   * @param callDeadlineMillis deadline given to each proxied call
+   * @param statsDClient client used to report proxy metrics, or null
+   */
+  public static void setGrpcPortNum(int i, int channelCount, int executorThreads,
+      long callDeadlineMillis, StatsDClient statsDClient) {
     // TODO This class & method names are wrong - involves more than just setting the portnum
-    GrpcWebGuiceModule.init(i);
+    GrpcWebGuiceModule.init(GrpcServiceConnectionManager.forPort(i, channelCount,
+        executorThreads, callDeadlineMillis, statsDClient));
+  }
+
+  /**
+   * Registers the methods of services the proxy will be called for up front, so their first calls
+   * don't need to look them up reflectively.
+   */
+  public static void registerServices(ServiceDescriptor... services) {
+    for (ServiceDescriptor service : services) {
+      GrpcWebGuiceModule.getRpcMethodRegistry().register(service);
+    }
+  }
+
+  /**
+   * Connects the proxy to the grpc-service registered with an InProcessServer under the given name,
+   * instead of over the network.
+   *
+   * @param executorThreads number of threads running the proxied calls' callbacks (which write
+   *     the grpc-web responses), separate from the grpc-service's threads
+   */
+  public static void setInProcessServerName(String serverName, int executorThreads,
+      long callDeadlineMillis, StatsDClient statsDClient) {
+    GrpcWebGuiceModule.init(GrpcServiceConnectionManager.forInProcessServer(serverName,
+        executorThreads, callDeadlineMillis, statsDClient));
+  }
+
+  /**
+   * Shuts down the proxy's channels to the grpc-service, waiting for calls on them to finish, and
+   * then its executor. Does nothing if the proxy was never connected.
+   */
+  public static void shutdown() throws InterruptedException {
+    GrpcServiceConnectionManager connectionManager = GrpcWebGuiceModule.getConnectionManager();
+    if (connectionManager != null) {
+      connectionManager.shutdown();
+    }
   }
 }
@@ -17,36 +17,180 @@
 package io.grpcweb;
 
 import com.google.inject.Singleton;
+import com.timgroup.statsd.StatsDClient;
+import io.grpc.CallOptions;
 import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
 import io.grpc.ClientInterceptors;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
-import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
-import io.grpc.netty.shaded.io.netty.channel.epoll.EpollServerSocketChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
 
 import java.lang.invoke.MethodHandles;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 /**
- * TODO: Manage the connection pool to talk to the grpc-service
+ * Manages the pool of channels used to talk to the grpc-service. Each channel holds its own HTTP/2
+ * connection, on which calls are multiplexed; calls are spread over the channels round-robin, so
+ * concurrent grpc-web requests aren't all funneled through a single connection. Call callbacks run
+ * on a shared executor sized by the caller.
+ *
+ * Alternatively, the proxy can talk to an in-process registration of the grpc-service, skipping
+ * the network stack and message (de)serialization between the proxy and the service. In that case
+ * a single channel is used. Callbacks still run on the proxy's own executor rather than directly on
+ * the service's threads, so a slow browser client holds up a proxy thread while its response is
+ * written, not one of the threads routing requests.
+ *
+ * Each proxied call is given a deadline (see getCallDeadlineMillis()), which is propagated to the
+ * grpc-service.
+ *
+ * Also tracks the number of in-flight calls through the proxy, reported to statsd (if configured)
+ * as the routers.grpc_web.in_flight_calls gauge.
  */
 @Singleton
 class GrpcServiceConnectionManager {
   private static final Logger LOG =
       Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
-  private final ManagedChannel mChannel;
+  private final ManagedChannel[] mChannels;
+  private final ExecutorService mExecutor;
+  private final StatsDClient mStatsDClient;
+  private final long mCallDeadlineMillis;
+  private final AtomicInteger mNextChannel = new AtomicInteger();
+  private final AtomicInteger mInFlightCalls = new AtomicInteger();
+  private final AtomicLong mTotalCalls = new AtomicLong();
+
+  private GrpcServiceConnectionManager(ManagedChannel[] channels, ExecutorService executor,
+      long callDeadlineMillis, StatsDClient statsDClient) {
+    if (callDeadlineMillis <= 0) {
+      throw new IllegalArgumentException("grpc-web call deadline must be positive, got "
+          + callDeadlineMillis + "ms");
+    }
+    mChannels = channels;
+    mExecutor = executor;
+    mCallDeadlineMillis = callDeadlineMillis;
+    mStatsDClient = statsDClient;
+  }
+
+  static GrpcServiceConnectionManager forPort(int grpcPortNum, int channelCount,
+      int executorThreads, long callDeadlineMillis, StatsDClient statsDClient) {
+    if (channelCount < 1 || executorThreads < 1) {
+      throw new IllegalArgumentException("grpc-web proxy needs at least one channel and executor "
+          + "thread, got " + channelCount + " channel(s) and " + executorThreads + " thread(s)");
+    }
+    ExecutorService executor = createExecutor(executorThreads);
+    ManagedChannel[] channels = new ManagedChannel[channelCount];
+    for (int i = 0; i < channelCount; i++) {
+      channels[i] = ManagedChannelBuilder.forAddress("localhost", grpcPortNum)
+          .usePlaintext()
+          .executor(executor)
+          .build();
+    }
+    LOG.info("**** " + channelCount + " connection channel(s) initiated, using "
+        + executorThreads + " executor thread(s)");
+    return new GrpcServiceConnectionManager(channels, executor, callDeadlineMillis, statsDClient);
+  }
+
+  static GrpcServiceConnectionManager forInProcessServer(String serverName, int executorThreads,
+      long callDeadlineMillis, StatsDClient statsDClient) {
+    if (executorThreads < 1) {
+      throw new IllegalArgumentException("grpc-web proxy needs at least one executor thread, got "
+          + executorThreads);
+    }
+    ExecutorService executor = createExecutor(executorThreads);
+    ManagedChannel channel = InProcessChannelBuilder.forName(serverName)
+        .executor(executor)
+        .build();
+    LOG.info("**** in-process channel to " + serverName + " initiated, using " + executorThreads
+        + " executor thread(s)");
+    return new GrpcServiceConnectionManager(new ManagedChannel[] {channel}, executor,
+        callDeadlineMillis, statsDClient);
+  }
 
-  GrpcServiceConnectionManager(int grpcPortNum) {
-    // TODO: Manage a connection pool.
-    mChannel = ManagedChannelBuilder.forAddress("localhost", grpcPortNum)
-            .usePlaintext()
-            .executor(Executors.newFixedThreadPool(1))
-            .build();
-    LOG.info("**** connection channel initiated");
+  private static ExecutorService createExecutor(int threads) {
+    AtomicInteger threadCount = new AtomicInteger();
+    return Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "grpc-web-proxy-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
   }
 
   Channel getChannelWithClientInterceptor(GrpcWebClientInterceptor interceptor) {
-    return ClientInterceptors.intercept(mChannel, interceptor);
+    return ClientInterceptors.intercept(getChannel(), interceptor);
+  }
+
+  /**
+   * Returns the next channel in the pool.
+   */
+  Channel getChannel() {
+    ManagedChannel channel =
+        mChannels[Math.floorMod(mNextChannel.getAndIncrement(), mChannels.length)];
+    return ClientInterceptors.intercept(channel, new InFlightCallInterceptor());
+  }
+
+  /**
+   * Time after which a proxied call is cancelled with DEADLINE_EXCEEDED.
+   */
+  long getCallDeadlineMillis() {
+    return mCallDeadlineMillis;
+  }
+
+  int getInFlightCalls() {
+    return mInFlightCalls.get();
+  }
+
+  long getTotalCalls() {
+    return mTotalCalls.get();
+  }
+
+  void shutdown() throws InterruptedException {
+    for (ManagedChannel channel : mChannels) {
+      channel.shutdown();
+    }
+    for (ManagedChannel channel : mChannels) {
+      channel.awaitTermination(30, TimeUnit.SECONDS);
+    }
+    mExecutor.shutdown();
+  }
+
+  private void reportInFlightCalls(int inFlightCalls) {
+    if (mStatsDClient != null) {
+      mStatsDClient.gauge("routers.grpc_web.in_flight_calls", inFlightCalls);
+    }
+  }
+
+  /**
+   * Counts a call as in-flight from when it's started until it's closed.
+   */
+  private class InFlightCallInterceptor implements ClientInterceptor {
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+        MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel channel) {
+      return new SimpleForwardingClientCall<ReqT, RespT>(channel.newCall(method, callOptions)) {
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+          mTotalCalls.incrementAndGet();
+          reportInFlightCalls(mInFlightCalls.incrementAndGet());
+          super.start(new SimpleForwardingClientCallListener<RespT>(responseListener) {
+            @Override
+            public void onClose(Status status, Metadata trailers) {
+              reportInFlightCalls(mInFlightCalls.decrementAndGet());
+              super.onClose(status, trailers);
+            }
+          }, headers);
+        }
+      };
+    }
   }
 }
@@ -26,18 +26,12 @@ import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.Status;
-import java.util.concurrent.CountDownLatch;
-import javax.servlet.http.HttpServletResponse;
 
 class GrpcWebClientInterceptor implements ClientInterceptor {
 
-  private final CountDownLatch mLatch;
-  private final HttpServletResponse mResp;
   private final SendResponse mSendResponse;
 
-  GrpcWebClientInterceptor(HttpServletResponse resp, CountDownLatch latch, SendResponse send) {
-    mLatch = latch;
-    mResp = resp;
+  GrpcWebClientInterceptor(SendResponse send) {
     mSendResponse = send;
   }
 
@@ -74,7 +68,6 @@ class GrpcWebClientInterceptor implements ClientInterceptor {
         // TODO is this correct? what if onError() never gets called?
       } else {
         mSendResponse.writeTrailer(s, t);
-        mLatch.countDown();
       }
       super.onClose(s, t);
     }
@@ -21,11 +21,12 @@ import com.google.inject.Injector;
 
 class GrpcWebGuiceModule extends AbstractModule {
   private static Injector sInjector;
-  private static int sGrpcPortNum;
+  private static GrpcServiceConnectionManager sConnectionManager;
+  private static final RpcMethodRegistry sRpcMethodRegistry = new RpcMethodRegistry();
 
   // This method should be called only once.
-  static void init(int i) {
-    sGrpcPortNum = i;
+  static void init(GrpcServiceConnectionManager connectionManager) {
+    sConnectionManager = connectionManager;
     sInjector = Guice.createInjector(new GrpcWebGuiceModule());
   }
 
@@ -33,9 +34,19 @@ class GrpcWebGuiceModule extends AbstractModule {
     return sInjector;
   }
 
+  static GrpcServiceConnectionManager getConnectionManager() {
+    return sConnectionManager;
+  }
+
+  static RpcMethodRegistry getRpcMethodRegistry() {
+    return sRpcMethodRegistry;
+  }
+
   @Override
   protected void configure() {
     bind(GrpcServiceConnectionManager.class)
-        .toInstance(new GrpcServiceConnectionManager(sGrpcPortNum));
+        .toInstance(sConnectionManager);
+    bind(RpcMethodRegistry.class)
+        .toInstance(sRpcMethodRegistry);
   }
 }
@@ -15,112 +15,164 @@
  */
 package io.grpcweb;
 
+import com.google.protobuf.CodedInputStream;
 import io.grpcweb.MessageHandler.ContentType;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.invoke.MethodHandles;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.logging.Logger;
-import org.apache.commons.io.IOUtils;
 
 /**
  * Reads frames from the input bytes and returns a single message.
+ *
+ * The request body is read into a single buffer, sized from the request's content length where
+ * known (up to MAX_INITIAL_BUFFER_SIZE, growing from there as bytes are read, so a client can't
+ * make the proxy allocate more than it sends), and frames are located in place. Bodies of more
+ * than MAX_INPUT_BYTES are rejected. In the common single-frame case the message is parsed
+ * directly from that buffer; only multi-frame messages are copied, once, to concatenate them.
  */
 class MessageDeframer {
   private static final Logger LOG =
       Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
 
   static final byte DATA_BYTE = (byte) 0x00;
+  private static final int PREFIX_LENGTH = 5;
+  private static final int MIN_BUFFER_SIZE = 256;
+  private static final int MAX_INITIAL_BUFFER_SIZE = 64 * 1024;
+  // The same limit NettyGrpcWebServer puts on request bodies
+  static final int MAX_INPUT_BYTES = 1 << 24;
 
   // TODO: fix this code to be able to handle upto 4GB input size.
   private int mLength = 0;
   private int mReadSoFar = 0;
 
-  private ArrayList<byte[]> mFrames = new ArrayList<>();
+  private byte[] mInBytes;
+  private int mInLength;
+  // Offset of the first frame's message bytes; when there are multiple frames, the message is
+  // concatenated into mMsg
+  private int mFirstFrameOffset = -1;
   private byte[] mMsg = null;
   private int mNumFrames;
 
-  byte[] getMessageBytes() { return mMsg;}
   int getLength() { return mLength;}
   int getNumberOfFrames() {return mNumFrames;}
 
-  /** Reads the bytes from the given InputStream and populates bytes in {@link #mMsg}
+  byte[] getMessageBytes() {
+    if (mMsg == null) {
+      mMsg = Arrays.copyOfRange(mInBytes, mFirstFrameOffset, mFirstFrameOffset + mLength);
+    }
+    return mMsg;
+  }
+
+  /**
+   * Returns a stream over the message bytes, for parsing without copying them.
    */
-  boolean processInput(InputStream in, ContentType contentType) {
-    byte[] inBytes;
+  CodedInputStream newMessageInput() {
+    if (mMsg != null) {
+      return CodedInputStream.newInstance(mMsg);
+    }
+    return CodedInputStream.newInstance(mInBytes, mFirstFrameOffset, mLength);
+  }
+
+  /** Reads the bytes from the given InputStream and locates the message within them.
+   *
+   * @param sizeHint expected number of bytes in the stream (e.g. the request's content length),
+   *     or -1 if unknown
+   */
+  boolean processInput(InputStream in, ContentType contentType, int sizeHint) {
     try {
       InputStream inStream = (contentType == ContentType.GRPC_WEB_TEXT)
           ? Base64.getDecoder().wrap(in)
           : in;
-        inBytes = IOUtils.toByteArray(inStream);
+      // base64 encodes 3 bytes in 4
+      int expectedSize = contentType == ContentType.GRPC_WEB_TEXT && sizeHint > 0
+          ? sizeHint / 4 * 3 : sizeHint;
+      readFully(inStream, expectedSize);
     } catch (IOException e) {
-      e.printStackTrace();
-      LOG.warning("invalid input");
+      LOG.warning("invalid input: " + e.getMessage());
       return false;
     }
-    if (inBytes.length < 5) {
+    if (mInLength < PREFIX_LENGTH) {
       LOG.fine("invalid input. Expected minimum of 5 bytes");
       return false;
     }
 
-    while (getNextFrameBytes(inBytes)) {}
-    mNumFrames = mFrames.size();
+    // (offset, length) of each frame's message bytes
+    int[] frames = new int[2];
+    int frameOffset;
+    while ((frameOffset = getNextFrame()) >= 0) {
+      if (2 * mNumFrames == frames.length) {
+        frames = Arrays.copyOf(frames, frames.length * 2);
+      }
+      frames[2 * mNumFrames] = frameOffset;
+      frames[2 * mNumFrames + 1] = mReadSoFar - frameOffset;
+      mNumFrames++;
+    }
+    if (mNumFrames == 0) {
+      return false;
+    }
+    mFirstFrameOffset = frames[0];
 
-    // common case is only one frame.
-    if (mNumFrames == 1) {
-      mMsg = mFrames.get(0);
-    } else {
-      // concatenate all frames into one byte array
-      // TODO: this is inefficient.
+    // common case is only one frame, which is read in place. Otherwise concatenate all frames
+    // into one byte array.
+    if (mNumFrames > 1) {
       mMsg = new byte[mLength];
-      int offset = 0;
-      for (byte[] f : mFrames) {
-        System.arraycopy(f, 0, mMsg, offset, f.length);
-        offset += f.length;
+      int msgOffset = 0;
+      for (int i = 0; i < mNumFrames; i++) {
+        System.arraycopy(mInBytes, frames[2 * i], mMsg, msgOffset, frames[2 * i + 1]);
+        msgOffset += frames[2 * i + 1];
       }
-      mFrames = null;
     }
     return true;
   }
 
-  /** returns true if the next frame is a DATA frame */
-  private boolean getNextFrameBytes(byte[] inBytes) {
+  private void readFully(InputStream in, int sizeHint) throws IOException {
+    // One extra byte, so a correct hint doesn't need the buffer to grow to detect end of stream
+    mInBytes = new byte[Math.max(Math.min(sizeHint, MAX_INITIAL_BUFFER_SIZE - 1) + 1, MIN_BUFFER_SIZE)];
+    mInLength = 0;
+    int read;
+    while ((read = in.read(mInBytes, mInLength, mInBytes.length - mInLength)) != -1) {
+      mInLength += read;
+      if (mInLength == mInBytes.length) {
+        if (mInLength > MAX_INPUT_BYTES) {
+          throw new IOException("input is larger than " + MAX_INPUT_BYTES + " bytes");
+        }
+        mInBytes = Arrays.copyOf(mInBytes, Math.min(mInBytes.length * 2, MAX_INPUT_BYTES + 1));
+      }
+    }
+  }
+
+  /** returns the offset of the next DATA frame's message bytes, or -1 if there isn't one */
+  private int getNextFrame() {
+    if (mInLength - mReadSoFar < PREFIX_LENGTH) {
+      return -1;
+    }
     // Firstbyte should be 0x00 (for this to be a DATA frame)
-    int firstByteValue = inBytes[mReadSoFar] | DATA_BYTE;
+    int firstByteValue = mInBytes[mReadSoFar] | DATA_BYTE;
     if (firstByteValue != 0) {
       LOG.fine("done with DATA bytes");
-      return false;
+      return -1;
     }
 
     // Next 4 bytes = length of the bytes array starting after the 4 bytes.
     int offset = mReadSoFar + 1;
-    int len = ByteBuffer.wrap(inBytes, offset, 4).getInt();
-
-    // Empty message is special case.
-    // TODO: Can this is special handling be removed?
-    if (len == 0) {
-      mFrames.add(new byte[0]);
-      return false;
-    }
+    int len = ((mInBytes[offset] & 0xff) << 24)
+        | ((mInBytes[offset + 1] & 0xff) << 16)
+        | ((mInBytes[offset + 2] & 0xff) << 8)
+        | (mInBytes[offset + 3] & 0xff);
 
     // Make sure we have enough bytes in the inputstream
-    int expectedNumBytes = len + 5 + mReadSoFar;
-    if (inBytes.length < expectedNumBytes) {
+    long expectedNumBytes = (long) len + PREFIX_LENGTH + mReadSoFar;
+    if (len < 0 || mInLength < expectedNumBytes) {
       LOG.warning(String.format("input doesn't have enough bytes. expected: %d, found %d",
-          expectedNumBytes,  inBytes.length));
-      return false;
+          expectedNumBytes,  mInLength));
+      return -1;
     }
 
-    // Read "len" bytes into message
     mLength += len;
-    offset += 4;
-    byte[] inputBytes = Arrays.copyOfRange(inBytes, offset, len + offset);
-    mFrames.add(inputBytes);
-    mReadSoFar += (len + 5);
-    // we have more frames to process, if there are bytes unprocessed
-    return inBytes.length > mReadSoFar;
+    mReadSoFar += (len + PREFIX_LENGTH);
+    return offset + 4;
   }
 }
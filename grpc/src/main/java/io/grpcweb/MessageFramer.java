@@ -29,15 +29,23 @@ class MessageFramer {
     }
   }
 
+  static final int PREFIX_LENGTH = 5;
+
   // TODO: handle more than single frame; i.e., input byte array size > (2GB - 1)
   byte[] getPrefix(byte[] in, Type type) {
-    int len = in.length;
-    return new byte[] {
-        type.value,
-        (byte) ((len >> 24) & 0xff),
-        (byte) ((len >> 16) & 0xff),
-        (byte) ((len >> 8) & 0xff),
-        (byte) ((len >> 0) & 0xff),
-    };
+    byte[] prefix = new byte[PREFIX_LENGTH];
+    writePrefix(prefix, type, in.length);
+    return prefix;
+  }
+
+  /**
+   * Writes the prefix for a frame of the given length into prefix, so it can be reused.
+   */
+  static void writePrefix(byte[] prefix, Type type, int len) {
+    prefix[0] = type.value;
+    prefix[1] = (byte) ((len >> 24) & 0xff);
+    prefix[2] = (byte) ((len >> 16) & 0xff);
+    prefix[3] = (byte) ((len >> 8) & 0xff);
+    prefix[4] = (byte) ((len >> 0) & 0xff);
   }
 }
@@ -16,8 +16,6 @@
 package io.grpcweb;
 
 import com.google.common.annotations.VisibleForTesting;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
@@ -52,35 +50,4 @@ class MessageHandler {
   static ContentType getContentType(String type) {
     return GRPC_GCP_CONTENT_TYPES.get(type);
   }
-
-  /**
-   * Find the input arg protobuf class for the given rpc-method.
-   * Convert the given bytes to the input protobuf. return that.
-   */
-  Object getInputProtobufObj(Method rpcMethod, byte[] in) {
-    Class[] inputArgs = rpcMethod.getParameterTypes();
-    Class inputArgClass = inputArgs[0];
-
-    // use the inputArg classtype to create a protobuf object
-    Method parseFromObj;
-    try {
-      parseFromObj = inputArgClass.getMethod("parseFrom", byte[].class);
-    } catch (NoSuchMethodException e) {
-      throw new IllegalArgumentException("Couldn't find method in 'parseFrom' in "
-          + inputArgClass.getName());
-    }
-
-    Object inputObj;
-    try {
-      inputObj = parseFromObj.invoke(null, in);
-    } catch (InvocationTargetException | IllegalAccessException e) {
-      throw new IllegalArgumentException(e);
-    }
-
-    if (inputObj == null || !inputArgClass.isInstance(inputObj)) {
-      throw new IllegalArgumentException(
-          "Input obj is **not** instance of the correct input class type");
-    }
-    return inputObj;
-  }
 }
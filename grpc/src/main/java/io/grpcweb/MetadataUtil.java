@@ -51,15 +51,7 @@ class MetadataUtil {
           // this will be a short list usually.
           List<String> list = Collections.list(values);
           for (String s : list) {
-            if (headerName.toLowerCase().endsWith(BINARY_HEADER_SUFFIX)) {
-              // Binary header
-              httpHeaders.put(
-                  Metadata.Key.of(headerName, Metadata.BINARY_BYTE_MARSHALLER), s.getBytes());
-            } else {
-              // String header
-              httpHeaders.put(
-                  Metadata.Key.of(headerName, Metadata.ASCII_STRING_MARSHALLER), s);
-            }
+            putHeader(httpHeaders, headerName, s);
           }
         }
       }
@@ -67,6 +59,35 @@ class MetadataUtil {
     return httpHeaders;
   }
 
+  /**
+   * Same as getHtpHeaders(HttpServletRequest), for requests served outside of a servlet container.
+   */
+  static Metadata getHtpHeaders(Iterable<Map.Entry<String, String>> headers) {
+    Metadata httpHeaders = new Metadata();
+    for (Map.Entry<String, String> header : headers) {
+      String headerName = header.getKey();
+      if (EXCLUDED.contains(headerName.toLowerCase())) {
+        continue;
+      }
+      if (headerName.toLowerCase().startsWith(GRPC_HEADER_PREFIX)) {
+        putHeader(httpHeaders, headerName, header.getValue());
+      }
+    }
+    return httpHeaders;
+  }
+
+  private static void putHeader(Metadata httpHeaders, String headerName, String value) {
+    if (headerName.toLowerCase().endsWith(BINARY_HEADER_SUFFIX)) {
+      // Binary header
+      httpHeaders.put(
+          Metadata.Key.of(headerName, Metadata.BINARY_BYTE_MARSHALLER), value.getBytes());
+    } else {
+      // String header
+      httpHeaders.put(
+          Metadata.Key.of(headerName, Metadata.ASCII_STRING_MARSHALLER), value);
+    }
+  }
+
   static Map<String, String> getHttpHeadersFromMetadata(Metadata trailer) {
     Map<String, String> map = new HashMap<>();
     for (String key : trailer.keys()) {
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2020  Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.grpcweb;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptors;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.netty.shaded.io.netty.bootstrap.ServerBootstrap;
+import io.grpc.netty.shaded.io.netty.buffer.ByteBuf;
+import io.grpc.netty.shaded.io.netty.buffer.ByteBufInputStream;
+import io.grpc.netty.shaded.io.netty.buffer.ByteBufOutputStream;
+import io.grpc.netty.shaded.io.netty.buffer.Unpooled;
+import io.grpc.netty.shaded.io.netty.channel.ChannelFuture;
+import io.grpc.netty.shaded.io.netty.channel.ChannelFutureListener;
+import io.grpc.netty.shaded.io.netty.channel.ChannelHandlerContext;
+import io.grpc.netty.shaded.io.netty.channel.ChannelInitializer;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.ServerChannel;
+import io.grpc.netty.shaded.io.netty.channel.SimpleChannelInboundHandler;
+import io.grpc.netty.shaded.io.netty.channel.socket.SocketChannel;
+import io.grpc.netty.shaded.io.netty.handler.codec.base64.Base64;
+import io.grpc.netty.shaded.io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.grpc.netty.shaded.io.netty.handler.codec.http.DefaultHttpContent;
+import io.grpc.netty.shaded.io.netty.handler.codec.http.DefaultHttpResponse;
+import io.grpc.netty.shaded.io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.grpc.netty.shaded.io.netty.handler.codec.http.FullHttpRequest;
+import io.grpc.netty.shaded.io.netty.handler.codec.http.FullHttpResponse;
+import io.grpc.netty.shaded.io.netty.handler.codec.http.HttpHeaderNames;
+import io.grpc.netty.shaded.io.netty.handler.codec.http.HttpObjectAggregator;
+import io.grpc.netty.shaded.io.netty.handler.codec.http.HttpResponse;
+import io.grpc.netty.shaded.io.netty.handler.codec.http.HttpResponseStatus;
+import io.grpc.netty.shaded.io.netty.handler.codec.http.HttpServerCodec;
+import io.grpc.netty.shaded.io.netty.handler.codec.http.HttpUtil;
+import io.grpc.netty.shaded.io.netty.handler.codec.http.HttpVersion;
+import io.grpc.netty.shaded.io.netty.handler.codec.http.QueryStringDecoder;
+import io.grpc.stub.MetadataUtils;
+import io.grpcweb.MessageHandler.ContentType;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Serves grpc-web traffic over HTTP/1.1 directly from Netty, as an alternative to hosting
+ * GrpcWebTrafficServlet in a separate Jetty server. Runs on event loop groups supplied by the
+ * caller (typically the gRPC server's own, with the matching NIO or epoll server channel type), and
+ * forwards calls to the grpc-service through the same GrpcServiceConnectionManager and
+ * RpcMethodRegistry as the servlet.
+ *
+ * Only grpc-web calls under /api/ are served; static content (e.g. the debug UI) is only available
+ * from the Jetty server.
+ */
+public class NettyGrpcWebServer {
+  private static final Logger LOG =
+      Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+  private static final String API_PATH = "/api/";
+  private static final int MAX_REQUEST_BYTES = 1 << 24;
+
+  private final int mPort;
+  private final EventLoopGroup mBossGroup;
+  private final EventLoopGroup mWorkerGroup;
+  private final Class<? extends ServerChannel> mServerChannelType;
+  private io.grpc.netty.shaded.io.netty.channel.Channel mServerChannel;
+
+  public NettyGrpcWebServer(int port, EventLoopGroup bossGroup, EventLoopGroup workerGroup,
+      Class<? extends ServerChannel> serverChannelType) {
+    mPort = port;
+    mBossGroup = bossGroup;
+    mWorkerGroup = workerGroup;
+    mServerChannelType = serverChannelType;
+  }
+
+  /**
+   * Starts listening; the grpc-web proxy must already have been set up via GrpcPortNumRelay.
+   */
+  public NettyGrpcWebServer start() throws InterruptedException {
+    GrpcServiceConnectionManager connectionManager =
+        GrpcWebGuiceModule.getInjector().getInstance(GrpcServiceConnectionManager.class);
+    RpcMethodRegistry rpcMethodRegistry = GrpcWebGuiceModule.getRpcMethodRegistry();
+    mServerChannel = new ServerBootstrap()
+        .group(mBossGroup, mWorkerGroup)
+        .channel(mServerChannelType)
+        .childHandler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected void initChannel(SocketChannel ch) {
+            ch.pipeline()
+                .addLast(new HttpServerCodec())
+                .addLast(new HttpObjectAggregator(MAX_REQUEST_BYTES))
+                .addLast(new GrpcWebHandler(connectionManager, rpcMethodRegistry));
+          }
+        })
+        .bind(mPort)
+        .sync()
+        .channel();
+    LOG.info("****  started gRPC-web Service on Netty, port# " + mPort);
+    return this;
+  }
+
+  public void stop() throws InterruptedException {
+    if (mServerChannel != null) {
+      mServerChannel.close().sync();
+    }
+  }
+
+  /**
+   * Handles the grpc-web requests on one connection, one at a time.
+   */
+  private static class GrpcWebHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+    private final GrpcServiceConnectionManager mConnectionManager;
+    private final RpcMethodRegistry mRpcMethodRegistry;
+    private volatile ClientCall<Object, Object> mCurrentCall;
+
+    GrpcWebHandler(GrpcServiceConnectionManager connectionManager,
+        RpcMethodRegistry rpcMethodRegistry) {
+      mConnectionManager = connectionManager;
+      mRpcMethodRegistry = rpcMethodRegistry;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest req) {
+      boolean keepAlive = HttpUtil.isKeepAlive(req);
+      String path = new QueryStringDecoder(req.uri()).path();
+      if (!path.startsWith(API_PATH)) {
+        sendStatus(ctx, HttpResponseStatus.NOT_FOUND, keepAlive);
+        return;
+      }
+      String contentTypeHeader = req.headers().get(HttpHeaderNames.CONTENT_TYPE);
+      ContentType contentType =
+          contentTypeHeader == null ? null : MessageHandler.getContentType(contentTypeHeader);
+      if (contentType == null) {
+        LOG.info("This content type is not used for grpc-web: " + contentTypeHeader);
+        sendStatus(ctx, HttpResponseStatus.BAD_REQUEST, keepAlive);
+        return;
+      }
+      ResponseWriter writer = new ResponseWriter(ctx, contentTypeHeader,
+          contentType == ContentType.GRPC_WEB_TEXT, keepAlive);
+
+      String fullMethodName = path.substring(API_PATH.length());
+      RpcMethodRegistry.RpcMethod rpcMethod = mRpcMethodRegistry.lookup(fullMethodName);
+      if (rpcMethod == null) {
+        LOG.info("incorrect rpc method in the request: " + fullMethodName);
+        writer.writeTrailer(Status.UNIMPLEMENTED, null);
+        return;
+      }
+      MethodDescriptor.MethodType methodType = rpcMethod.getDescriptor().getType();
+      if (methodType != MethodDescriptor.MethodType.UNARY
+          && methodType != MethodDescriptor.MethodType.SERVER_STREAMING) {
+        LOG.info("unsupported rpc method type for: " + fullMethodName);
+        writer.writeTrailer(Status.UNIMPLEMENTED, null);
+        return;
+      }
+
+      Object inObj;
+      try {
+        MessageDeframer deframer = new MessageDeframer();
+        if (!deframer.processInput(new ByteBufInputStream(req.content()), contentType,
+            req.content().readableBytes())) {
+          throw new IllegalArgumentException("invalid grpc-web request body");
+        }
+        inObj = rpcMethod.getRequestParser().parseFrom(deframer.newMessageInput());
+      } catch (Exception e) {
+        LOG.info("Exception occurred: " + e.getMessage());
+        sendStatus(ctx, HttpResponseStatus.BAD_REQUEST, keepAlive);
+        return;
+      }
+
+      Channel channel = mConnectionManager.getChannel();
+      Metadata headers = MetadataUtil.getHtpHeaders(req.headers());
+      if (!headers.keys().isEmpty()) {
+        channel = ClientInterceptors.intercept(channel,
+            MetadataUtils.newAttachHeadersInterceptor(headers));
+      }
+      ClientCall<Object, Object> call = channel.newCall(rpcMethod.getDescriptor(),
+          CallOptions.DEFAULT.withDeadlineAfter(mConnectionManager.getCallDeadlineMillis(),
+              TimeUnit.MILLISECONDS));
+      mCurrentCall = call;
+      boolean streaming = methodType == MethodDescriptor.MethodType.SERVER_STREAMING;
+      call.start(new CallListener(call, writer, streaming), new Metadata());
+      call.request(1);
+      call.sendMessage(inObj);
+      call.halfClose();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+      ClientCall<Object, Object> call = mCurrentCall;
+      if (call != null) {
+        call.cancel("grpc-web client went away", null);
+      }
+      super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      LOG.warning("grpc-web connection error: " + cause.getMessage());
+      ctx.close();
+    }
+
+    private static void sendStatus(ChannelHandlerContext ctx, HttpResponseStatus status,
+        boolean keepAlive) {
+      FullHttpResponse response =
+          new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, Unpooled.EMPTY_BUFFER);
+      HttpUtil.setContentLength(response, 0);
+      HttpUtil.setKeepAlive(response, keepAlive);
+      if (keepAlive) {
+        ctx.writeAndFlush(response);
+      } else {
+        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+      }
+    }
+  }
+
+  /**
+   * Writes each response message as it's received. For server-streaming calls, the next message
+   * is only requested once the previous one has been flushed to the client.
+   */
+  private static class CallListener extends ClientCall.Listener<Object> {
+    private final ClientCall<Object, Object> mCall;
+    private final ResponseWriter mWriter;
+    private final boolean mStreaming;
+
+    CallListener(ClientCall<Object, Object> call, ResponseWriter writer, boolean streaming) {
+      mCall = call;
+      mWriter = writer;
+      mStreaming = streaming;
+    }
+
+    @Override
+    public void onHeaders(Metadata headers) {
+      mWriter.writeHeaders(headers);
+    }
+
+    @Override
+    public void onMessage(Object message) {
+      mWriter.writeMessage((MessageLite) message).addListener(future -> {
+        if (!future.isSuccess()) {
+          mCall.cancel("grpc-web response couldn't be written", future.cause());
+        } else if (mStreaming) {
+          mCall.request(1);
+        }
+      });
+    }
+
+    @Override
+    public void onClose(Status status, Metadata trailers) {
+      mWriter.writeTrailer(status, trailers);
+    }
+  }
+
+  /**
+   * Writes a chunked grpc-web response: the headers, a DATA frame per message, then the TRAILER
+   * frame. gRPC call callbacks are serialized, and Netty writes from outside the event loop are
+   * queued in order, so no further synchronization is needed.
+   */
+  private static class ResponseWriter {
+    private final ChannelHandlerContext mCtx;
+    private final String mContentType;
+    private final boolean mIsText;
+    private final boolean mKeepAlive;
+    private boolean mHeadersSent = false;
+
+    ResponseWriter(ChannelHandlerContext ctx, String contentType, boolean isText,
+        boolean keepAlive) {
+      mCtx = ctx;
+      mContentType = contentType;
+      mIsText = isText;
+      mKeepAlive = keepAlive;
+    }
+
+    void writeHeaders(Metadata headers) {
+      if (mHeadersSent) return;
+      HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+      response.headers().set(HttpHeaderNames.CONTENT_TYPE, mContentType);
+      HttpUtil.setTransferEncodingChunked(response, true);
+      HttpUtil.setKeepAlive(response, mKeepAlive);
+      if (headers != null) {
+        for (Map.Entry<String, String> header :
+            MetadataUtil.getHttpHeadersFromMetadata(headers).entrySet()) {
+          response.headers().set(header.getKey(), header.getValue());
+        }
+      }
+      mCtx.write(response);
+      mHeadersSent = true;
+    }
+
+    ChannelFuture writeMessage(MessageLite message) {
+      writeHeaders(null);
+      int length = message.getSerializedSize();
+      ByteBuf frame = mCtx.alloc().buffer(MessageFramer.PREFIX_LENGTH + length);
+      try {
+        frame.writeByte(MessageFramer.Type.DATA.value);
+        frame.writeInt(length);
+        message.writeTo(new ByteBufOutputStream(frame));
+      } catch (IOException e) {
+        frame.release();
+        return mCtx.newFailedFuture(e);
+      }
+      return mCtx.writeAndFlush(new DefaultHttpContent(encode(frame)));
+    }
+
+    void writeTrailer(Status status, Metadata trailers) {
+      writeHeaders(null);
+      byte[] trailerBytes = SendResponse.getTrailerBytes(status, trailers);
+      ByteBuf frame = mCtx.alloc().buffer(MessageFramer.PREFIX_LENGTH + trailerBytes.length);
+      frame.writeByte(MessageFramer.Type.TRAILER.value);
+      frame.writeInt(trailerBytes.length);
+      frame.writeBytes(trailerBytes);
+      ChannelFuture future =
+          mCtx.writeAndFlush(new DefaultLastHttpContent(encode(frame)));
+      if (!mKeepAlive) {
+        future.addListener(ChannelFutureListener.CLOSE);
+      }
+    }
+
+    // base64 encodes each frame separately for "text" content type
+    private ByteBuf encode(ByteBuf frame) {
+      if (!mIsText) {
+        return frame;
+      }
+      try {
+        return Base64.encode(frame, false);
+      } finally {
+        frame.release();
+      }
+    }
+  }
+}
@@ -16,162 +16,206 @@
 package io.grpcweb;
 
 import com.google.inject.Inject;
+import com.google.protobuf.MessageLite;
+import io.grpc.CallOptions;
 import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptors;
 import io.grpc.Metadata;
 import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.ClientResponseObserver;
 import io.grpc.stub.MetadataUtils;
-import io.grpc.stub.StreamObserver;
 import java.lang.invoke.MethodHandles;
-import java.lang.reflect.Method;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.lang3.tuple.Pair;
 
+/**
+ * Proxies a grpc-web request to the grpc-service. Where the servlet supports it, the request is
+ * handled asynchronously: the request thread returns once the gRPC call has been started, and the
+ * request is completed from the call's callbacks, so slow calls don't tie up the servlet
+ * container's threads. Each call is given the connection manager's deadline.
+ *
+ * Unary and server-streaming methods are supported; streamed responses are written to the client
+ * one DATA frame per message, as the messages arrive.
+ */
 class RequestHandler {
   private static final Logger LOG =
       Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+  // Extra time allowed for the gRPC call's own DEADLINE_EXCEEDED to be written before the servlet
+  // request itself times out
+  private static final long REQUEST_TIMEOUT_GRACE_MILLIS = 5000;
 
   private final MessageHandler mMessageHandler;
   private final GrpcServiceConnectionManager mGrpcServiceConnectionManager;
+  private final RpcMethodRegistry mRpcMethodRegistry;
 
   @Inject
-  RequestHandler(GrpcServiceConnectionManager g, MessageHandler m) {
+  RequestHandler(GrpcServiceConnectionManager g, MessageHandler m, RpcMethodRegistry r) {
     mMessageHandler = m;
     mGrpcServiceConnectionManager = g;
+    mRpcMethodRegistry = r;
   }
 
   public void handle(final HttpServletRequest req, final HttpServletResponse resp) {
     DebugInfo.printRequest(req);
     MessageHandler.ContentType contentType = mMessageHandler.validateContentType(req);
-    SendResponse sendResponse = new SendResponse(req, resp);
+    long deadlineMillis = mGrpcServiceConnectionManager.getCallDeadlineMillis();
+    AsyncContext asyncContext = req.isAsyncSupported() ? req.startAsync() : null;
+    CountDownLatch latch = asyncContext == null ? new CountDownLatch(1) : null;
+    SendResponse sendResponse = new SendResponse(req, resp,
+        asyncContext == null ? latch::countDown : asyncContext::complete);
+    if (asyncContext != null) {
+      asyncContext.setTimeout(deadlineMillis + REQUEST_TIMEOUT_GRACE_MILLIS);
+      asyncContext.addListener(new RequestTimeoutListener(sendResponse));
+    }
 
     try {
-      // From the request, get the rpc-method name and class name and then get their corresponding
-      // concrete objects.
-      Pair<String, String> classAndMethodNames = getClassAndMethod(req);
-      String className = classAndMethodNames.getLeft();
-      String methodName = classAndMethodNames.getRight();
-      Class cls = getClassObject(className);
-      if (cls == null) {
-        LOG.info("incorrect classname in the request: " + className);
-        // incorrect classname specified in the request.
+      // From the request, get the full rpc-method name and look up the method to be called
+      String fullMethodName = getFullMethodName(req);
+      RpcMethodRegistry.RpcMethod rpcMethod = mRpcMethodRegistry.lookup(fullMethodName);
+      if (rpcMethod == null) {
+        LOG.info("incorrect rpc method in the request: " + fullMethodName);
         sendResponse.returnUnimplementedStatusCode();
         return;
       }
 
       // Create a ClientInterceptor object
-      CountDownLatch latch = new CountDownLatch(1);
-      GrpcWebClientInterceptor interceptor =
-          new GrpcWebClientInterceptor(resp, latch, sendResponse);
+      GrpcWebClientInterceptor interceptor = new GrpcWebClientInterceptor(sendResponse);
       Channel channel = mGrpcServiceConnectionManager.getChannelWithClientInterceptor(interceptor);
-
-      // get the stub for the rpc call and the method to be called within the stub
-      io.grpc.stub.AbstractStub asyncStub = getRpcStub(channel, cls, "newStub");
       Metadata headers = MetadataUtil.getHtpHeaders(req);
       if (!headers.keys().isEmpty()) {
-        asyncStub = MetadataUtils.attachHeaders(asyncStub, headers);
+        channel = ClientInterceptors.intercept(channel,
+            MetadataUtils.newAttachHeadersInterceptor(headers));
       }
-      Method asyncStubCall = getRpcMethod(asyncStub, methodName);
+
       // Get the input object bytes
       ServletInputStream in = req.getInputStream();
       MessageDeframer deframer = new MessageDeframer();
-      Object inObj = null;
-      if (deframer.processInput(in, contentType)) {
-        inObj = mMessageHandler.getInputProtobufObj(asyncStubCall, deframer.getMessageBytes());
+      if (!deframer.processInput(in, contentType, req.getContentLength())) {
+        throw new IllegalArgumentException("invalid grpc-web request body");
       }
+      Object inObj = rpcMethod.getRequestParser().parseFrom(deframer.newMessageInput());
 
       // Invoke the rpc call
-      asyncStubCall.invoke(asyncStub, inObj,
-          new GrpcCallResponseReceiver(sendResponse, latch));
-      if (!latch.await(150000, TimeUnit.MILLISECONDS)) {
+      ClientCall<Object, Object> call = channel.newCall(rpcMethod.getDescriptor(),
+          CallOptions.DEFAULT.withDeadlineAfter(deadlineMillis, TimeUnit.MILLISECONDS));
+      switch (rpcMethod.getDescriptor().getType()) {
+        case UNARY:
+          ClientCalls.asyncUnaryCall(call, inObj,
+              new GrpcCallResponseReceiver(sendResponse, false));
+          break;
+        case SERVER_STREAMING:
+          ClientCalls.asyncServerStreamingCall(call, inObj,
+              new GrpcCallResponseReceiver(sendResponse, true));
+          break;
+        default:
+          LOG.info("unsupported rpc method type for: " + fullMethodName);
+          sendResponse.returnUnimplementedStatusCode();
+          return;
+      }
+      if (latch != null
+          && !latch.await(deadlineMillis + REQUEST_TIMEOUT_GRACE_MILLIS, TimeUnit.MILLISECONDS)) {
         LOG.warning("grpc call took too long!");
       }
     } catch (Exception e) {
       LOG.info("Exception occurred: " + e.getMessage());
-      resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+      sendResponse.writeBadRequest();
     }
   }
 
-  private Pair<String, String> getClassAndMethod(HttpServletRequest req)
-      throws IllegalArgumentException {
+  private String getFullMethodName(HttpServletRequest req) throws IllegalArgumentException {
     String pathInfo = req.getPathInfo();
     // pathInfo starts with "/". ignore that first char.
     String[] rpcClassAndMethodTokens = pathInfo.substring(1).split("/");
-    if (rpcClassAndMethodTokens.length != 2) {
+    if (rpcClassAndMethodTokens.length != 2 || rpcClassAndMethodTokens[1].isEmpty()) {
       throw new IllegalArgumentException("incorrect pathinfo: " + pathInfo);
     }
-
-    String rpcClassName = rpcClassAndMethodTokens[0];
-    String rpcMethodNameRecvd = rpcClassAndMethodTokens[1];
-    String rpcMethodName = rpcMethodNameRecvd.substring(0, 1).toLowerCase()
-        + rpcMethodNameRecvd.substring(1);
-    return new ImmutablePair<>(rpcClassName, rpcMethodName);
+    return pathInfo.substring(1);
   }
 
-  private Class<?> getClassObject(String className) {
-    Class rpcClass = null;
-    try {
-      rpcClass = Class.forName(className + "Grpc");
-    } catch (ClassNotFoundException e) {
-      LOG.info("no such class " + className);
+  /**
+   * Writes each response message to the client as it's received. For server-streaming calls, the
+   * next message is only requested from the grpc-service once the previous one has been written
+   * and flushed, so a slow client holds back the stream rather than messages piling up in memory.
+   */
+  private static class GrpcCallResponseReceiver implements ClientResponseObserver<Object, Object> {
+    private final SendResponse sendResponse;
+    private final boolean streaming;
+    private ClientCallStreamObserver<Object> requestStream;
+
+    GrpcCallResponseReceiver(SendResponse s, boolean streaming) {
+      sendResponse = s;
+      this.streaming = streaming;
     }
-    return rpcClass;
-  }
 
-  private io.grpc.stub.AbstractStub getRpcStub(Channel ch, Class cls, String stubName) {
-    try {
-      Method m = cls.getDeclaredMethod(stubName, Channel.class);
-      return (io.grpc.stub.AbstractStub) m.invoke(null, ch);
-    } catch (Exception e) {
-      LOG.warning("Error when fetching " + stubName + " for: " + cls.getName());
-      throw new IllegalArgumentException(e);
+    @Override
+    public void beforeStart(ClientCallStreamObserver<Object> requestStream) {
+      this.requestStream = requestStream;
+      if (streaming) {
+        // The first message is still requested when the call starts
+        requestStream.disableAutoInboundFlowControl();
+      }
     }
-  }
 
-  /**
-   * Find the matching method in the stub class.
-   */
-  private Method getRpcMethod(Object stub, String rpcMethodName) {
-    for (Method m : stub.getClass().getMethods()) {
-      if (m.getName().equals(rpcMethodName)) {
-        return m;
+    @Override
+    public void onNext(Object resp) {
+      if (!sendResponse.writeResponse((MessageLite) resp, streaming)) {
+        requestStream.cancel("grpc-web response couldn't be written", null);
+        return;
       }
+      if (streaming) {
+        requestStream.request(1);
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      Status s = Status.fromThrowable(t);
+      sendResponse.writeError(s);
+    }
+
+    @Override
+    public void onCompleted() {
+      sendResponse.writeStatusTrailer(Status.OK);
     }
-    throw new IllegalArgumentException("Couldn't find rpcmethod: " + rpcMethodName);
   }
 
-  private static class GrpcCallResponseReceiver<Object> implements StreamObserver {
+  /**
+   * Backstop in case the gRPC call never completes: ends the request once it times out.
+   */
+  private static class RequestTimeoutListener implements AsyncListener {
     private final SendResponse sendResponse;
-    private final CountDownLatch latch;
 
-    GrpcCallResponseReceiver(SendResponse s, CountDownLatch c) {
+    RequestTimeoutListener(SendResponse s) {
       sendResponse = s;
-      latch = c;
     }
 
     @Override
-    public void onNext(java.lang.Object resp) {
-      // TODO verify that the resp object is of Class instance returnedCls.
-      byte[] outB = ((com.google.protobuf.GeneratedMessageV3)resp).toByteArray();
-      sendResponse.writeResponse(outB);
+    public void onTimeout(AsyncEvent event) {
+      LOG.warning("grpc call took too long!");
+      sendResponse.writeError(
+          Status.DEADLINE_EXCEEDED.withDescription("grpc-web request timed out"));
     }
 
     @Override
-    public void onError(Throwable t) {
-      Status s = Status.fromThrowable(t);
-      sendResponse.writeError(s);
-      latch.countDown();
+    public void onComplete(AsyncEvent event) {
     }
 
     @Override
-    public void onCompleted() {
-      sendResponse.writeStatusTrailer(Status.OK);
-      latch.countDown();
+    public void onError(AsyncEvent event) {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
     }
   }
 }
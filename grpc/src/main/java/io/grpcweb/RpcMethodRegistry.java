@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020  Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.grpcweb;
+
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServiceDescriptor;
+import java.lang.invoke.MethodHandles;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Maps the full method names in grpc-web request paths (e.g. "router.Router/RouteStreetMode") to
+ * the method's descriptor and request parser, so requests can be proxied without any per-request
+ * reflection. Services are registered at startup; for any other service, the generated
+ * "<service>Grpc" class is looked up reflectively the first time one of its methods is called,
+ * and all of its methods are registered.
+ */
+class RpcMethodRegistry {
+  private static final Logger LOG =
+      Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+
+  private final Map<String, RpcMethod> mMethods = new ConcurrentHashMap<>();
+
+  static class RpcMethod {
+    private final MethodDescriptor<Object, Object> mDescriptor;
+    private final Parser<?> mRequestParser;
+
+    RpcMethod(MethodDescriptor<Object, Object> descriptor, Parser<?> requestParser) {
+      mDescriptor = descriptor;
+      mRequestParser = requestParser;
+    }
+
+    MethodDescriptor<Object, Object> getDescriptor() {
+      return mDescriptor;
+    }
+
+    Parser<?> getRequestParser() {
+      return mRequestParser;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  void register(ServiceDescriptor service) {
+    for (MethodDescriptor<?, ?> method : service.getMethods()) {
+      MethodDescriptor.Marshaller<?> marshaller = method.getRequestMarshaller();
+      if (!(marshaller instanceof MethodDescriptor.PrototypeMarshaller)
+          || !(((MethodDescriptor.PrototypeMarshaller<?>) marshaller).getMessagePrototype()
+              instanceof MessageLite)) {
+        LOG.warning("skipping non-protobuf rpc method " + method.getFullMethodName());
+        continue;
+      }
+      MessageLite prototype = (MessageLite)
+          ((MethodDescriptor.PrototypeMarshaller<?>) marshaller).getMessagePrototype();
+      mMethods.put(normalize(method.getFullMethodName()), new RpcMethod(
+          (MethodDescriptor<Object, Object>) method, prototype.getParserForType()));
+    }
+    LOG.info("registered grpc-web methods for " + service.getName());
+  }
+
+  /**
+   * Returns the method with the given full name, or null if there is no such method.
+   */
+  RpcMethod lookup(String fullMethodName) {
+    String key = normalize(fullMethodName);
+    RpcMethod method = mMethods.get(key);
+    if (method == null) {
+      ServiceDescriptor service =
+          findServiceDescriptor(MethodDescriptor.extractFullServiceName(key));
+      if (service != null) {
+        register(service);
+        method = mMethods.get(key);
+      }
+    }
+    return method;
+  }
+
+  private ServiceDescriptor findServiceDescriptor(String serviceName) {
+    if (serviceName == null) {
+      return null;
+    }
+    try {
+      Class<?> grpcClass = Class.forName(serviceName + "Grpc");
+      return (ServiceDescriptor) grpcClass.getMethod("getServiceDescriptor").invoke(null);
+    } catch (ClassNotFoundException e) {
+      LOG.info("no such class " + serviceName);
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      LOG.warning("Error when fetching service descriptor for: " + serviceName);
+    }
+    return null;
+  }
+
+  // grpc method names are conventionally capitalized, but requests may not capitalize them
+  private static String normalize(String fullMethodName) {
+    int slash = fullMethodName.indexOf('/');
+    if (slash < 0 || slash == fullMethodName.length() - 1) {
+      return fullMethodName;
+    }
+    return fullMethodName.substring(0, slash + 1)
+        + Character.toUpperCase(fullMethodName.charAt(slash + 1))
+        + fullMethodName.substring(slash + 2);
+  }
+}
@@ -15,10 +15,13 @@
  */
 package io.grpcweb;
 
+import com.google.protobuf.MessageLite;
 import io.grpc.Metadata;
 import io.grpc.Status;
 import io.grpcweb.MessageHandler.ContentType;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.invoke.MethodHandles;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -33,11 +36,20 @@ class SendResponse {
 
   private final String mContentType;
   private final HttpServletResponse mResp;
+  private final boolean mIsText;
+  private final Runnable mOnFinalResponse;
+  // Reused for each frame; frames are written under this object's lock
+  private final byte[] mPrefix = new byte[MessageFramer.PREFIX_LENGTH];
   private boolean isFinalResponseSent = false;
 
-  SendResponse(HttpServletRequest req, HttpServletResponse resp) {
+  /**
+   * @param onFinalResponse run once, after the final response (trailer or error) has been written
+   */
+  SendResponse(HttpServletRequest req, HttpServletResponse resp, Runnable onFinalResponse) {
     mContentType = req.getContentType();
     mResp = resp;
+    mIsText = MessageHandler.getContentType(mContentType) == ContentType.GRPC_WEB_TEXT;
+    mOnFinalResponse = onFinalResponse;
   }
 
   synchronized void writeHeaders(Metadata headers) {
@@ -67,12 +79,27 @@ class SendResponse {
     isFinalResponseSent = true;
   }
 
+  synchronized void writeBadRequest() {
+    if (isFinalResponseSent) return;
+    mResp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+    isFinalResponseSent = true;
+    mOnFinalResponse.run();
+  }
+
   synchronized void writeStatusTrailer(Status status) {
     writeTrailer(status, null);
   }
 
   synchronized void writeTrailer(Status status, Metadata trailer) {
     if (isFinalResponseSent) return;
+    writeResponse(getTrailerBytes(status, trailer), MessageFramer.Type.TRAILER);
+    writeOk();
+  }
+
+  /**
+   * Returns the contents of the TRAILER frame for the given status and trailing metadata.
+   */
+  static byte[] getTrailerBytes(Status status, Metadata trailer) {
     StringBuffer sb = new StringBuffer();
     if (trailer != null) {
       Map<String, String> ht = MetadataUtil.getHttpHeadersFromMetadata(trailer);
@@ -85,38 +112,88 @@ class SendResponse {
       sb.append(String.format("grpc-message:%s\r\n", status.getDescription()));
     }
     LOG.fine("writing trailer: " + sb.toString());
-    writeResponse(sb.toString().getBytes(), MessageFramer.Type.TRAILER);
-    writeOk();
+    return sb.toString().getBytes();
   }
 
   synchronized void writeResponse(byte[] out) {
-    writeResponse(out, MessageFramer.Type.DATA);
+    writeFrame(MessageFramer.Type.DATA, out.length, oStream -> oStream.write(out));
+  }
+
+  /**
+   * Writes the message as a DATA frame, serializing it straight into the response stream. For
+   * streamed responses, the frame is flushed so the client receives each message as it's sent;
+   * the write blocks while the client isn't keeping up.
+   *
+   * @return false if the frame couldn't be written, e.g. because the client has gone away
+   */
+  synchronized boolean writeResponse(MessageLite message, boolean flush) {
+    if (!writeFrame(MessageFramer.Type.DATA, message.getSerializedSize(), message::writeTo)) {
+      return false;
+    }
+    if (flush) {
+      try {
+        mResp.flushBuffer();
+      } catch (IOException e) {
+        LOG.warning("can't flush?");
+        return false;
+      }
+    }
+    return true;
   }
 
   private void writeResponse(byte[] out, MessageFramer.Type type) {
-    if (isFinalResponseSent) return;
+    writeFrame(type, out.length, oStream -> oStream.write(out));
+  }
+
+  private interface FramePayload {
+    void writeTo(OutputStream out) throws IOException;
+  }
+
+  private boolean writeFrame(MessageFramer.Type type, int length, FramePayload payload) {
+    if (isFinalResponseSent) return false;
     try {
-      // PUNT multiple frames not handled
-      byte[] prefix = new MessageFramer().getPrefix(out, type);
+      MessageFramer.writePrefix(mPrefix, type, length);
       ServletOutputStream oStream = mResp.getOutputStream();
-      // binary encode if it is "text" content type
-      if (MessageHandler.getContentType(mContentType) == ContentType.GRPC_WEB_TEXT) {
-        byte[] concated = new byte[out.length + 5];
-        System.arraycopy(prefix, 0, concated, 0, 5);
-        System.arraycopy(out, 0, concated, 5, out.length);
-        oStream.write(Base64.getEncoder().encode(concated));
+      // binary encode if it is "text" content type. Each frame is encoded separately, as the
+      // encoder pads its final block when closed.
+      if (mIsText) {
+        try (OutputStream encoder =
+            Base64.getEncoder().wrap(new NonClosingOutputStream(oStream))) {
+          encoder.write(mPrefix);
+          payload.writeTo(encoder);
+        }
       } else {
-        oStream.write(prefix);
-        oStream.write(out);
+        oStream.write(mPrefix);
+        payload.writeTo(oStream);
       }
+      return true;
     } catch (IOException e) {
-      // TODO what to do here?
       LOG.warning("can't write?");
+      return false;
+    }
+  }
+
+  /**
+   * Lets the Base64 encoder be closed, flushing its final block, without closing the response.
+   */
+  private static class NonClosingOutputStream extends FilterOutputStream {
+    NonClosingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void close() {
     }
   }
 
   private void writeOk() {
     mResp.setStatus(HttpServletResponse.SC_OK);
     isFinalResponseSent = true;
+    mOnFinalResponse.run();
   }
 }
@@ -18,21 +18,35 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
+/**
+ * Sends the PT requests for a file of O/D pairs to a router on localhost:50051, writing each
+ * request's latency to a CSV file and logging the overall throughput.
+ *
+ * Args: O/D file, output file, usePareto, [departure time], [number of concurrent requests (default 1)]
+ *
+ * With concurrent requests, the throughput can be used to compare server settings, e.g. the epoll
+ * and NIO transports (RouterServer's EPOLL parameter).
+ */
 public class PerformanceTest {
     private static final String[] OUTPUT_FILE_COLUMN_HEADERS = {"from", "to", "departure_time", "use_pareto", "duration", "num_transfers", "error"};
     private static final Logger logger = LoggerFactory.getLogger(PerformanceTest.class);
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
         String odFilePath = args[0];
         String outputFilePath = args[1];
         File outputFile = new File(outputFilePath);
         boolean usePareto = Boolean.parseBoolean(args[2]);
-        String departureTime = args.length == 4 ? args[3] : "2019-10-13T18:00:00Z";
+        String departureTime = args.length >= 4 ? args[3] : "2019-10-13T18:00:00Z";
+        int concurrency = args.length >= 5 ? Integer.parseInt(args[4]) : 1;
 
         logger.info("Reading input O/D pairs from file " + odFilePath + " with usePareto set to " + usePareto +
-                ". Writing output to " + outputFilePath);
+                ". Writing output to " + outputFilePath + ". Sending " + concurrency + " request(s) at a time");
         List<RouterOuterClass.PtRouteRequest> requests = Files.lines(Paths.get(odFilePath))
                 .skip(1)
                 .map(line -> line.split(","))
@@ -60,26 +74,40 @@ public class PerformanceTest {
         logger.info(requests.size() + " requests generated for performance testing");
 
         RouterClient client = new RouterClient("localhost", 50051);
-        List<RouterPerformanceResult> results = Lists.newArrayList();
-        int numComplete = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        List<Future<RouterPerformanceResult>> futureResults = Lists.newArrayList();
+        long testStartTime = System.nanoTime();
 
-        for (RouterOuterClass.PtRouteRequest request : requests) {
-            logger.info("Running request number " + numComplete++);
-            String from = request.getPoints(0).getLat() + "," + request.getPoints(0).getLon();
-            String to = request.getPoints(1).getLat() + "," + request.getPoints(1).getLon();
+        for (int i = 0; i < requests.size(); i++) {
+            final int requestNumber = i;
+            final RouterOuterClass.PtRouteRequest request = requests.get(i);
+            futureResults.add(executor.submit(() -> {
+                logger.info("Running request number " + requestNumber);
+                String from = request.getPoints(0).getLat() + "," + request.getPoints(0).getLon();
+                String to = request.getPoints(1).getLat() + "," + request.getPoints(1).getLon();
 
-            long startTime = System.nanoTime();
-            try {
-                RouterOuterClass.PtRouteReply reply = client.blockingStub.routePt(request);
-                double executionTime = (System.nanoTime() - startTime) / 1000_000.0;
-                List<Integer> numTransfers = reply.getPathsList().stream().map(path -> path.getPtLegsList().size() - 1).collect(Collectors.toList());
-                results.add(new RouterPerformanceResult(from, to, departureTime, usePareto, executionTime, numTransfers, false));
-            } catch (StatusRuntimeException e) {
-                logger.warn("RPC failed: " + e.getMessage() + ";;;;;" + e.getStatus(), e.getStatus());
-                double executionTime = (System.nanoTime() - startTime) / 1000_000.0;
-                results.add(new RouterPerformanceResult(from, to, departureTime, usePareto, executionTime, Lists.newArrayList(0), true));
-            }
+                long startTime = System.nanoTime();
+                try {
+                    RouterOuterClass.PtRouteReply reply = client.blockingStub.routePt(request);
+                    double executionTime = (System.nanoTime() - startTime) / 1000_000.0;
+                    List<Integer> numTransfers = reply.getPathsList().stream().map(path -> path.getPtLegsList().size() - 1).collect(Collectors.toList());
+                    return new RouterPerformanceResult(from, to, departureTime, usePareto, executionTime, numTransfers, false);
+                } catch (StatusRuntimeException e) {
+                    logger.warn("RPC failed: " + e.getMessage() + ";;;;;" + e.getStatus(), e.getStatus());
+                    double executionTime = (System.nanoTime() - startTime) / 1000_000.0;
+                    return new RouterPerformanceResult(from, to, departureTime, usePareto, executionTime, Lists.newArrayList(0), true);
+                }
+            }));
+        }
+
+        List<RouterPerformanceResult> results = Lists.newArrayList();
+        for (Future<RouterPerformanceResult> futureResult : futureResults) {
+            results.add(futureResult.get());
         }
+        executor.shutdown();
+        double testSeconds = (System.nanoTime() - testStartTime) / 1e9;
+        logger.info("Completed " + results.size() + " requests in " + testSeconds + " seconds, a throughput of "
+                + (results.size() / testSeconds) + " requests/second");
 
         logger.info("Finished making requests! Writing results to CSV output file");
         try (CSVPrinter printer = new CSVPrinter(new FileWriter(outputFile), CSVFormat.DEFAULT.withHeader(OUTPUT_FILE_COLUMN_HEADERS))) {
@@ -0,0 +1,418 @@
+package com.graphhopper.export;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.graphhopper.export.TraversalPermissionLabeler.EdgeFlag;
+import com.graphhopper.export.TraversalPermissionLabeler.Label;
+import com.graphhopper.export.TraversalPermissionLabeler.Node;
+import com.graphhopper.export.TraversalPermissionLabeler.OneWay;
+import com.graphhopper.reader.ReaderWay;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled form of a TraversalPermissionLabeler, used on the OSM import hot path. Produces the same flags as
+ * TraversalPermissionLabeler.getPermissions() for a Way holding a way's considered tags, but:
+ *
+ * - considered tag keys are interned to indices, and each way's values are read once into a fixed-size array;
+ * - the labeler's default permission trees are precomputed as arrays indexed by Node ordinal, and the mode
+ *   hierarchy is resolved with precomputed parent/descendant tables rather than EnumMaps;
+ * - tag values are matched against label keywords in place, without splitting, lowercasing or trimming copies;
+ * - flags are returned packed into an int, and their string forms are precomputed.
+ *
+ * cycleway:left and cycleway:right are read by the labeler but aren't considered tags, so they're never present on
+ * labeled ways and aren't evaluated here.
+ *
+ * Instances hold per-way scratch state, so they aren't thread-safe; use one instance per thread.
+ */
+public class CompiledPermissionLabeler {
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledPermissionLabeler.class);
+
+    // Considered tag keys, interned to the indices below
+    static final String[] TAG_KEYS = {"access", "foot", "sidewalk", "vehicle", "bicycle", "cycleway", "cycleway:both",
+            "motor_vehicle", "motorcar", "railway", "public_transport", "highway", "junction", "oneway",
+            "oneway:vehicle", "oneway:motorcar", "oneway:bicycle", "bicycle:forward", "bicycle:backward", "oneway:foot"};
+    private static final int ACCESS = 0;
+    private static final int FOOT = 1;
+    private static final int SIDEWALK = 2;
+    private static final int VEHICLE = 3;
+    private static final int BICYCLE = 4;
+    private static final int CYCLEWAY = 5;
+    private static final int CYCLEWAY_BOTH = 6;
+    private static final int MOTOR_VEHICLE = 7;
+    private static final int MOTORCAR = 8;
+    private static final int RAILWAY = 9;
+    private static final int PUBLIC_TRANSPORT = 10;
+    private static final int HIGHWAY = 11;
+    private static final int JUNCTION = 12;
+    private static final int ONEWAY = 13;
+    private static final int ONEWAY_VEHICLE = 14;
+    private static final int ONEWAY_MOTORCAR = 15;
+    private static final int ONEWAY_BICYCLE = 16;
+    private static final int BICYCLE_FORWARD = 17;
+    private static final int BICYCLE_BACKWARD = 18;
+    private static final int ONEWAY_FOOT = 19;
+
+    // Flag bits; permissions for both directions are packed into one int, with backward flags shifted by BACKWARD_SHIFT
+    public static final int ALLOWS_CAR = 1;
+    public static final int ALLOWS_BIKE = 1 << 1;
+    public static final int ALLOWS_PEDESTRIAN = 1 << 2;
+    private static final int BACKWARD_SHIFT = 3;
+    private static final int DIRECTION_MASK = (1 << BACKWARD_SHIFT) - 1;
+
+    private static final Node[] NODES = Node.values();
+    private static final int[] PARENTS = new int[NODES.length];
+    private static final int[][] SUBTREES = new int[NODES.length][];
+
+    // Keywords recognized by Label.fromTag (matched case-insensitively after trimming), and their labels
+    private static final String[] LABEL_KEYWORDS = {
+            "yes", "1", "true", "official", "unknown", "public", "permissive", "designated", "lane", "track",
+            "shared_lane", "share_busway", "crossing",
+            "no", "0", "false", "license", "restricted", "prohibited", "emergency", "use_sidepath", "dismount",
+            "destination", "customers", "delivery", "forestry", "agricultural", "residents", "resident", "customer",
+            "private",
+            "limited"};
+    private static final Label[] KEYWORD_LABELS = new Label[LABEL_KEYWORDS.length];
+
+    // String forms of every possible [forward, backward] flag pair, indexed by packed permissions
+    private static final List<List<String>> FLAG_STRINGS;
+
+    static {
+        for (Node node : NODES) {
+            PARENTS[node.ordinal()] = node.getParent() == null ? -1 : node.getParent().ordinal();
+            List<Integer> subtree = Lists.newArrayList();
+            addSubtree(node, subtree);
+            SUBTREES[node.ordinal()] = subtree.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        for (int i = 0; i < LABEL_KEYWORDS.length; i++) {
+            KEYWORD_LABELS[i] = Label.fromTag(LABEL_KEYWORDS[i]);
+        }
+
+        List<List<String>> flagStrings = Lists.newArrayList();
+        for (int permissions = 0; permissions < 1 << (2 * BACKWARD_SHIFT); permissions++) {
+            flagStrings.add(Collections.unmodifiableList(Lists.newArrayList(
+                    toEdgeFlags(permissions & DIRECTION_MASK).toString(),
+                    toEdgeFlags(permissions >>> BACKWARD_SHIFT).toString())));
+        }
+        FLAG_STRINGS = Collections.unmodifiableList(flagStrings);
+    }
+
+    // Default permission trees from the labeler, merged onto all-UNKNOWN trees as in getTreeForWay()
+    private final Map<String, Label[]> highwayTrees = Maps.newHashMap();
+    private final Label[] roadTree;
+    private final Label[] railwayPlatformTree;
+    private final Label[] publicTransportPlatformTree;
+    // Used as-is (not merged onto an all-UNKNOWN tree) for ways with no highway tag that aren't platforms
+    private final Label[] unmergedRoadTree;
+
+    private final String[] values = new String[TAG_KEYS.length];
+    private final Label[] tree = new Label[NODES.length];
+    private final OneWay[] directions = new OneWay[NODES.length];
+
+    public CompiledPermissionLabeler(TraversalPermissionLabeler labeler) {
+        if (!Sets.newHashSet(TAG_KEYS).equals(labeler.getAllConsideredTags())) {
+            throw new IllegalArgumentException("Considered tags of " + labeler.getClass().getSimpleName()
+                    + " don't match those supported by the compiled labeler");
+        }
+        for (Map.Entry<String, EnumMap<Node, Label>> entry : TraversalPermissionLabeler.defaultPermissions.entrySet()) {
+            if (entry.getKey().startsWith("highway=")) {
+                highwayTrees.put(entry.getKey().substring("highway=".length()), toMergedTree(entry.getValue()));
+            }
+        }
+        EnumMap<Node, Label> roadPermissions = TraversalPermissionLabeler.defaultPermissions.get("highway=road");
+        roadTree = toMergedTree(roadPermissions);
+        railwayPlatformTree = toMergedTree(TraversalPermissionLabeler.defaultPermissions
+                .getOrDefault("railway=platform", roadPermissions));
+        publicTransportPlatformTree = toMergedTree(TraversalPermissionLabeler.defaultPermissions
+                .getOrDefault("public_transport=platform", roadPermissions));
+        unmergedRoadTree = new Label[NODES.length];
+        for (Map.Entry<Node, Label> entry : roadPermissions.entrySet()) {
+            unmergedRoadTree[entry.getKey().ordinal()] = entry.getValue();
+        }
+    }
+
+    /**
+     * Returns the way's packed permissions; see getForwardFlags() and getBackwardFlags()
+     */
+    public int getPermissions(ReaderWay way) {
+        for (int i = 0; i < TAG_KEYS.length; i++) {
+            values[i] = way.getTag(TAG_KEYS[i]);
+        }
+        return evaluate();
+    }
+
+    public int getPermissions(Way way) {
+        for (int i = 0; i < TAG_KEYS.length; i++) {
+            values[i] = way.getTag(TAG_KEYS[i]);
+        }
+        return evaluate();
+    }
+
+    /**
+     * Returns the access flags for the way in each direction, as stringified EnumSets ordered [forward, backward].
+     * The returned list is shared and unmodifiable.
+     */
+    public List<String> getFlagStrings(ReaderWay way) {
+        return FLAG_STRINGS.get(getPermissions(way));
+    }
+
+    public static List<String> toFlagStrings(int permissions) {
+        return FLAG_STRINGS.get(permissions);
+    }
+
+    public static int getForwardFlags(int permissions) {
+        return permissions & DIRECTION_MASK;
+    }
+
+    public static int getBackwardFlags(int permissions) {
+        return permissions >>> BACKWARD_SHIFT;
+    }
+
+    public static EnumSet<EdgeFlag> toEdgeFlags(int directionFlags) {
+        EnumSet<EdgeFlag> flags = EnumSet.noneOf(EdgeFlag.class);
+        if ((directionFlags & ALLOWS_CAR) != 0) flags.add(EdgeFlag.ALLOWS_CAR);
+        if ((directionFlags & ALLOWS_BIKE) != 0) flags.add(EdgeFlag.ALLOWS_BIKE);
+        if ((directionFlags & ALLOWS_PEDESTRIAN) != 0) flags.add(EdgeFlag.ALLOWS_PEDESTRIAN);
+        return flags;
+    }
+
+    // Mirrors TraversalPermissionLabeler.getPermissions(), over the tag values loaded into `values`
+    private int evaluate() {
+        loadTreeForWay();
+        applySpecificPermissions();
+
+        int flags = 0;
+        if (walk(Node.FOOT.ordinal()) == Label.YES) flags |= ALLOWS_PEDESTRIAN;
+        if (walk(Node.BICYCLE.ordinal()) == Label.YES) flags |= ALLOWS_BIKE;
+        if (walk(Node.CAR.ordinal()) == Label.YES) flags |= ALLOWS_CAR;
+        int forward = flags;
+        int backward = flags;
+
+        // Override access being disallowed for motorways+motorway_links with access=customers
+        String highway = values[HIGHWAY];
+        String access = values[ACCESS];
+        if (("motorway".equals(highway) || "motorway_link".equals(highway))
+                && ("customer".equals(access) || "customers".equals(access))) {
+            forward |= ALLOWS_CAR;
+            backward |= ALLOWS_CAR;
+        }
+
+        loadDirectionalTree();
+        OneWay car = directions[Node.CAR.ordinal()];
+        OneWay bicycle = directions[Node.BICYCLE.ordinal()];
+        OneWay foot = directions[Node.FOOT.ordinal()];
+        if (car == OneWay.YES) backward &= ~ALLOWS_CAR;
+        if (bicycle == OneWay.YES) backward &= ~ALLOWS_BIKE;
+        if (foot == OneWay.YES) backward &= ~ALLOWS_PEDESTRIAN;
+        if (car == OneWay.REVERSE) forward &= ~ALLOWS_CAR;
+        if (bicycle == OneWay.REVERSE) forward &= ~ALLOWS_BIKE;
+        if (foot == OneWay.REVERSE) forward &= ~ALLOWS_PEDESTRIAN;
+
+        // Opposite bicycle permissions apply against the rest of traffic
+        String cycleway = values[CYCLEWAY];
+        if (cycleway != null && cycleway.startsWith("opposite")) {
+            if (car == OneWay.REVERSE) {
+                forward |= ALLOWS_BIKE;
+            } else {
+                backward |= ALLOWS_BIKE;
+            }
+        }
+
+        return forward | (backward << BACKWARD_SHIFT);
+    }
+
+    private void loadTreeForWay() {
+        Label[] source;
+        String highway = values[HIGHWAY];
+        if (highway != null) {
+            source = highwayTrees.getOrDefault(normalize(highway), roadTree);
+        } else if ("platform".equals(values[RAILWAY])) {
+            source = railwayPlatformTree;
+        } else if ("platform".equals(values[PUBLIC_TRANSPORT])) {
+            source = publicTransportPlatformTree;
+        } else {
+            source = unmergedRoadTree;
+        }
+        System.arraycopy(source, 0, tree, 0, tree.length);
+    }
+
+    private void applySpecificPermissions() {
+        applyLabel(Node.ACCESS, values[ACCESS]);
+        applyLabel(Node.FOOT, values[FOOT]);
+        String sidewalk = values[SIDEWALK];
+        if ("both".equalsIgnoreCase(sidewalk) || "left".equalsIgnoreCase(sidewalk) || "right".equalsIgnoreCase(sidewalk)) {
+            tree[Node.FOOT.ordinal()] = Label.YES;
+        }
+        applyLabel(Node.VEHICLE, values[VEHICLE]);
+        applyLabel(Node.BICYCLE, values[BICYCLE]);
+        if (values[CYCLEWAY] != null) {
+            // cycleway=no just means there's no cycleway on this road, not that cycling is forbidden
+            Label label = parseLabel(values[CYCLEWAY]);
+            if (label != Label.NO && label != Label.UNKNOWN) {
+                tree[Node.BICYCLE.ordinal()] = label;
+            }
+        }
+        applyLabel(Node.BICYCLE, values[CYCLEWAY_BOTH]);
+        applyLabel(Node.CAR, values[MOTOR_VEHICLE]);
+        // motorcar takes precedence over motor_vehicle
+        applyLabel(Node.CAR, values[MOTORCAR]);
+    }
+
+    private void applyLabel(Node node, String value) {
+        if (value != null) {
+            Label label = parseLabel(value);
+            if (label != Label.UNKNOWN) {
+                tree[node.ordinal()] = label;
+            }
+        }
+    }
+
+    // Returns the first label that isn't UNKNOWN walking up the hierarchy. As in the labeler, a node missing from
+    // the tree (null) also ends the walk.
+    private Label walk(int node) {
+        do {
+            if (tree[node] != Label.UNKNOWN) {
+                return tree[node];
+            }
+        } while ((node = PARENTS[node]) >= 0);
+        return Label.UNKNOWN;
+    }
+
+    private void loadDirectionalTree() {
+        for (int i = 0; i < directions.length; i++) {
+            directions[i] = OneWay.NO;
+        }
+
+        // some tags imply oneway = yes unless otherwise noted
+        if ("motorway".equals(values[HIGHWAY]) || "roundabout".equals(values[JUNCTION])) {
+            applyOneway(Node.ACCESS, OneWay.YES);
+        }
+        if (values[ONEWAY] != null) applyOneway(Node.ACCESS, parseOneWay(values[ONEWAY]));
+        if (values[ONEWAY_VEHICLE] != null) applyOneway(Node.VEHICLE, parseOneWay(values[ONEWAY_VEHICLE]));
+        if (values[ONEWAY_MOTORCAR] != null) applyOneway(Node.CAR, parseOneWay(values[ONEWAY_MOTORCAR]));
+        if (values[ONEWAY_BICYCLE] != null) applyOneway(Node.BICYCLE, parseOneWay(values[ONEWAY_BICYCLE]));
+
+        OneWay sidepath = OneWay.NO;
+        if (values[BICYCLE_FORWARD] != null && parseLabel(values[BICYCLE_FORWARD]) == Label.NO) {
+            sidepath = OneWay.REVERSE;
+        }
+        if (values[BICYCLE_BACKWARD] != null && parseLabel(values[BICYCLE_BACKWARD]) == Label.NO) {
+            if (sidepath == OneWay.REVERSE) {
+                LOG.error("Way has tags bicycle:forward=use_sidepath and bicycle:backward=use_sidepath please use bicycle=use_sidepath");
+            }
+            sidepath = OneWay.YES;
+        }
+        if (sidepath != OneWay.NO) {
+            applyOneway(Node.BICYCLE, sidepath);
+        }
+
+        // pedestrians don't inherit oneway restrictions from other modes
+        applyOneway(Node.FOOT, OneWay.NO);
+        if (values[ONEWAY_FOOT] != null) applyOneway(Node.FOOT, parseOneWay(values[ONEWAY_FOOT]));
+    }
+
+    private void applyOneway(Node node, OneWay oneWay) {
+        for (int descendant : SUBTREES[node.ordinal()]) {
+            directions[descendant] = oneWay;
+        }
+    }
+
+    /**
+     * Equivalent to Label.fromTag(), without allocating for plain ASCII values. Anything else (including values
+     * starting with `;`, which Label.fromTag() splits specially) is passed to Label.fromTag().
+     */
+    static Label parseLabel(String value) {
+        int end = value.indexOf(';');
+        if (end < 0) {
+            end = value.length();
+        }
+        if (end == 0 || !isAscii(value, end)) {
+            return Label.fromTag(value);
+        }
+        int start = 0;
+        while (start < end && value.charAt(start) <= ' ') start++;
+        while (end > start && value.charAt(end - 1) <= ' ') end--;
+        int length = end - start;
+        for (int i = 0; i < LABEL_KEYWORDS.length; i++) {
+            String keyword = LABEL_KEYWORDS[i];
+            if (keyword.length() == length && value.regionMatches(true, start, keyword, 0, length)) {
+                return KEYWORD_LABELS[i];
+            }
+        }
+        return Label.UNKNOWN;
+    }
+
+    /**
+     * Equivalent to OneWay.fromTag(), without allocating for plain ASCII values
+     */
+    static OneWay parseOneWay(String value) {
+        int end = value.length();
+        if (!isAscii(value, end)) {
+            return OneWay.fromTag(value);
+        }
+        int start = 0;
+        while (start < end && value.charAt(start) <= ' ') start++;
+        while (end > start && value.charAt(end - 1) <= ' ') end--;
+        int length = end - start;
+        if (matches(value, start, length, "yes") || matches(value, start, length, "true") || matches(value, start, length, "1")) {
+            return OneWay.YES;
+        }
+        if (matches(value, start, length, "-1") || matches(value, start, length, "reverse")) {
+            return OneWay.REVERSE;
+        }
+        return OneWay.NO;
+    }
+
+    // Lowercases and trims highway values that aren't already normalized; the common case doesn't allocate
+    private static String normalize(String value) {
+        int length = value.length();
+        boolean normalized = length > 0 && value.charAt(0) > ' ' && value.charAt(length - 1) > ' ';
+        for (int i = 0; normalized && i < length; i++) {
+            char c = value.charAt(i);
+            normalized = c < 0x80 && (c < 'A' || c > 'Z');
+        }
+        return normalized ? value : value.toLowerCase().trim();
+    }
+
+    private static boolean matches(String value, int start, int length, String keyword) {
+        return keyword.length() == length && value.regionMatches(true, start, keyword, 0, length);
+    }
+
+    private static boolean isAscii(String value, int end) {
+        for (int i = 0; i < end; i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Label[] toMergedTree(EnumMap<Node, Label> permissions) {
+        Label[] merged = new Label[NODES.length];
+        for (int i = 0; i < merged.length; i++) {
+            merged[i] = Label.UNKNOWN;
+        }
+        for (Map.Entry<Node, Label> entry : permissions.entrySet()) {
+            merged[entry.getKey().ordinal()] = entry.getValue();
+        }
+        return merged;
+    }
+
+    private static void addSubtree(Node node, List<Integer> subtree) {
+        subtree.add(node.ordinal());
+        Node[] children = node.getChildren();
+        if (children != null) {
+            for (Node child : children) {
+                addSubtree(child, subtree);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.graphhopper.export;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.graphhopper.reader.ReaderWay;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache in front of TraversalPermissionLabeler.getPermissions(). The labeler's output only depends on a way's values
+ * for the ~20 considered tags, and there are very few distinct combinations of those values compared to the number
+ * of ways, so results are cached by a compact signature of the considered tags: one int per considered tag (in sorted
+ * tag order) holding the dictionary ID of the tag's value, or 0 if the way doesn't have the tag.
+ *
+ * Cached flag lists are shared between all ways with the same signature, so they're stored as immutable copies.
+ * This relies on the labeler being stateless between ways: TraversalPermissionLabeler.getTreeForWay() hands out a
+ * copy of the default tree, so a way's labels don't depend on which ways were labeled before it.
+ *
+ * Cache misses are labeled with CompiledPermissionLabeler. The cache and value dictionary are bounded in size; ways
+ * with tag values that don't fit are labeled directly. Instances are not thread-safe.
+ */
+public class PermissionLabelCache {
+    private static final int MAX_CACHED_SIGNATURES = 1 << 16;
+    private static final int MAX_DICTIONARY_VALUES = 1 << 16;
+
+    private final CompiledPermissionLabeler labeler;
+    private final String[] consideredTags;
+    private final Map<String, Integer> valueIds = Maps.newHashMap();
+    private final Map<Signature, List<String>> flagsBySignature = Maps.newHashMap();
+    // Reused to look up each way's signature without allocating
+    private final Signature probe;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    public PermissionLabelCache(TraversalPermissionLabeler labeler) {
+        this.labeler = new CompiledPermissionLabeler(labeler);
+        this.consideredTags = labeler.getAllConsideredTags().toArray(new String[0]);
+        Arrays.sort(this.consideredTags);
+        this.probe = new Signature(new int[consideredTags.length]);
+    }
+
+    /**
+     * Returns the access flags for the way in each direction, as stringified EnumSets ordered [forward, backward]
+     */
+    public List<String> getFlagStrings(ReaderWay way) {
+        int[] valueIdsForWay = probe.valueIds;
+        for (int i = 0; i < consideredTags.length; i++) {
+            String value = way.getTag(consideredTags[i]);
+            int valueId = value == null ? 0 : getValueId(value);
+            if (valueId < 0) {
+                missCount++;
+                return labeler.getFlagStrings(way);
+            }
+            valueIdsForWay[i] = valueId;
+        }
+        probe.rehash();
+
+        List<String> flagStrings = flagsBySignature.get(probe);
+        if (flagStrings != null) {
+            hitCount++;
+            return flagStrings;
+        }
+        missCount++;
+        flagStrings = labeler.getFlagStrings(way);
+        if (flagsBySignature.size() < MAX_CACHED_SIGNATURES) {
+            flagStrings = ImmutableList.copyOf(flagStrings);
+            flagsBySignature.put(probe.copy(), flagStrings);
+        }
+        return flagStrings;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public int size() {
+        return flagsBySignature.size();
+    }
+
+    // Returns a positive ID for the value, or -1 if the dictionary is full and doesn't contain it
+    private int getValueId(String value) {
+        Integer valueId = valueIds.get(value);
+        if (valueId == null) {
+            if (valueIds.size() >= MAX_DICTIONARY_VALUES) {
+                return -1;
+            }
+            valueId = valueIds.size() + 1;
+            valueIds.put(value, valueId);
+        }
+        return valueId;
+    }
+
+    private static class Signature {
+        private final int[] valueIds;
+        private int hash;
+
+        Signature(int[] valueIds) {
+            this.valueIds = valueIds;
+            rehash();
+        }
+
+        void rehash() {
+            hash = Arrays.hashCode(valueIds);
+        }
+
+        Signature copy() {
+            return new Signature(valueIds.clone());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Signature && Arrays.equals(valueIds, ((Signature) o).valueIds);
+        }
+    }
+}
@@ -301,7 +301,8 @@ public abstract class TraversalPermissionLabeler {
             return tree;
         }
 
-        return defaultPermissions.get("highway=road");
+        // Copy the default tree, since specific permissions are applied to the returned tree
+        return new EnumMap<>(defaultPermissions.get("highway=road"));
     }
 
     /**
@@ -0,0 +1,55 @@
+package com.graphhopper.osminfo;
+
+import com.google.common.collect.Lists;
+import com.graphhopper.export.PermissionLabelCache;
+import com.graphhopper.export.USTraversalPermissionLabeler;
+import com.graphhopper.reader.ReaderWay;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts access flags for each edge direction (each created from set {ALLOWS_CAR, ALLOWS_BIKE, ALLOWS_PEDESTRIAN}),
+ * stored in list in order [forward, backward]
+ */
+public class AccessFlagsExtractor implements OsmTagExtractor<List<String>> {
+    private static final Logger LOG = LoggerFactory.getLogger(AccessFlagsExtractor.class);
+    public static final String NAME = "osmIdToAccessFlags";
+
+    // Each way processing thread labels access flags with its own cache, since caches aren't thread-safe
+    private final List<PermissionLabelCache> flagCaches = Lists.newCopyOnWriteArrayList();
+    private final ThreadLocal<PermissionLabelCache> flagCache = ThreadLocal.withInitial(() -> {
+        PermissionLabelCache cache = new PermissionLabelCache(new USTraversalPermissionLabeler());
+        flagCaches.add(cache);
+        return cache;
+    });
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Class<?> getValueType() {
+        return List.class;
+    }
+
+    @Override
+    public List<String> extract(ReaderWay way) {
+        // Ways with identical values for all considered tags share a single cached result
+        return flagCache.get().getFlagStrings(way);
+    }
+
+    @Override
+    public void finish(Map<Long, List<String>> values) {
+        long hitCount = 0;
+        long missCount = 0;
+        for (PermissionLabelCache cache : flagCaches) {
+            hitCount += cache.getHitCount();
+            missCount += cache.getMissCount();
+        }
+        LOG.info("Access flags were computed for " + missCount + " ways and reused for " + hitCount + " ways.");
+    }
+}
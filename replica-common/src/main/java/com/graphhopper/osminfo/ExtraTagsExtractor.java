@@ -0,0 +1,105 @@
+package com.graphhopper.osminfo;
+
+import com.google.common.collect.Lists;
+import com.graphhopper.reader.ReaderWay;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extracts the values of a configurable list of OSM tags (osm_info.extra_tags), for export as extra street network
+ * columns. Values are dictionary-encoded per tag, so memory use grows with the number of distinct values rather than
+ * with the number of ways times tags.
+ *
+ * While the file is read, each way with at least one of the tags gets a row of value IDs (one per tag, in sorted tag
+ * order, 0 meaning the way doesn't have the tag), so that ways can be processed and merged like other extractors'
+ * values. Once the whole file has been read, finish() renumbers value IDs in sorted value order (so stored IDs don't
+ * depend on how way processing was scheduled) and converts the rows into OsmTagColumns, with one value ID array per
+ * tag; the rows are then dropped.
+ */
+public class ExtraTagsExtractor implements OsmTagExtractor<int[]> {
+    public static final String NAME = "osmIdToExtraTags";
+
+    private final String[] tags;
+    private final List<Map<String, Integer>> valueIds = Lists.newArrayList();
+    private final List<AtomicInteger> valueCounts = Lists.newArrayList();
+    private OsmTagColumns columns;
+
+    public ExtraTagsExtractor(Collection<String> tags) {
+        this.tags = new TreeSet<>(tags).toArray(new String[0]);
+        for (int i = 0; i < this.tags.length; i++) {
+            valueIds.add(new ConcurrentHashMap<>());
+            valueCounts.add(new AtomicInteger());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Class<?> getValueType() {
+        return int[].class;
+    }
+
+    @Override
+    public int[] extract(ReaderWay way) {
+        int[] row = null;
+        for (int i = 0; i < tags.length; i++) {
+            String value = way.getTag(tags[i]);
+            if (value != null) {
+                if (row == null) {
+                    row = new int[tags.length];
+                }
+                AtomicInteger valueCount = valueCounts.get(i);
+                row[i] = valueIds.get(i).computeIfAbsent(value, v -> valueCount.incrementAndGet());
+            }
+        }
+        return row;
+    }
+
+    @Override
+    public void finish(Map<Long, int[]> rows) {
+        List<List<String>> tagValues = Lists.newArrayListWithCapacity(tags.length);
+        int[][] remappedIds = new int[tags.length][];
+        for (int i = 0; i < tags.length; i++) {
+            Map<String, Integer> ids = valueIds.get(i);
+            List<String> sortedValues = Lists.newArrayList(ids.keySet());
+            Collections.sort(sortedValues);
+            remappedIds[i] = new int[sortedValues.size() + 1];
+            for (int j = 0; j < sortedValues.size(); j++) {
+                remappedIds[i][ids.get(sortedValues.get(j))] = j + 1;
+            }
+            tagValues.add(sortedValues);
+        }
+        valueIds.clear();
+
+        long[] wayIds = new long[rows.size()];
+        int wayIndex = 0;
+        for (long wayId : rows.keySet()) {
+            wayIds[wayIndex++] = wayId;
+        }
+        Arrays.sort(wayIds);
+        int[][] columnValueIds = new int[tags.length][wayIds.length];
+        for (wayIndex = 0; wayIndex < wayIds.length; wayIndex++) {
+            int[] row = rows.get(wayIds[wayIndex]);
+            for (int i = 0; i < tags.length; i++) {
+                columnValueIds[i][wayIndex] = remappedIds[i][row[i]];
+            }
+        }
+        rows.clear();
+        columns = new OsmTagColumns(Arrays.asList(tags), tagValues, wayIds, columnValueIds);
+    }
+
+    @Override
+    public OsmTagColumns getColumns() {
+        return columns;
+    }
+}
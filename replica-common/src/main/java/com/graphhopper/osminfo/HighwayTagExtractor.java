@@ -0,0 +1,29 @@
+package com.graphhopper.osminfo;
+
+import com.graphhopper.reader.ReaderWay;
+
+/**
+ * Extracts the highway tag of each way that has one
+ */
+public class HighwayTagExtractor implements OsmTagExtractor<String> {
+    public static final String NAME = "osmIdToHighway";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Class<?> getValueType() {
+        return String.class;
+    }
+
+    @Override
+    public String extract(ReaderWay way) {
+        if (way.hasTag("highway")) {
+            return way.getTag("highway");
+        } else {
+            return null;
+        }
+    }
+}
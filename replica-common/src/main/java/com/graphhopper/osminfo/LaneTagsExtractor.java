@@ -0,0 +1,47 @@
+package com.graphhopper.osminfo;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.graphhopper.reader.ReaderWay;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracts the tags considered by R5 when calculating the value of the `lanes` column, as a map of tag name -> value
+ */
+public class LaneTagsExtractor implements OsmTagExtractor<Map<String, String>> {
+    public static final String NAME = "osmIdToLaneTags";
+
+    private static final Set<String> LANE_TAGS = Sets.newHashSet("lanes", "lanes:forward", "lanes:backward");
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Class<?> getValueType() {
+        return Map.class;
+    }
+
+    @Override
+    public Map<String, String> extract(ReaderWay way) {
+        Map<String, String> laneTags = null;
+        for (String laneTag : LANE_TAGS) {
+            if (way.hasTag(laneTag)) {
+                if (laneTags == null) {
+                    laneTags = Maps.newHashMap();
+                }
+                laneTags.put(laneTag, way.getTag(laneTag));
+            }
+        }
+        return laneTags;
+    }
+
+    @Override
+    public Map<String, String> merge(Map<String, String> previous, Map<String, String> value) {
+        previous.putAll(value);
+        return previous;
+    }
+}
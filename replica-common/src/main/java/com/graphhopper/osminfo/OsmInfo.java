@@ -0,0 +1,103 @@
+package com.graphhopper.osminfo;
+
+import com.google.common.collect.Maps;
+import com.graphhopper.reader.osm.OSMReader;
+import com.graphhopper.storage.GraphHopperStorage;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OSM info collected alongside a GH graph for use in the street network export: the OSM way ID of each GH edge, and
+ * the values extracted from each OSM way by the registered OsmTagExtractors, stored under each extractor's name
+ * (either per way, or as OsmTagColumns for extractors that provide them).
+ */
+public class OsmInfo {
+    // Map of GH edge ID to OSM way ID
+    private final Map<Integer, Long> ghIdToOsmId = Maps.newHashMap();
+    // Map of extractor name -> (Map of OSM way ID -> extracted value)
+    private final Map<String, Map<Long, ?>> wayValues = Maps.newLinkedHashMap();
+    private final Map<String, Class<?>> valueTypes = Maps.newHashMap();
+    // Map of extractor name -> values for extractors that store their values as columns
+    private final Map<String, OsmTagColumns> columns = Maps.newLinkedHashMap();
+
+    /**
+     * Returns an OSMReader that records the OSM way ID of each edge it creates in the GH edge ID -> OSM way ID map.
+     * CustomGraphHopperOSM and CustomGraphHopperGtfs both return it from their createReader() overrides, so it's
+     * used by the standard GH import.
+     *
+     * Note that this approach requires reading the OSM file twice: once in OsmInfoSource.collectOsmInfo(), to extract
+     * per-way tag info, and once during the call to importOrLoad(), which is where this reader's storeOsmWayID method
+     * is called.
+     *
+     * todo: figure out if it's possible to eliminate the need for two OSM read operations
+     */
+    public OSMReader createOsmReader(GraphHopperStorage ghStorage) {
+        return new OSMReader(ghStorage) {
+            @Override
+            protected void storeOsmWayID(int edgeId, long osmWayId) {
+                super.storeOsmWayID(edgeId, osmWayId);
+                ghIdToOsmId.put(edgeId, osmWayId);
+            }
+        };
+    }
+
+    <T> Map<Long, T> addWayValues(OsmTagExtractor<T> extractor) {
+        Map<Long, T> values = Maps.newHashMap();
+        wayValues.put(extractor.getName(), values);
+        valueTypes.put(extractor.getName(), extractor.getValueType());
+        return values;
+    }
+
+    // Replaces the extractor's per-way values with its columns
+    void setColumns(String name, OsmTagColumns values) {
+        wayValues.remove(name);
+        valueTypes.remove(name);
+        columns.put(name, values);
+    }
+
+    public Map<Integer, Long> getGhIdToOsmId() {
+        return ghIdToOsmId;
+    }
+
+    /**
+     * Returns the values stored under the given extractor name, or an empty map if no such extractor was run
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Map<Long, T> getWayValues(String name) {
+        return (Map<Long, T>) wayValues.getOrDefault(name, Collections.emptyMap());
+    }
+
+    public Map<String, Map<Long, ?>> getAllWayValues() {
+        return Collections.unmodifiableMap(wayValues);
+    }
+
+    public Class<?> getValueType(String name) {
+        return valueTypes.get(name);
+    }
+
+    public Map<String, OsmTagColumns> getAllColumns() {
+        return Collections.unmodifiableMap(columns);
+    }
+
+    public Map<Long, Map<String, String>> getOsmIdToLaneTags() {
+        return getWayValues(LaneTagsExtractor.NAME);
+    }
+
+    public Map<Long, List<String>> getOsmIdToAccessFlags() {
+        return getWayValues(AccessFlagsExtractor.NAME);
+    }
+
+    public Map<Long, String> getOsmIdToStreetName() {
+        return getWayValues(StreetNameExtractor.NAME);
+    }
+
+    public Map<Long, String> getOsmIdToHighwayTag() {
+        return getWayValues(HighwayTagExtractor.NAME);
+    }
+
+    public OsmTagColumns getExtraTags() {
+        return columns.getOrDefault(ExtraTagsExtractor.NAME, OsmTagColumns.empty());
+    }
+}
@@ -0,0 +1,230 @@
+package com.graphhopper.osminfo;
+
+import com.google.common.collect.Lists;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.ReaderRelation;
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.osm.OSMInput;
+import com.graphhopper.reader.osm.OSMInputFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads an OSM file once, running each registered OsmTagExtractor over every way and storing the extracted values in
+ * an OsmInfo. Shared by CustomGraphHopperOSM and CustomGraphHopperGtfs; by default, extracts the lane tags, access
+ * flags, street names and highway tags used in the street network export.
+ *
+ * Set via the following optional keys in the `graphhopper` section of the GH config:
+ *
+ * osm_info.extra_tags: comma-separated list of additional OSM tags (e.g. `surface,maxspeed`) to extract, which are
+ *     exported as extra street network columns. See ExtraTagsExtractor.
+ * osm_info.decoder_threads: number of threads decoding PBF blocks (default 2).
+ * osm_info.worker_threads: number of threads processing decoded ways (default 1). With more than one thread, ways
+ *     are handed to a worker pool in batches, and each batch's results are merged into the output maps in file
+ *     order, so the collected info is identical to that of a single-threaded pass.
+ * osm_info.way_batch_size: number of ways handed to a worker at a time (default 10000).
+ */
+public class OsmInfoCollector {
+    private static final Logger LOG = LoggerFactory.getLogger(OsmInfoCollector.class);
+
+    public static final int DEFAULT_WAY_BATCH_SIZE = 10_000;
+
+    private final String osmPath;
+    private final int decoderThreads;
+    private final int workerThreads;
+    private final int wayBatchSize;
+    private final List<OsmTagExtractor<?>> extractors = Lists.newArrayList();
+
+    public OsmInfoCollector(String osmPath, int decoderThreads, int workerThreads) {
+        this(osmPath, decoderThreads, workerThreads, DEFAULT_WAY_BATCH_SIZE);
+    }
+
+    public OsmInfoCollector(String osmPath, int decoderThreads, int workerThreads, int wayBatchSize) {
+        if (decoderThreads < 1) {
+            throw new IllegalArgumentException("osm_info.decoder_threads must be at least 1, got " + decoderThreads);
+        }
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("osm_info.worker_threads must be at least 1, got " + workerThreads);
+        }
+        if (wayBatchSize < 1) {
+            throw new IllegalArgumentException("osm_info.way_batch_size must be at least 1, got " + wayBatchSize);
+        }
+        this.osmPath = osmPath;
+        this.decoderThreads = decoderThreads;
+        this.workerThreads = workerThreads;
+        this.wayBatchSize = wayBatchSize;
+    }
+
+    /**
+     * Creates a collector for the configured OSM file, with the default extractors registered
+     */
+    public static OsmInfoCollector fromConfig(GraphHopperConfig ghConfig) {
+        OsmInfoCollector collector = new OsmInfoCollector(ghConfig.getString("datareader.file", ""),
+                ghConfig.getInt("osm_info.decoder_threads", 2),
+                ghConfig.getInt("osm_info.worker_threads", 1),
+                ghConfig.getInt("osm_info.way_batch_size", DEFAULT_WAY_BATCH_SIZE))
+                .register(new LaneTagsExtractor())
+                .register(new AccessFlagsExtractor())
+                .register(new StreetNameExtractor())
+                .register(new HighwayTagExtractor());
+        List<String> extraTags = parseExtraTags(ghConfig.getString("osm_info.extra_tags", ""));
+        if (!extraTags.isEmpty()) {
+            collector.register(new ExtraTagsExtractor(extraTags));
+        }
+        return collector;
+    }
+
+    static List<String> parseExtraTags(String extraTagsString) {
+        List<String> extraTags = Lists.newArrayList();
+        for (String tag : extraTagsString.split(",")) {
+            if (!tag.trim().isEmpty()) {
+                extraTags.add(tag.trim());
+            }
+        }
+        return extraTags;
+    }
+
+    public OsmInfoCollector register(OsmTagExtractor<?> extractor) {
+        for (OsmTagExtractor<?> registered : extractors) {
+            if (registered.getName().equals(extractor.getName())) {
+                throw new IllegalArgumentException("An OSM tag extractor named " + extractor.getName() + " is already registered");
+            }
+        }
+        extractors.add(extractor);
+        return this;
+    }
+
+    /**
+     * Values extracted from a batch of ways, indexed [way][extractor]; computed on a worker thread
+     */
+    private static class WayBatchValues {
+        final long[] osmIds;
+        final Object[][] values;
+
+        WayBatchValues(int size, int extractorCount) {
+            this.osmIds = new long[size];
+            this.values = new Object[size][extractorCount];
+        }
+    }
+
+    public void collect(OsmInfo osmInfo) {
+        LOG.info("Creating custom OSM reader; reading file and parsing lane tag and street name info using "
+                + decoderThreads + " decoder thread(s) and " + workerThreads + " way processing thread(s).");
+        List<Map<Long, ?>> wayValues = Lists.newArrayListWithCapacity(extractors.size());
+        for (OsmTagExtractor<?> extractor : extractors) {
+            wayValues.add(osmInfo.addWayValues(extractor));
+        }
+
+        int readCount = 0;
+        ExecutorService executor = workerThreads > 1 ? Executors.newFixedThreadPool(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "osm-info-worker");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        Deque<Future<WayBatchValues>> pendingBatches = new ArrayDeque<>();
+        try (OSMInput input = new OSMInputFile(new File(osmPath)).setWorkerThreads(decoderThreads).open()) {
+            List<ReaderWay> batch = Lists.newArrayListWithCapacity(wayBatchSize);
+            ReaderElement next;
+            while((next = input.getNext()) != null) {
+                if (next.isType(ReaderElement.WAY)) {
+                    if (++readCount % 10000 == 0) {
+                        LOG.info("Parsing tag info from OSM ways. " + readCount + " read so far.");
+                    }
+                    batch.add((ReaderWay) next);
+                    if (batch.size() == wayBatchSize) {
+                        if (executor == null) {
+                            storeWayValues(extractWayValues(batch), wayValues);
+                            batch.clear();
+                        } else {
+                            final List<ReaderWay> ways = batch;
+                            pendingBatches.add(executor.submit(() -> extractWayValues(ways)));
+                            batch = Lists.newArrayListWithCapacity(wayBatchSize);
+                            // Bound the number of decoded ways held in memory
+                            while (pendingBatches.size() > workerThreads * 2) {
+                                storeWayValues(pendingBatches.poll().get(), wayValues);
+                            }
+                        }
+                    }
+                } else if (next.isType(ReaderElement.RELATION)) {
+                    for (OsmTagExtractor<?> extractor : extractors) {
+                        extractor.onRelation((ReaderRelation) next);
+                    }
+                }
+            }
+            while (!pendingBatches.isEmpty()) {
+                storeWayValues(pendingBatches.poll().get(), wayValues);
+            }
+            storeWayValues(extractWayValues(batch), wayValues);
+            LOG.info("Finished parsing lane tag info from OSM ways. " + readCount + " total ways were parsed.");
+
+            for (int i = 0; i < extractors.size(); i++) {
+                OsmTagExtractor<?> extractor = extractors.get(i);
+                finish(extractor, wayValues.get(i));
+                if (extractor.getColumns() != null) {
+                    osmInfo.setColumns(extractor.getName(), extractor.getColumns());
+                }
+            }
+        } catch (IOException | XMLStreamException e) {
+            throw new RuntimeException("Can't read OSM file provided at " + osmPath + "!", e);
+        } catch (ExecutionException e) {
+            // Report the extractor's own failure rather than the worker pool's wrapper
+            throw new RuntimeException("Failed to extract tag info from OSM ways in " + osmPath, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while collecting OSM info from " + osmPath, e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private WayBatchValues extractWayValues(List<ReaderWay> ways) {
+        WayBatchValues batchValues = new WayBatchValues(ways.size(), extractors.size());
+        for (int i = 0; i < ways.size(); i++) {
+            ReaderWay way = ways.get(i);
+            batchValues.osmIds[i] = way.getId();
+            for (int j = 0; j < extractors.size(); j++) {
+                batchValues.values[i][j] = extractors.get(j).extract(way);
+            }
+        }
+        return batchValues;
+    }
+
+    // Merges extracted values into the output maps, in the order the ways were read
+    private void storeWayValues(WayBatchValues batchValues, List<Map<Long, ?>> wayValues) {
+        for (int i = 0; i < batchValues.osmIds.length; i++) {
+            for (int j = 0; j < extractors.size(); j++) {
+                Object value = batchValues.values[i][j];
+                if (value != null) {
+                    store(extractors.get(j), wayValues.get(j), batchValues.osmIds[i], value);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void store(OsmTagExtractor<T> extractor, Map<Long, ?> values, long osmId, Object value) {
+        Map<Long, T> typedValues = (Map<Long, T>) values;
+        T previous = typedValues.get(osmId);
+        typedValues.put(osmId, previous == null ? (T) value : extractor.merge(previous, (T) value));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void finish(OsmTagExtractor<T> extractor, Map<Long, ?> values) {
+        extractor.finish((Map<Long, T>) values);
+    }
+}
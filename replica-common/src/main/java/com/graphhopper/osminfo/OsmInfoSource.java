@@ -0,0 +1,16 @@
+package com.graphhopper.osminfo;
+
+/**
+ * A GH instance that collects OsmInfo alongside its graph; implemented by both CustomGraphHopperOSM and
+ * CustomGraphHopperGtfs
+ */
+public interface OsmInfoSource {
+
+    /**
+     * Reads the OSM file to extract per-way tag info. The OSM way ID of each GH edge is recorded separately, during
+     * the standard GH import.
+     */
+    void collectOsmInfo();
+
+    OsmInfo getOsmInfo();
+}
@@ -0,0 +1,107 @@
+package com.graphhopper.osminfo;
+
+import com.google.common.collect.Lists;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary-encoded extra OSM tag values stored by ExtraTagsExtractor, held as columns: a sorted array of the IDs of
+ * the OSM ways that have at least one of the tags, and for each tag (in sorted tag order) an array of value IDs
+ * indexed like the way IDs, with 0 meaning the way doesn't have the tag. Each tag's values are kept in value ID
+ * order, starting from ID 1.
+ *
+ * A way's values are found by binary search over the way IDs, so memory use is one long per way plus one int per way
+ * and tag, with no per-way objects.
+ */
+public class OsmTagColumns {
+    private static final OsmTagColumns EMPTY = new OsmTagColumns(Collections.emptyList(), Collections.emptyList(),
+            new long[0], new int[0][]);
+
+    private final List<String> tags;
+    private final List<List<String>> tagValues;
+    private final long[] wayIds;
+    // Indexed [tag][way]
+    private final int[][] valueIds;
+
+    /**
+     * @param tags tag names, in sorted order
+     * @param tagValues each tag's values, in value ID order
+     * @param wayIds sorted IDs of the OSM ways with values
+     * @param valueIds for each tag, the value ID of each way in wayIds
+     */
+    public OsmTagColumns(List<String> tags, List<List<String>> tagValues, long[] wayIds, int[][] valueIds) {
+        if (tagValues.size() != tags.size() || valueIds.length != tags.size()) {
+            throw new IllegalArgumentException("Expected values and value IDs for each of " + tags.size() + " tags");
+        }
+        for (int[] column : valueIds) {
+            if (column.length != wayIds.length) {
+                throw new IllegalArgumentException("Expected " + wayIds.length + " value IDs per tag, got " + column.length);
+            }
+        }
+        this.tags = Collections.unmodifiableList(tags);
+        this.tagValues = tagValues;
+        this.wayIds = wayIds;
+        this.valueIds = valueIds;
+    }
+
+    public static OsmTagColumns empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param wayIds sorted IDs of the OSM ways with values, or null if no extra tags were collected
+     * @param valueIds map of tag -> value ID of each way in wayIds
+     * @param dictionary map of tag -> values in value ID order
+     */
+    public static OsmTagColumns fromTables(long[] wayIds, Map<String, int[]> valueIds, Map<String, List<String>> dictionary) {
+        if (wayIds == null || dictionary.isEmpty()) {
+            return EMPTY;
+        }
+        List<String> tags = Lists.newArrayList(dictionary.keySet());
+        Collections.sort(tags);
+        List<List<String>> tagValues = Lists.newArrayListWithCapacity(tags.size());
+        int[][] columns = new int[tags.size()][];
+        for (int i = 0; i < tags.size(); i++) {
+            tagValues.add(dictionary.get(tags.get(i)));
+            columns[i] = valueIds.get(tags.get(i));
+        }
+        return new OsmTagColumns(tags, tagValues, wayIds, columns);
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public long[] getWayIds() {
+        return wayIds;
+    }
+
+    /**
+     * Returns the value ID of each way in getWayIds() for the tag at tagIndex
+     */
+    public int[] getValueIds(int tagIndex) {
+        return valueIds[tagIndex];
+    }
+
+    /**
+     * Returns the values of the tag at tagIndex, in value ID order
+     */
+    public List<String> getTagValues(int tagIndex) {
+        return tagValues.get(tagIndex);
+    }
+
+    /**
+     * Fills values (which must have one element per tag) with the way's value for each tag, or null where the way
+     * doesn't have the tag
+     */
+    public void getValues(long osmId, String[] values) {
+        int wayIndex = tags.isEmpty() ? -1 : Arrays.binarySearch(wayIds, osmId);
+        for (int i = 0; i < values.length; i++) {
+            int valueId = wayIndex < 0 ? 0 : valueIds[i][wayIndex];
+            values[i] = valueId == 0 ? null : tagValues.get(i).get(valueId - 1);
+        }
+    }
+}
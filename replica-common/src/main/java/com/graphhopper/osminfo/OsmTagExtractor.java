@@ -0,0 +1,58 @@
+package com.graphhopper.osminfo;
+
+import com.graphhopper.reader.ReaderRelation;
+import com.graphhopper.reader.ReaderWay;
+
+import java.util.Map;
+
+/**
+ * Extracts a value from each OSM way during OsmInfoCollector's pass over the OSM file. Values are stored in OsmInfo
+ * by OSM way ID, and persisted under the extractor's name for use in the street network export.
+ *
+ * extract() may be called concurrently from way processing threads, so must be thread-safe. All other methods are
+ * called from the thread reading the OSM file.
+ */
+public interface OsmTagExtractor<T> {
+
+    /**
+     * Name the extracted values are stored and persisted under
+     */
+    String getName();
+
+    /**
+     * Type of the extracted values, used to choose how they're persisted
+     */
+    Class<?> getValueType();
+
+    /**
+     * Returns the value for the way, or null if it has none
+     */
+    T extract(ReaderWay way);
+
+    /**
+     * Combines the values extracted from two ways with the same ID, in file order. By default the later value wins.
+     */
+    default T merge(T previous, T value) {
+        return value;
+    }
+
+    /**
+     * Called for each relation in the OSM file
+     */
+    default void onRelation(ReaderRelation relation) {
+    }
+
+    /**
+     * Called once the whole OSM file has been read, with the values stored for all ways
+     */
+    default void finish(Map<Long, T> values) {
+    }
+
+    /**
+     * For extractors that store their values as columns rather than per way, returns the columns built from the
+     * per-way values once finish() has been called; the per-way values are then dropped. Returns null otherwise.
+     */
+    default OsmTagColumns getColumns() {
+        return null;
+    }
+}
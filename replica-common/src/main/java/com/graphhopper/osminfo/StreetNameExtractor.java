@@ -0,0 +1,103 @@
+package com.graphhopper.osminfo;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.ReaderRelation;
+import com.graphhopper.reader.ReaderWay;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts street names. Name is parsed directly from Way, unless name field isn't present, in which case the name
+ * is taken from the route=road Relation containing the Way, if one exists.
+ *
+ * Rather than keeping the relations themselves until all ways have been read, only (member way ID, relation name ID)
+ * pairs are kept, in primitive arrays in file order, along with each distinct relation name.
+ */
+public class StreetNameExtractor implements OsmTagExtractor<String> {
+    private static final Logger LOG = LoggerFactory.getLogger(StreetNameExtractor.class);
+    public static final String NAME = "osmIdToStreetName";
+
+    private final List<String> relationNames = Lists.newArrayList();
+    private final Map<String, Integer> relationNameIds = Maps.newHashMap();
+    private long[] memberWayIds = new long[1024];
+    private int[] memberNameIds = new int[1024];
+    private int memberCount = 0;
+    private int relationCount = 0;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Class<?> getValueType() {
+        return String.class;
+    }
+
+    @Override
+    public String extract(ReaderWay way) {
+        return getNameFromOsmElement(way);
+    }
+
+    @Override
+    public void onRelation(ReaderRelation relation) {
+        if (!relation.hasTag("route", "road")) {
+            return;
+        }
+        relationCount++;
+        String name = getNameFromOsmElement(relation);
+        if (name == null) {
+            return;
+        }
+        Integer nameId = relationNameIds.get(name);
+        if (nameId == null) {
+            nameId = relationNames.size();
+            relationNames.add(name);
+            relationNameIds.put(name, nameId);
+        }
+        for (ReaderRelation.Member member : relation.getMembers()) {
+            if (member.getType() == ReaderRelation.Member.WAY) {
+                if (memberCount == memberWayIds.length) {
+                    memberWayIds = Arrays.copyOf(memberWayIds, memberCount * 2);
+                    memberNameIds = Arrays.copyOf(memberNameIds, memberCount * 2);
+                }
+                memberWayIds[memberCount] = member.getRef();
+                memberNameIds[memberCount] = nameId;
+                memberCount++;
+            }
+        }
+    }
+
+    /**
+     * For each relation member way we haven't recorded a street name for, use the name of the first relation (in
+     * file order) containing it
+     */
+    @Override
+    public void finish(Map<Long, String> osmIdToStreetName) {
+        LOG.info("Scanning " + relationCount + " road relations to populate street names for Ways that didn't have them set.");
+        int backfilledCount = 0;
+        for (int i = 0; i < memberCount; i++) {
+            if (!osmIdToStreetName.containsKey(memberWayIds[i])) {
+                osmIdToStreetName.put(memberWayIds[i], relationNames.get(memberNameIds[i]));
+                backfilledCount++;
+            }
+        }
+        LOG.info("Finished scanning road relations for additional street names. " + backfilledCount + " Ways were given their Relation's name.");
+    }
+
+    private static String getNameFromOsmElement(ReaderElement wayOrRelation) {
+        if (wayOrRelation.hasTag("name")) {
+            return wayOrRelation.getTag("name");
+        } else if (wayOrRelation.hasTag("ref")) {
+            return wayOrRelation.getTag("ref");
+        } else {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.graphhopper.replica;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.json.geo.JsonFeature;
+import com.graphhopper.json.geo.JsonFeatureCollection;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.shapes.BBox;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Area used to restrict a street network export to a region of the loaded graph, given either as a bounding box or
+ * as the polygon(s) of a GeoJSON FeatureCollection.
+ *
+ * Rather than scanning every edge in the graph, candidate edges are looked up via the graph's LocationIndex, and then
+ * only kept if their full geometry intersects the area.
+ */
+public class ExportArea {
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    private final Geometry area;
+    private final PreparedGeometry preparedArea;
+
+    private ExportArea(Geometry area) {
+        this.area = area;
+        this.preparedArea = PreparedGeometryFactory.prepare(area);
+    }
+
+    /**
+     * @param bboxString bounding box formatted as `minLon,maxLon,minLat,maxLat`
+     */
+    public static ExportArea fromBBoxString(String bboxString) {
+        BBox bbox = BBox.parseBBoxString(bboxString);
+        if (!bbox.isValid()) {
+            throw new IllegalArgumentException("Invalid export bounding box " + bboxString
+                    + "; expected minLon,maxLon,minLat,maxLat");
+        }
+        return new ExportArea(GEOMETRY_FACTORY.toGeometry(new Envelope(bbox.minLon, bbox.maxLon, bbox.minLat, bbox.maxLat)));
+    }
+
+    public static ExportArea fromGeoJson(File geoJsonFile, ObjectMapper objectMapper) {
+        JsonFeatureCollection featureCollection;
+        try {
+            featureCollection = objectMapper.readValue(geoJsonFile, JsonFeatureCollection.class);
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't read export area GeoJSON from " + geoJsonFile.getPath(), e);
+        }
+        List<Geometry> geometries = new ArrayList<>();
+        for (JsonFeature feature : featureCollection.getFeatures()) {
+            if (feature.getGeometry() != null) {
+                geometries.add(feature.getGeometry());
+            }
+        }
+        if (geometries.isEmpty()) {
+            throw new IllegalArgumentException("Export area GeoJSON at " + geoJsonFile.getPath() + " contains no geometries");
+        }
+        return new ExportArea(GEOMETRY_FACTORY.buildGeometry(geometries).union());
+    }
+
+    public BBox getBounds() {
+        Envelope envelope = area.getEnvelopeInternal();
+        return new BBox(envelope.getMinX(), envelope.getMaxX(), envelope.getMinY(), envelope.getMaxY());
+    }
+
+    /**
+     * Returns the IDs of all edges whose geometry intersects this area
+     */
+    public BitSet findEdges(GraphHopper graphHopper) {
+        GraphHopperStorage graphHopperStorage = graphHopper.getGraphHopperStorage();
+
+        // The index is tile-based, so it returns a superset of the intersecting edges, possibly with duplicates
+        BitSet candidateEdges = new BitSet(graphHopperStorage.getEdges());
+        graphHopper.getLocationIndex().query(getBounds(), new LocationIndex.Visitor() {
+            @Override
+            public void onEdge(int edgeId) {
+                candidateEdges.set(edgeId);
+            }
+        });
+
+        BitSet edges = new BitSet(graphHopperStorage.getEdges());
+        for (int edgeId = candidateEdges.nextSetBit(0); edgeId >= 0; edgeId = candidateEdges.nextSetBit(edgeId + 1)) {
+            EdgeIteratorState edge = graphHopperStorage.getEdgeIteratorState(edgeId, Integer.MIN_VALUE);
+            if (preparedArea.intersects(edge.fetchWayGeometry(FetchMode.ALL).toLineString(false))) {
+                edges.set(edgeId);
+            }
+        }
+        return edges;
+    }
+}
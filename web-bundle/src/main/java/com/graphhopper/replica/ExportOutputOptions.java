@@ -0,0 +1,106 @@
+package com.graphhopper.replica;
+
+import com.graphhopper.GraphHopperConfig;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Controls how export files (street_edges.csv, gtfs_link_mapping.csv) are written to disk. Set via the following
+ * optional keys in the `graphhopper` section of the GH config:
+ *
+ * export.compression: `none` (default) or `gzip`. When gzip is used, `.gz` is appended to the output file name.
+ * export.compression_threads: number of threads used to compress blocks in parallel (default 1). With more than one
+ *     thread, output is written as a series of independently-compressed gzip members, which standard gzip readers
+ *     (gunzip, GZIPInputStream, gsutil, BigQuery, etc.) decompress as a single file.
+ * export.buffer_size_bytes: size of the write buffer, and of each compressed block (default 1 MiB).
+ */
+public class ExportOutputOptions {
+    public enum Compression {
+        NONE, GZIP
+    }
+
+    public static final int DEFAULT_BUFFER_SIZE_BYTES = 1 << 20;
+
+    private final Compression compression;
+    private final int compressionThreads;
+    private final int bufferSizeBytes;
+
+    public ExportOutputOptions(Compression compression, int compressionThreads, int bufferSizeBytes) {
+        if (compressionThreads < 1) {
+            throw new IllegalArgumentException("export.compression_threads must be at least 1, got " + compressionThreads);
+        }
+        if (bufferSizeBytes < 1) {
+            throw new IllegalArgumentException("export.buffer_size_bytes must be positive, got " + bufferSizeBytes);
+        }
+        this.compression = compression;
+        this.compressionThreads = compressionThreads;
+        this.bufferSizeBytes = bufferSizeBytes;
+    }
+
+    public static ExportOutputOptions defaults() {
+        return new ExportOutputOptions(Compression.NONE, 1, DEFAULT_BUFFER_SIZE_BYTES);
+    }
+
+    public static ExportOutputOptions fromConfig(GraphHopperConfig config) {
+        String compressionName = config.getString("export.compression", "none");
+        Compression compression;
+        try {
+            compression = Compression.valueOf(compressionName.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported export.compression value " + compressionName
+                    + "; must be one of none, gzip");
+        }
+        return new ExportOutputOptions(compression,
+                getInt(config, "export.compression_threads", 1),
+                getInt(config, "export.buffer_size_bytes", DEFAULT_BUFFER_SIZE_BYTES));
+    }
+
+    // GraphHopperConfig.getInt() returns the default for values that aren't integers; reject them instead
+    private static int getInt(GraphHopperConfig config, String key, int defaultValue) {
+        if (!config.has(key)) {
+            return defaultValue;
+        }
+        int value;
+        try {
+            value = config.getInt(key, Integer.MIN_VALUE);
+        } catch (NumberFormatException e) {
+            value = Integer.MIN_VALUE;
+        }
+        if (value == Integer.MIN_VALUE) {
+            throw new IllegalArgumentException(key + " must be an integer, got " + config.getString(key, ""));
+        }
+        return value;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Returns the file that will actually be written for an export whose uncompressed name is `file`
+     */
+    public File resolveFile(File file) {
+        return compression == Compression.GZIP ? new File(file.getPath() + ".gz") : file;
+    }
+
+    /**
+     * Opens a buffered (and optionally compressed) stream to `outputFile`, which should come from resolveFile()
+     */
+    public ExportOutputStream open(File outputFile) throws IOException {
+        OutputStream fileStream = new BufferedOutputStream(new FileOutputStream(outputFile), bufferSizeBytes);
+        OutputStream out;
+        if (compression == Compression.NONE) {
+            out = fileStream;
+        } else if (compressionThreads == 1) {
+            out = new BufferedOutputStream(new GZIPOutputStream(fileStream, bufferSizeBytes), bufferSizeBytes);
+        } else {
+            out = new ParallelGzipOutputStream(fileStream, compressionThreads, bufferSizeBytes);
+        }
+        return new ExportOutputStream(out, outputFile);
+    }
+}
@@ -0,0 +1,51 @@
+package com.graphhopper.replica;
+
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream for export files, created by ExportOutputOptions.open(). Keeps track of the number of (uncompressed)
+ * bytes written so that export throughput can be logged once the file has been closed.
+ */
+public class ExportOutputStream extends FilterOutputStream {
+    private final File file;
+    private final long startNanos;
+    private long uncompressedBytes = 0;
+
+    ExportOutputStream(OutputStream out, File file) {
+        super(out);
+        this.file = file;
+        this.startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        uncompressedBytes++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        uncompressedBytes += len;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Logs bytes and rows written, along with throughput; should be called after the stream has been closed
+     */
+    public void logThroughput(Logger logger, long rowCount) {
+        double seconds = Math.max((System.nanoTime() - startNanos) / 1e9, 1e-3);
+        long fileBytes = file.length();
+        logger.info(String.format("Wrote %d rows to %s in %.1f s (%.0f rows/s); %d bytes uncompressed (%.1f MB/s), "
+                        + "%d bytes on disk", rowCount, file.getPath(), seconds, rowCount / seconds, uncompressedBytes,
+                uncompressedBytes / seconds / 1e6, fileBytes));
+    }
+}
@@ -17,6 +17,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
@@ -24,11 +25,17 @@ import java.util.stream.Collectors;
 public class GtfsLinkMapper {
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final GraphHopper graphHopper;
+    private final ExportOutputOptions outputOptions;
     private final String CSV_COLUMN_HEADERS = "route_id,feed_id,stop_id,next_stop_id," +
             "stop_lat,stop_lon,stop_lat_next,stop_lon_next,street_edges,transit_edge";
 
     public GtfsLinkMapper(GraphHopper graphHopper) {
+        this(graphHopper, ExportOutputOptions.defaults());
+    }
+
+    public GtfsLinkMapper(GraphHopper graphHopper, ExportOutputOptions outputOptions) {
         this.graphHopper = graphHopper;
+        this.outputOptions = outputOptions;
     }
 
     public void setGtfsLinkMappings() {
@@ -260,14 +267,15 @@ public class GtfsLinkMapper {
 
     // writes all pre-formed CSV rows to file
     private void writeGtfsLinksToCsv(List<String> gtfsLinkMappingCsvRows, File outputFile) {
+        outputFile = outputOptions.resolveFile(outputFile);
         logger.info("Writing GTFS link mapping CSV file to " + outputFile.getPath() + "...");
-        OutputStream outputStream;
+        ExportOutputStream outputStream;
         try {
-            outputStream = new BufferedOutputStream(new FileOutputStream(outputFile));
-        } catch (FileNotFoundException e) {
+            outputStream = outputOptions.open(outputFile);
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        PrintStream printStream = new PrintStream(outputStream);
+        PrintStream printStream = new PrintStream(outputStream, false, StandardCharsets.UTF_8);
         printStream.println(CSV_COLUMN_HEADERS);
 
         for (String row : gtfsLinkMappingCsvRows) {
@@ -275,9 +283,14 @@ public class GtfsLinkMapper {
         }
 
         printStream.close();
+        if (printStream.checkError()) {
+            throw new RuntimeException("Error writing GTFS link mappings to " + outputFile.getPath());
+        }
         logger.info("Done writing GTFS link mappings to CSV");
         if (!outputFile.exists()) {
             logger.error("Output file can't be found! CSV write may not have completed successfully");
+        } else {
+            outputStream.logThroughput(logger, gtfsLinkMappingCsvRows.size());
         }
     }
 }
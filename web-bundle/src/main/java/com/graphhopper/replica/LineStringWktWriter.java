@@ -0,0 +1,59 @@
+package com.graphhopper.replica;
+
+import com.graphhopper.util.PointList;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Writes the WKT representation of an edge's geometry directly from its coordinates, without building a JTS
+ * LineString. Output matches what PointList.toLineString(false).toString() produces (JTS' WKTWriter with a floating
+ * precision model, i.e. up to 16 fraction digits and no trailing zeros).
+ *
+ * Each coordinate is formatted only once per geometry, so the forward and reverse WKT strings for an edge can both be
+ * produced from a single call to setGeometry() without reversing the PointList or allocating a second geometry.
+ *
+ * Instances keep reusable buffers and are not thread-safe.
+ */
+public class LineStringWktWriter {
+    private static final String EMPTY_LINESTRING = "LINESTRING EMPTY";
+
+    private final DecimalFormat ordinateFormat;
+    private final StringBuilder builder = new StringBuilder(256);
+    // Formatted "lon lat" pairs for the current geometry
+    private String[] coordinates = new String[16];
+    private int size = 0;
+
+    public LineStringWktWriter() {
+        ordinateFormat = new DecimalFormat("0", DecimalFormatSymbols.getInstance(Locale.ROOT));
+        ordinateFormat.setMaximumFractionDigits(16);
+        ordinateFormat.setGroupingUsed(false);
+    }
+
+    public void setGeometry(PointList points) {
+        size = points.size();
+        if (coordinates.length < size) {
+            coordinates = new String[Math.max(size, coordinates.length * 2)];
+        }
+        for (int i = 0; i < size; i++) {
+            coordinates[i] = ordinateFormat.format(points.getLon(i)) + " " + ordinateFormat.format(points.getLat(i));
+        }
+    }
+
+    public String write(boolean reverse) {
+        if (size == 0) {
+            return EMPTY_LINESTRING;
+        }
+        builder.setLength(0);
+        builder.append("LINESTRING (");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(coordinates[reverse ? size - 1 - i : i]);
+        }
+        builder.append(')');
+        return builder.toString();
+    }
+}
@@ -1,8 +1,9 @@
 package com.graphhopper.replica;
 
-import com.graphhopper.CustomGraphHopperGtfs;
-import com.graphhopper.CustomGraphHopperOSM;
-import com.graphhopper.reader.osm.GraphHopperOSM;
+import com.google.common.collect.Maps;
+import com.graphhopper.osminfo.ExtraTagsExtractor;
+import com.graphhopper.osminfo.OsmInfo;
+import com.graphhopper.osminfo.OsmTagColumns;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
 import org.mapdb.HTreeMap;
@@ -17,55 +18,57 @@ import java.util.Map;
 public class OsmHelper {
     private static final Logger logger = LoggerFactory.getLogger(OsmHelper.class);
 
-    public static void writeOsmInfoToMapDb(GraphHopperOSM graphHopper) {
+    private static final String DICTIONARY_TABLE_SUFFIX = "Dictionary";
+    private static final String WAY_IDS_TABLE_SUFFIX = "WayIds";
+
+    /**
+     * Writes the GH edge ID -> OSM way ID map, along with each extractor's OSM way ID -> value map (stored under the
+     * extractor's name), to transit_data/osm_info.db. Extractors with columnar values instead get three entries: the
+     * sorted way IDs (under the name plus "WayIds"), a map of tag -> value ID column (under the name), and a map of
+     * tag -> values in value ID order (under the name plus "Dictionary").
+     */
+    public static void writeOsmInfoToMapDb(OsmInfo osmInfo) {
         logger.info("Initializing new MapDB database files to store OSM info.");
         DB db = DBMaker.newFileDB(new File("transit_data/osm_info.db")).make();
 
-        HTreeMap<Long, Map<String, String>> osmIdToLaneTags = db
-                .createHashMap("osmIdToLaneTags")
-                .keySerializer(Serializer.LONG)
-                .valueSerializer(Serializer.JAVA)
-                .make();
-
         HTreeMap<Integer, Long> ghIdToOsmId = db
                 .createHashMap("ghIdToOsmId")
                 .keySerializer(Serializer.INTEGER)
                 .valueSerializer(Serializer.LONG)
                 .make();
+        ghIdToOsmId.putAll(osmInfo.getGhIdToOsmId());
 
-        HTreeMap<Long, List<String>> osmIdToAccessFlags = db
-                .createHashMap("osmIdToAccessFlags")
-                .keySerializer(Serializer.LONG)
-                .valueSerializer(Serializer.JAVA)
-                .make();
-
-        HTreeMap<Long, String> osmIdToStreetName = db
-                .createHashMap("osmIdToStreetName")
-                .keySerializer(Serializer.LONG)
-                .valueSerializer(Serializer.STRING)
-                .make();
-
-        HTreeMap<Long, String> osmIdToHighway = db
-                .createHashMap("osmIdToHighway")
-                .keySerializer(Serializer.LONG)
-                .valueSerializer(Serializer.STRING)
-                .make();
+        for (Map.Entry<String, Map<Long, ?>> wayValues : osmInfo.getAllWayValues().entrySet()) {
+            String name = wayValues.getKey();
+            Class<?> valueType = osmInfo.getValueType(name);
+            Serializer<?> valueSerializer = valueType == String.class ? Serializer.STRING : Serializer.JAVA;
+            HTreeMap<Long, Object> table = db
+                    .createHashMap(name)
+                    .keySerializer(Serializer.LONG)
+                    .valueSerializer(valueSerializer)
+                    .make();
+            table.putAll(wayValues.getValue());
+        }
 
-        // todo: refactor to make this less awful
-        if (graphHopper instanceof CustomGraphHopperOSM) {
-            CustomGraphHopperOSM ghOsm = (CustomGraphHopperOSM) graphHopper;
-            osmIdToLaneTags.putAll(ghOsm.getOsmIdToLaneTags());
-            ghIdToOsmId.putAll(ghOsm.getGhIdToOsmId());
-            osmIdToAccessFlags.putAll(ghOsm.getOsmIdToAccessFlags());
-            osmIdToStreetName.putAll(ghOsm.getOsmIdToStreetName());
-            osmIdToHighway.putAll(ghOsm.getOsmIdToHighwayTag());
-        } else {
-            CustomGraphHopperGtfs ghGtfs = (CustomGraphHopperGtfs) graphHopper;
-            osmIdToLaneTags.putAll(ghGtfs.getOsmIdToLaneTags());
-            ghIdToOsmId.putAll(ghGtfs.getGhIdToOsmId());
-            osmIdToAccessFlags.putAll(ghGtfs.getOsmIdToAccessFlags());
-            osmIdToStreetName.putAll(ghGtfs.getOsmIdToStreetName());
-            osmIdToHighway.putAll(ghGtfs.getOsmIdToHighwayTag());
+        for (Map.Entry<String, OsmTagColumns> entry : osmInfo.getAllColumns().entrySet()) {
+            String name = entry.getKey();
+            OsmTagColumns columns = entry.getValue();
+            db.createAtomicVar(name + WAY_IDS_TABLE_SUFFIX, columns.getWayIds(), Serializer.LONG_ARRAY);
+            HTreeMap<String, int[]> valueIds = db
+                    .createHashMap(name)
+                    .keySerializer(Serializer.STRING)
+                    .valueSerializer(Serializer.INT_ARRAY)
+                    .make();
+            HTreeMap<String, List<String>> dictionary = db
+                    .createHashMap(name + DICTIONARY_TABLE_SUFFIX)
+                    .keySerializer(Serializer.STRING)
+                    .valueSerializer(Serializer.JAVA)
+                    .make();
+            List<String> tags = columns.getTags();
+            for (int i = 0; i < tags.size(); i++) {
+                valueIds.put(tags.get(i), columns.getValueIds(i));
+                dictionary.put(tags.get(i), columns.getTagValues(i));
+            }
         }
 
         db.commit();
@@ -73,6 +76,21 @@ public class OsmHelper {
         logger.info("Done writing OSM info to MapDB database files.");
     }
 
+    /**
+     * Returns the extra OSM tag values stored in osm_info.db, or no values if the graph was built without
+     * osm_info.extra_tags set
+     */
+    public static OsmTagColumns readExtraTags(DB db) {
+        String wayIdsTable = ExtraTagsExtractor.NAME + WAY_IDS_TABLE_SUFFIX;
+        if (!db.exists(wayIdsTable)) {
+            return OsmTagColumns.empty();
+        }
+        // Read the columns into memory once, rather than deserializing them per lookup
+        long[] wayIds = db.<long[]>getAtomicVar(wayIdsTable).get();
+        return OsmTagColumns.fromTables(wayIds, Maps.newHashMap(db.<String, int[]>getHashMap(ExtraTagsExtractor.NAME)),
+                Maps.newHashMap(db.<String, List<String>>getHashMap(ExtraTagsExtractor.NAME + DICTIONARY_TABLE_SUFFIX)));
+    }
+
     public static Map<String, String> getLanesTag(long osmId, Map<Long, Map<String, String>> osmIdToLaneTags) {
         return osmIdToLaneTags.getOrDefault(osmId, null);
     }
@@ -0,0 +1,131 @@
+package com.graphhopper.replica;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip output stream that compresses fixed-size blocks on a pool of worker threads. Each block is written as its own
+ * gzip member; per RFC 1952, a concatenation of members is itself a valid gzip file, and decompresses to the
+ * concatenation of the blocks.
+ *
+ * Compressed blocks are written to the underlying stream in the order they were submitted. At most two blocks per
+ * thread are in flight at any time, which bounds memory use to a small multiple of threads * blockSize bytes.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int maxPendingBlocks;
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private byte[] block;
+    private int blockLength = 0;
+    private boolean anyBlockWritten = false;
+    private boolean closed = false;
+
+    public ParallelGzipOutputStream(OutputStream out, int threads, int blockSize) {
+        this.out = out;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "export-gzip");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxPendingBlocks = threads * 2;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (blockLength == block.length) {
+            submitBlock();
+        }
+        block[blockLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (blockLength == block.length) {
+                submitBlock();
+            }
+            int toCopy = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, toCopy);
+            blockLength += toCopy;
+            off += toCopy;
+            len -= toCopy;
+        }
+    }
+
+    /**
+     * Compresses any buffered bytes and waits for all in-flight blocks to be written out
+     */
+    @Override
+    public void flush() throws IOException {
+        if (blockLength > 0) {
+            submitBlock();
+        }
+        while (!pendingBlocks.isEmpty()) {
+            writeOldestBlock();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // An empty file isn't valid gzip; always write at least one (possibly empty) member
+            if (blockLength > 0 || (!anyBlockWritten && pendingBlocks.isEmpty())) {
+                submitBlock();
+            }
+            while (!pendingBlocks.isEmpty()) {
+                writeOldestBlock();
+            }
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        final byte[] toCompress = block;
+        final int length = blockLength;
+        pendingBlocks.addLast(executor.submit(() -> compress(toCompress, length)));
+        block = new byte[toCompress.length];
+        blockLength = 0;
+        while (pendingBlocks.size() >= maxPendingBlocks) {
+            writeOldestBlock();
+        }
+    }
+
+    private void writeOldestBlock() throws IOException {
+        try {
+            out.write(pendingBlocks.removeFirst().get());
+            anyBlockWritten = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing export output");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress export output", e.getCause());
+        }
+    }
+
+    private static byte[] compress(byte[] data, int length) throws IOException {
+        // Compressed CSV is typically well under half the input size
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(length / 4, 64));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 64 * 1024)) {
+            gzip.write(data, 0, length);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,225 @@
+package com.graphhopper.replica;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * External merge sort of export rows by stable edge ID (the first column, an unsigned 64-bit integer), used to diff
+ * two exports with a sorted merge. Rows are buffered in memory up to a fixed count, after which each sorted chunk is
+ * spilled to a temporary gzip-compressed CSV file; sorted() then merges the chunks, so memory use is bounded by the
+ * chunk size regardless of the size of the street network.
+ *
+ * Stable IDs aren't unique: parallel edges between the same two tower nodes with the same highway class hash to the
+ * same ID. Rows with equal stable IDs are ordered by OSM way ID, then geometry, then their other values, and only
+ * then by the GH vertex IDs (which aren't stable between graph builds), so the sort order is deterministic and the
+ * same for two exports of the same edges.
+ */
+public class StableIdRowSorter implements Closeable {
+    private static final CSVFormat CHUNK_FORMAT = CSVFormat.DEFAULT;
+    // Indices of street_edges.csv columns (see StreetEdgeExporter.COLUMN_HEADERS)
+    static final int START_VERTEX_COLUMN = 1;
+    static final int END_VERTEX_COLUMN = 2;
+    private static final int GEOMETRY_COLUMN = 7;
+    private static final int OSM_ID_COLUMN = 10;
+
+    static final Comparator<Row> ROW_ORDER = (a, b) -> {
+        int comparison = Long.compareUnsigned(a.stableId, b.stableId);
+        if (comparison != 0) {
+            return comparison;
+        }
+        comparison = a.values[OSM_ID_COLUMN].compareTo(b.values[OSM_ID_COLUMN]);
+        if (comparison != 0) {
+            return comparison;
+        }
+        comparison = a.values[GEOMETRY_COLUMN].compareTo(b.values[GEOMETRY_COLUMN]);
+        if (comparison != 0) {
+            return comparison;
+        }
+        for (int i = 1; i < Math.min(a.values.length, b.values.length); i++) {
+            if (i != START_VERTEX_COLUMN && i != END_VERTEX_COLUMN) {
+                comparison = a.values[i].compareTo(b.values[i]);
+                if (comparison != 0) {
+                    return comparison;
+                }
+            }
+        }
+        return Arrays.compare(a.values, b.values);
+    };
+
+    /**
+     * An export row along with its parsed stable edge ID
+     */
+    static class Row {
+        final long stableId;
+        final String[] values;
+
+        Row(String[] values) {
+            this.stableId = Long.parseUnsignedLong(values[0]);
+            this.values = values;
+        }
+    }
+
+    private final int chunkRows;
+    private final File tempDirectory;
+    private final List<Row> buffer = new ArrayList<>();
+    private final List<File> chunkFiles = new ArrayList<>();
+    private final List<CSVParser> openParsers = new ArrayList<>();
+
+    public StableIdRowSorter(int chunkRows, File tempDirectory) {
+        if (chunkRows < 1) {
+            throw new IllegalArgumentException("Sort chunk size must be positive, got " + chunkRows);
+        }
+        this.chunkRows = chunkRows;
+        this.tempDirectory = tempDirectory;
+    }
+
+    public void add(String[] values) throws IOException {
+        buffer.add(new Row(values));
+        if (buffer.size() >= chunkRows) {
+            spillChunk();
+        }
+    }
+
+    /**
+     * Returns all added rows in stable ID order. Should only be called once, after all rows have been added.
+     */
+    Iterator<Row> sorted() throws IOException {
+        if (chunkFiles.isEmpty()) {
+            buffer.sort(ROW_ORDER);
+            return buffer.iterator();
+        }
+        if (!buffer.isEmpty()) {
+            spillChunk();
+        }
+        List<Iterator<Row>> chunkIterators = new ArrayList<>(chunkFiles.size());
+        for (File chunkFile : chunkFiles) {
+            CSVParser parser = CSVParser.parse(new InputStreamReader(new GZIPInputStream(
+                    new BufferedInputStream(new FileInputStream(chunkFile))), StandardCharsets.UTF_8), CHUNK_FORMAT);
+            openParsers.add(parser);
+            chunkIterators.add(rows(parser.iterator()));
+        }
+        return new MergingIterator(chunkIterators);
+    }
+
+    private void spillChunk() throws IOException {
+        buffer.sort(ROW_ORDER);
+        File chunkFile = File.createTempFile("street_edges_sort_", ".csv.gz", tempDirectory);
+        chunkFile.deleteOnExit();
+        chunkFiles.add(chunkFile);
+        try (CSVPrinter printer = new CSVPrinter(new OutputStreamWriter(new GZIPOutputStream(
+                new BufferedOutputStream(new FileOutputStream(chunkFile))), StandardCharsets.UTF_8), CHUNK_FORMAT)) {
+            for (Row row : buffer) {
+                printer.printRecord((Object[]) row.values);
+            }
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (CSVParser parser : openParsers) {
+            parser.close();
+        }
+        openParsers.clear();
+        for (File chunkFile : chunkFiles) {
+            chunkFile.delete();
+        }
+        chunkFiles.clear();
+        buffer.clear();
+    }
+
+    static String[] toValues(CSVRecord record) {
+        String[] values = new String[record.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = record.get(i);
+        }
+        return values;
+    }
+
+    private static Iterator<Row> rows(Iterator<CSVRecord> records) {
+        return new Iterator<Row>() {
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public Row next() {
+                return new Row(toValues(records.next()));
+            }
+        };
+    }
+
+    /**
+     * k-way merge of sorted iterators
+     */
+    private static class MergingIterator implements Iterator<Row> {
+        private final PriorityQueue<Head> heads;
+
+        private static class Head {
+            Row row;
+            final Iterator<Row> rest;
+
+            Head(Row row, Iterator<Row> rest) {
+                this.row = row;
+                this.rest = rest;
+            }
+        }
+
+        MergingIterator(List<Iterator<Row>> iterators) {
+            heads = new PriorityQueue<>(Math.max(iterators.size(), 1), (a, b) -> ROW_ORDER.compare(a.row, b.row));
+            for (Iterator<Row> iterator : iterators) {
+                if (iterator.hasNext()) {
+                    heads.add(new Head(iterator.next(), iterator));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Row next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            Row row = head.row;
+            try {
+                if (head.rest.hasNext()) {
+                    head.row = head.rest.next();
+                    heads.add(head);
+                }
+            } catch (IllegalStateException e) {
+                // CSVParser's iterator wraps IOExceptions in IllegalStateException
+                throw new UncheckedIOException(new IOException("Failed to read sorted export chunk", e));
+            }
+            return row;
+        }
+    }
+}
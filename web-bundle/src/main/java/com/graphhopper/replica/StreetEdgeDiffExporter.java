@@ -0,0 +1,239 @@
+package com.graphhopper.replica;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.osminfo.OsmTagColumns;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Writes the difference between a previous street network export and the currently-loaded graph, keyed by stable
+ * edge ID, to street_edges_diff.csv. Each row holds a `change` column (ADDED, REMOVED or CHANGED) followed by the
+ * usual street_edges.csv columns (including any extra OSM tag columns); REMOVED rows carry the values from the
+ * previous export, all others carry the current values. Extra tag columns missing from the previous export are read
+ * as empty, so adding a tag to osm_info.extra_tags shows up as CHANGED rows for the ways that have it.
+ *
+ * Both the previous export and the current records are externally sorted by stable edge ID (see StableIdRowSorter)
+ * and then compared with a single sorted merge, so memory use doesn't grow with the size of the network. GH vertex
+ * IDs aren't stable between graph builds, so the startVertex/endVertex columns are ignored when comparing rows.
+ *
+ * Stable edge IDs aren't unique (parallel edges between the same tower nodes with the same highway class share one),
+ * so rows are compared a group of equal IDs at a time: rows that are the same in both exports are matched up first,
+ * then the rest are paired in sort order (by OSM way ID, then geometry) as CHANGED, with any left over ADDED or
+ * REMOVED.
+ */
+public class StreetEdgeDiffExporter {
+    private static final Logger logger = LoggerFactory.getLogger(StreetEdgeDiffExporter.class);
+
+    public static final int DEFAULT_SORT_CHUNK_ROWS = 1_000_000;
+
+    public enum Change {
+        ADDED, REMOVED, CHANGED
+    }
+
+    public static void writeStreetEdgesDiffCsv(GraphHopper configuredGraphHopper,
+                                                Map<Long, Map<String, String>> osmIdToLaneTags,
+                                                Map<Integer, Long> ghIdToOsmId,
+                                                Map<Long, List<String>> osmIdToAccessFlags,
+                                                Map<Long, String> osmIdToStreetName,
+                                                Map<Long, String> osmIdToHighway,
+                                                OsmTagColumns extraTags,
+                                                ExportOutputOptions outputOptions,
+                                                File previousExport,
+                                                int sortChunkRows) {
+        StreetEdgeExporter exporter = new StreetEdgeExporter(configuredGraphHopper, osmIdToLaneTags, ghIdToOsmId, osmIdToAccessFlags, osmIdToStreetName, osmIdToHighway, extraTags);
+        File graphDirectory = new File(configuredGraphHopper.getGraphHopperLocation());
+        File outputFile = outputOptions.resolveFile(new File(graphDirectory, "street_edges_diff.csv"));
+
+        String[] columnHeaders = exporter.getColumnHeaders();
+        String[] diffHeaders = new String[columnHeaders.length + 1];
+        diffHeaders[0] = "change";
+        System.arraycopy(columnHeaders, 0, diffHeaders, 1, columnHeaders.length);
+
+        DiffPrinter diff;
+        ExportOutputStream outputStream;
+        try (StableIdRowSorter previousRows = new StableIdRowSorter(sortChunkRows, graphDirectory);
+             StableIdRowSorter currentRows = new StableIdRowSorter(sortChunkRows, graphDirectory)) {
+            logger.info("Reading and sorting previous street network export " + previousExport.getPath() + "...");
+            long previousCount = readPreviousExport(previousExport, previousRows, columnHeaders);
+            logger.info("Read " + previousCount + " rows from previous export");
+
+            logger.info("Generating and sorting current street network records...");
+            long currentCount = exporter.exportRecords(null, record -> currentRows.add(StreetEdgeExporter.toCsvRow(record)));
+            logger.info("Generated " + currentCount + " current rows");
+
+            logger.info("Writing street network diff to " + outputFile.getPath() + "...");
+            outputStream = outputOptions.open(outputFile);
+            Writer out = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+            try (CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.withHeader(diffHeaders))) {
+                diff = new DiffPrinter(printer);
+                Iterator<StableIdRowSorter.Row> previous = previousRows.sorted();
+                Iterator<StableIdRowSorter.Row> current = currentRows.sorted();
+                List<StableIdRowSorter.Row> previousGroup = new ArrayList<>();
+                List<StableIdRowSorter.Row> currentGroup = new ArrayList<>();
+                StableIdRowSorter.Row previousRow = previous.hasNext() ? previous.next() : null;
+                StableIdRowSorter.Row currentRow = current.hasNext() ? current.next() : null;
+                while (previousRow != null || currentRow != null) {
+                    long stableId;
+                    if (previousRow == null) {
+                        stableId = currentRow.stableId;
+                    } else if (currentRow == null || Long.compareUnsigned(previousRow.stableId, currentRow.stableId) < 0) {
+                        stableId = previousRow.stableId;
+                    } else {
+                        stableId = currentRow.stableId;
+                    }
+
+                    previousGroup.clear();
+                    while (previousRow != null && previousRow.stableId == stableId) {
+                        previousGroup.add(previousRow);
+                        previousRow = previous.hasNext() ? previous.next() : null;
+                    }
+                    currentGroup.clear();
+                    while (currentRow != null && currentRow.stableId == stableId) {
+                        currentGroup.add(currentRow);
+                        currentRow = current.hasNext() ? current.next() : null;
+                    }
+                    diff.printGroup(previousGroup, currentGroup);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("IOException raised while writing street network diff to csv!");
+            throw new RuntimeException(e);
+        }
+
+        long diffRowCount = Arrays.stream(diff.changeCounts).sum();
+        logger.info("Done writing street network diff to CSV: " + diff.changeCounts[Change.ADDED.ordinal()] + " added, "
+                + diff.changeCounts[Change.REMOVED.ordinal()] + " removed, " + diff.changeCounts[Change.CHANGED.ordinal()]
+                + " changed, " + diff.unchangedCount + " unchanged edges; " + diff.sharedIdRowCount
+                + " rows shared their stable edge ID with another row");
+        outputStream.logThroughput(logger, diffRowCount);
+    }
+
+    // Reads the previous export's rows, reordering its columns by name to match the current export's column order
+    private static long readPreviousExport(File previousExport, StableIdRowSorter sorter, String[] columnHeaders) throws IOException {
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(previousExport), 1 << 16);
+        if (previousExport.getName().endsWith(".gz")) {
+            inputStream = new GZIPInputStream(inputStream, 1 << 16);
+        }
+        long rowCount = 0;
+        try (CSVParser parser = CSVParser.parse(new InputStreamReader(inputStream, StandardCharsets.UTF_8),
+                CSVFormat.DEFAULT.withFirstRecordAsHeader())) {
+            Map<String, Integer> headerMap = parser.getHeaderMap();
+            int[] columnIndices = new int[columnHeaders.length];
+            for (int i = 0; i < columnIndices.length; i++) {
+                Integer index = headerMap.get(columnHeaders[i]);
+                if (index == null && i < StreetEdgeExporter.COLUMN_HEADERS.length) {
+                    throw new IllegalArgumentException("Previous export " + previousExport.getPath()
+                            + " is missing column " + columnHeaders[i]);
+                }
+                // Extra OSM tag columns may not have been configured for the previous export
+                columnIndices[i] = index == null ? -1 : index;
+            }
+            for (CSVRecord record : parser) {
+                String[] values = new String[columnIndices.length];
+                for (int i = 0; i < columnIndices.length; i++) {
+                    values[i] = columnIndices[i] < 0 ? "" : record.get(columnIndices[i]);
+                }
+                sorter.add(values);
+                rowCount++;
+            }
+        }
+        return rowCount;
+    }
+
+    /**
+     * Prints the changes between the previous and current rows with one stable edge ID, and counts them
+     */
+    private static class DiffPrinter {
+        final CSVPrinter printer;
+        final long[] changeCounts = new long[Change.values().length];
+        long unchangedCount = 0;
+        long sharedIdRowCount = 0;
+
+        DiffPrinter(CSVPrinter printer) {
+            this.printer = printer;
+        }
+
+        // Both groups are in StableIdRowSorter.ROW_ORDER
+        void printGroup(List<StableIdRowSorter.Row> previousGroup, List<StableIdRowSorter.Row> currentGroup) throws IOException {
+            if (previousGroup.size() > 1 || currentGroup.size() > 1) {
+                sharedIdRowCount += Math.max(previousGroup.size(), currentGroup.size());
+                // Match up rows that haven't changed first, so one changed edge doesn't shift the pairing of the rest
+                List<StableIdRowSorter.Row> unmatchedCurrent = new ArrayList<>(currentGroup);
+                List<StableIdRowSorter.Row> unmatchedPrevious = new ArrayList<>();
+                for (StableIdRowSorter.Row previousRow : previousGroup) {
+                    int match = indexOfSameEdge(unmatchedCurrent, previousRow);
+                    if (match >= 0) {
+                        unmatchedCurrent.remove(match);
+                        unchangedCount++;
+                    } else {
+                        unmatchedPrevious.add(previousRow);
+                    }
+                }
+                previousGroup = unmatchedPrevious;
+                currentGroup = unmatchedCurrent;
+            }
+            int pairs = Math.min(previousGroup.size(), currentGroup.size());
+            for (int i = 0; i < pairs; i++) {
+                if (sameEdgeAttributes(previousGroup.get(i).values, currentGroup.get(i).values)) {
+                    unchangedCount++;
+                } else {
+                    print(Change.CHANGED, currentGroup.get(i).values);
+                }
+            }
+            for (int i = pairs; i < previousGroup.size(); i++) {
+                print(Change.REMOVED, previousGroup.get(i).values);
+            }
+            for (int i = pairs; i < currentGroup.size(); i++) {
+                print(Change.ADDED, currentGroup.get(i).values);
+            }
+        }
+
+        private void print(Change change, String[] values) throws IOException {
+            printer.print(change.name());
+            for (String value : values) {
+                printer.print(value);
+            }
+            printer.println();
+            changeCounts[change.ordinal()]++;
+        }
+
+        private static int indexOfSameEdge(List<StableIdRowSorter.Row> rows, StableIdRowSorter.Row row) {
+            for (int i = 0; i < rows.size(); i++) {
+                if (sameEdgeAttributes(rows.get(i).values, row.values)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static boolean sameEdgeAttributes(String[] previous, String[] current) {
+        for (int i = 0; i < current.length; i++) {
+            if (i != StableIdRowSorter.START_VERTEX_COLUMN && i != StableIdRowSorter.END_VERTEX_COLUMN
+                    && !previous[i].equals(current[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -16,8 +16,18 @@ public class StreetEdgeExportRecord {
     public String flags;
     public int lanes;
     public String highwayTag;
+    // Values of the extra OSM tag columns (see ExtraTagsExtractor), null where the way doesn't have the tag
+    public String[] extraTagValues;
+
+    public StreetEdgeExportRecord() {
+    }
 
     public StreetEdgeExportRecord(String edgeId, int startVertexId, int endVertexId, double startLat, double startLon, double endLat, double endLon, String geometryString, String streetName, long distanceMillimeters, long osmId, int speedCms, String flags, int lanes, String highwayTag) {
+        set(edgeId, startVertexId, endVertexId, startLat, startLon, endLat, endLon, geometryString, streetName, distanceMillimeters, osmId, speedCms, flags, lanes, highwayTag);
+    }
+
+    // Overwrites all fields except extraTagValues, allowing a record to be reused
+    public StreetEdgeExportRecord set(String edgeId, int startVertexId, int endVertexId, double startLat, double startLon, double endLat, double endLon, String geometryString, String streetName, long distanceMillimeters, long osmId, int speedCms, String flags, int lanes, String highwayTag) {
         this.edgeId = edgeId;
         this.startVertexId = startVertexId;
         this.endVertexId = endVertexId;
@@ -33,6 +43,7 @@ public class StreetEdgeExportRecord {
         this.flags = flags;
         this.lanes = lanes;
         this.highwayTag = highwayTag;
+        return this;
     }
 }
 
@@ -2,6 +2,7 @@ package com.graphhopper.replica;
 
 import com.google.common.collect.Lists;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.osminfo.OsmTagColumns;
 import com.graphhopper.routing.ev.DecimalEncodedValue;
 import com.graphhopper.routing.ev.EnumEncodedValue;
 import com.graphhopper.routing.ev.RoadClass;
@@ -14,28 +15,33 @@ import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.DistanceCalcEarth;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.FetchMode;
-import com.graphhopper.util.PointList;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 
+import static com.google.common.base.Strings.nullToEmpty;
+
 public class StreetEdgeExporter {
     private static final Logger logger = LoggerFactory.getLogger(StreetEdgeExporter.class);
 
     private static final List<String> HIGHWAY_FILTER_TAGS = Lists.newArrayList("bridleway", "steps");
     private static final List<String> INACCESSIBLE_MOTORWAY_TAGS = Lists.newArrayList("motorway", "motorway_link");
-    private static final String[] COLUMN_HEADERS = {"stableEdgeId", "startVertex", "endVertex", "startLat", "startLon",
+    static final String[] COLUMN_HEADERS = {"stableEdgeId", "startVertex", "endVertex", "startLat", "startLon",
             "endLat", "endLon", "geometry", "streetName", "distance", "osmid", "speed", "flags", "lanes", "highway"};
     public static final CSVFormat CSV_FORMAT = CSVFormat.DEFAULT.withHeader(COLUMN_HEADERS);
+    private static final String[] NO_EXTRA_TAG_VALUES = new String[0];
 
     // Some sticky members
     private Map<Long, Map<String, String>> osmIdToLaneTags;
@@ -43,21 +49,69 @@ public class StreetEdgeExporter {
     private Map<Long, List<String>> osmIdToAccessFlags;
     private Map<Long, String> osmIdToStreetName;
     private Map<Long, String> osmIdToHighway;
+    private OsmTagColumns extraTags;
+    private String[] columnHeaders;
     //
+    private GraphHopperStorage graphHopperStorage;
     private NodeAccess nodes;
     private DecimalEncodedValue avgSpeedEnc;
     private StableIdEncodedValues stableIdEncodedValues;
     private EnumEncodedValue<RoadClass> roadClassEnc;
+    private final LineStringWktWriter wktWriter = new LineStringWktWriter();
+    // Reused by exportRecords() so that its allocations don't grow with the number of edges
+    private final StreetEdgeExportRecord forwardRecord = new StreetEdgeExportRecord();
+    private final StreetEdgeExportRecord backwardRecord = new StreetEdgeExportRecord();
+    private final List<StreetEdgeExportRecord> reusableOutput = new ArrayList<>(2);
+    private final WayInfo wayInfo = new WayInfo();
+
+    /**
+     * OSM-derived values for a single way. Edges from the same way are usually consecutive, so the values for the
+     * most recently seen way are kept instead of re-reading (and for MapDB-backed maps, deserializing) them per edge.
+     */
+    private static class WayInfo {
+        long osmId = -1;
+        // Null if no highway tag / street name was recorded for the way
+        String highwayTag;
+        String streetName;
+        boolean flagsLoaded;
+        String forwardFlags;
+        String backwardFlags;
+        int forwardLanes;
+        int backwardLanes;
+        String[] extraTagValues;
+    }
 
     public StreetEdgeExporter(GraphHopper configuredGraphHopper, Map<Long, Map<String, String>> osmIdToLaneTags, Map<Integer, Long> ghIdToOsmId, Map<Long, List<String>> osmIdToAccessFlags, Map<Long, String> osmIdToStreetName, Map<Long, String> osmIdToHighway) {
+        this(configuredGraphHopper, osmIdToLaneTags, ghIdToOsmId, osmIdToAccessFlags, osmIdToStreetName, osmIdToHighway, OsmTagColumns.empty());
+    }
+
+    /**
+     * @param extraTags values of extra OSM tags captured during import, each exported as an additional column named
+     *                  after the tag
+     */
+    public StreetEdgeExporter(GraphHopper configuredGraphHopper, Map<Long, Map<String, String>> osmIdToLaneTags, Map<Integer, Long> ghIdToOsmId, Map<Long, List<String>> osmIdToAccessFlags, Map<Long, String> osmIdToStreetName, Map<Long, String> osmIdToHighway, OsmTagColumns extraTags) {
         this.osmIdToLaneTags = osmIdToLaneTags;
         this.ghIdToOsmId = ghIdToOsmId;
         this.osmIdToAccessFlags = osmIdToAccessFlags;
         this.osmIdToStreetName = osmIdToStreetName;
         this.osmIdToHighway = osmIdToHighway;
 
+        List<String> extraColumns = extraTags.getTags();
+        for (String extraColumn : extraColumns) {
+            if (Arrays.asList(COLUMN_HEADERS).contains(extraColumn)) {
+                throw new IllegalArgumentException("Extra OSM tag " + extraColumn + " has the same name as a standard export column");
+            }
+        }
+        this.extraTags = extraTags;
+        this.columnHeaders = new String[COLUMN_HEADERS.length + extraColumns.size()];
+        System.arraycopy(COLUMN_HEADERS, 0, columnHeaders, 0, COLUMN_HEADERS.length);
+        for (int i = 0; i < extraColumns.size(); i++) {
+            columnHeaders[COLUMN_HEADERS.length + i] = extraColumns.get(i);
+        }
+        wayInfo.extraTagValues = extraColumns.isEmpty() ? NO_EXTRA_TAG_VALUES : new String[extraColumns.size()];
+
         // Grab edge/node iterators for graph loaded from pre-built GH files
-        GraphHopperStorage graphHopperStorage = configuredGraphHopper.getGraphHopperStorage();
+        graphHopperStorage = configuredGraphHopper.getGraphHopperStorage();
         nodes = graphHopperStorage.getNodeAccess();
 
         // Setup encoders for determining speed and road type info for each edge
@@ -70,8 +124,50 @@ public class StreetEdgeExporter {
 
     public List<StreetEdgeExportRecord> generateRecords(EdgeIteratorState iteratorState) {
         List<StreetEdgeExportRecord> output = new ArrayList<>();
+        generateRecords(iteratorState, false, output);
+        return output;
+    }
 
+    /**
+     * Adds a record for each exported direction of the edge to output. If reuseRecords is set, the records added are
+     * this exporter's reusable forward/backward records, which are only valid until the next call.
+     */
+    private void generateRecords(EdgeIteratorState iteratorState, boolean reuseRecords, List<StreetEdgeExportRecord> output) {
         int ghEdgeId = iteratorState.getEdge();
+
+        // Fetch OSM ID, skipping edges from PT meta-graph that have no IDs set (getOsmIdForGhEdge returns -1)
+        long osmId = OsmHelper.getOsmIdForGhEdge(ghEdgeId, ghIdToOsmId);
+        if (osmId == -1L) {
+            return;
+        }
+        WayInfo way = getWayInfo(osmId);
+
+        // Grab OSM highway type, used to filter out unwanted edges before any geometry work is done
+        String highwayTag = way.highwayTag != null ? way.highwayTag : iteratorState.get(roadClassEnc).toString();
+
+        // Copy R5's logic; filter out edges with unwanted highway tags and negative OSM IDs
+        // todo: do negative OSM ids happen in GH? This might have been R5-specific
+        if (HIGHWAY_FILTER_TAGS.contains(highwayTag) || osmId < 0) {
+            return;
+        }
+
+        // Set accessibility flags for each edge direction
+        // Returned flags are from the set {ALLOWS_CAR, ALLOWS_BIKE, ALLOWS_PEDESTRIAN}
+        loadExportedValues(way);
+        String forwardFlags = way.forwardFlags;
+        String backwardFlags = way.backwardFlags;
+
+        // Print line for each edge direction, if edge is accessible.
+        // Inaccessible edges have no flags set; flags are stored as stringified lists,
+        // so innaccessible edges will have a flag equal to "[]", the empty list's toString().
+        // Only remove inaccessible edges with highway tags of motorway or motorway_link
+        boolean isMotorway = INACCESSIBLE_MOTORWAY_TAGS.contains(highwayTag);
+        boolean exportForward = !(forwardFlags.equals("[]") && isMotorway);
+        boolean exportBackward = !(backwardFlags.equals("[]") && isMotorway);
+        if (!exportForward && !exportBackward) {
+            return;
+        }
+
         int startVertex = iteratorState.getBaseNode();
         int endVertex = iteratorState.getAdjNode();
 
@@ -80,11 +176,8 @@ public class StreetEdgeExporter {
         double endLat = nodes.getLat(endVertex);
         double endLon = nodes.getLon(endVertex);
 
-        // Get edge geometry for both edge directions, and distance
-        PointList wayGeometry = iteratorState.fetchWayGeometry(FetchMode.ALL);
-        String geometryString = wayGeometry.toLineString(false).toString();
-        wayGeometry.reverse();
-        String reverseGeometryString = wayGeometry.toLineString(false).toString();
+        // Get edge geometry for both edge directions, formatting each coordinate only once
+        wktWriter.setGeometry(iteratorState.fetchWayGeometry(FetchMode.ALL));
 
         long distanceMeters = Math.round(DistanceCalcEarth.DIST_EARTH.calcDist(startLat, startLon, endLat, endLon));
         // Convert GH's km/h speed to cm/s to match R5's implementation
@@ -93,29 +186,51 @@ public class StreetEdgeExporter {
         // Convert GH's distance in meters to millimeters to match R5's implementation
         long distanceMillimeters = distanceMeters * 1000;
 
-        // Fetch OSM ID, skipping edges from PT meta-graph that have no IDs set (getOsmIdForGhEdge returns -1)
-        long osmId = OsmHelper.getOsmIdForGhEdge(ghEdgeId, ghIdToOsmId);
-        if (osmId == -1L) {
-            return output;
-        }
-
         // Use street name parsed from Ways/Relations, if it exists; otherwise, use default GH edge name
-        String streetName = osmIdToStreetName.getOrDefault(osmId, iteratorState.getName());
+        String streetName = way.streetName != null ? way.streetName : iteratorState.getName();
 
-        // Grab OSM highway type and encoded stable IDs for both edge directions
-        String highwayTag = osmIdToHighway.getOrDefault(osmId, iteratorState.get(roadClassEnc).toString());
-        String forwardStableEdgeId = stableIdEncodedValues.getStableId(false, iteratorState);
-        String backwardStableEdgeId = stableIdEncodedValues.getStableId(true, iteratorState);
+        if (exportForward) {
+            String forwardStableEdgeId = stableIdEncodedValues.getStableId(false, iteratorState);
+            StreetEdgeExportRecord record = reuseRecords ? forwardRecord : new StreetEdgeExportRecord();
+            output.add(record.set(forwardStableEdgeId, startVertex, endVertex,
+                    startLat, startLon, endLat, endLon, wktWriter.write(false), streetName,
+                    distanceMillimeters, osmId, speedcms, forwardFlags, way.forwardLanes, highwayTag));
+            record.extraTagValues = reuseRecords || way.extraTagValues.length == 0 ? way.extraTagValues : way.extraTagValues.clone();
+        }
+        if (exportBackward) {
+            String backwardStableEdgeId = stableIdEncodedValues.getStableId(true, iteratorState);
+            StreetEdgeExportRecord record = reuseRecords ? backwardRecord : new StreetEdgeExportRecord();
+            output.add(record.set(backwardStableEdgeId, endVertex, startVertex,
+                    endLat, endLon, startLat, startLon, wktWriter.write(true), streetName,
+                    distanceMillimeters, osmId, speedcms, backwardFlags, way.backwardLanes, highwayTag));
+            record.extraTagValues = reuseRecords || way.extraTagValues.length == 0 ? way.extraTagValues : way.extraTagValues.clone();
+        }
+    }
 
-        // Set accessibility flags for each edge direction
-        // Returned flags are from the set {ALLOWS_CAR, ALLOWS_BIKE, ALLOWS_PEDESTRIAN}
-        String forwardFlags = OsmHelper.getFlagsForGhEdge(ghEdgeId, false, osmIdToAccessFlags, ghIdToOsmId);
-        String backwardFlags = OsmHelper.getFlagsForGhEdge(ghEdgeId, true, osmIdToAccessFlags, ghIdToOsmId);
+    private WayInfo getWayInfo(long osmId) {
+        if (wayInfo.osmId != osmId) {
+            wayInfo.osmId = osmId;
+            wayInfo.highwayTag = osmIdToHighway.get(osmId);
+            wayInfo.streetName = osmIdToStreetName.get(osmId);
+            wayInfo.flagsLoaded = false;
+        }
+        return wayInfo;
+    }
+
+    // Flags, lane counts and extra tags are only needed for edges that pass the highway filter, so are loaded separately
+    private void loadExportedValues(WayInfo way) {
+        if (way.flagsLoaded) {
+            return;
+        }
+        List<String> flags = osmIdToAccessFlags.get(way.osmId);
+        String forwardFlags = flags.get(0);
+        String backwardFlags = flags.get(1);
 
         // Calculate number of lanes for edge, as done in R5, based on OSM tags + edge direction
-        int overallLanes = parseLanesTag(osmId, osmIdToLaneTags, "lanes");
-        int forwardLanes = parseLanesTag(osmId, osmIdToLaneTags, "lanes:forward");
-        int backwardLanes = parseLanesTag(osmId, osmIdToLaneTags, "lanes:backward");
+        Map<String, String> laneTags = OsmHelper.getLanesTag(way.osmId, osmIdToLaneTags);
+        int overallLanes = parseLanesTag(way.osmId, laneTags, "lanes");
+        int forwardLanes = parseLanesTag(way.osmId, laneTags, "lanes:forward");
+        int backwardLanes = parseLanesTag(way.osmId, laneTags, "lanes:backward");
 
         if (!backwardFlags.contains("ALLOWS_CAR")) {
             backwardLanes = 0;
@@ -141,26 +256,83 @@ public class StreetEdgeExporter {
             }
         }
 
-        // Copy R5's logic; filter out edges with unwanted highway tags and negative OSM IDs
-        // todo: do negative OSM ids happen in GH? This might have been R5-specific
-        if (!HIGHWAY_FILTER_TAGS.contains(highwayTag) && osmId >= 0) {
-            // Print line for each edge direction, if edge is accessible.
-            // Inaccessible edges have no flags set; flags are stored as stringified lists,
-            // so innaccessible edges will have a flag equal to "[]", the empty list's toString().
-            // Only remove inaccessible edges with highway tags of motorway or motorway_link
-            if (!(forwardFlags.equals("[]") && INACCESSIBLE_MOTORWAY_TAGS.contains(highwayTag))) {
-                output.add(new StreetEdgeExportRecord(forwardStableEdgeId, startVertex, endVertex,
-                        startLat, startLon, endLat, endLon, geometryString, streetName,
-                        distanceMillimeters, osmId, speedcms, forwardFlags, forwardLanes, highwayTag));
+        way.forwardFlags = forwardFlags;
+        way.backwardFlags = backwardFlags;
+        way.forwardLanes = forwardLanes;
+        way.backwardLanes = backwardLanes;
+        if (way.extraTagValues.length > 0) {
+            extraTags.getValues(way.osmId, way.extraTagValues);
+        }
+        way.flagsLoaded = true;
+    }
+
+    /**
+     * Returns the standard column headers, followed by a column for each extra OSM tag
+     */
+    public String[] getColumnHeaders() {
+        return columnHeaders;
+    }
+
+    /**
+     * Receives each record generated by exportRecords(). Records are reused between edges, so must not be retained.
+     */
+    interface RecordSink {
+        void accept(StreetEdgeExportRecord record) throws IOException;
+    }
+
+    /**
+     * Generates records for each edge in the graph, or only for the edges in areaEdges if it isn't null, and passes
+     * them to the sink in edge ID order. Returns the number of records generated.
+     */
+    long exportRecords(BitSet areaEdges, RecordSink sink) throws IOException {
+        // For each bidirectional edge in pre-built graph, calculate value of each CSV column
+        // and export new line for each edge direction
+        int totalEdgeCount = 0;
+        int skippedEdgeCount = 0;
+        long recordCount = 0;
+        if (areaEdges == null) {
+            AllEdgesIterator edgeIterator = graphHopperStorage.getAllEdges();
+            while (edgeIterator.next()) {
+                totalEdgeCount++;
+                List<StreetEdgeExportRecord> records = reusableOutput;
+                records.clear();
+                generateRecords(edgeIterator, true, records);
+                if (records.isEmpty()) {
+                    skippedEdgeCount++;
+                }
+                for (StreetEdgeExportRecord record : records) {
+                    sink.accept(record);
+                }
+                recordCount += records.size();
             }
-            if (!(backwardFlags.equals("[]") && INACCESSIBLE_MOTORWAY_TAGS.contains(highwayTag))) {
-                output.add(new StreetEdgeExportRecord(backwardStableEdgeId, endVertex, startVertex,
-                        endLat, endLon, startLat, startLon, reverseGeometryString, streetName,
-                        distanceMillimeters, osmId, speedcms, backwardFlags, backwardLanes, highwayTag));
+        } else {
+            for (int edgeId = areaEdges.nextSetBit(0); edgeId >= 0; edgeId = areaEdges.nextSetBit(edgeId + 1)) {
+                totalEdgeCount++;
+                List<StreetEdgeExportRecord> records = reusableOutput;
+                records.clear();
+                generateRecords(graphHopperStorage.getEdgeIteratorState(edgeId, Integer.MIN_VALUE), true, records);
+                if (records.isEmpty()) {
+                    skippedEdgeCount++;
+                }
+                for (StreetEdgeExportRecord record : records) {
+                    sink.accept(record);
+                }
+                recordCount += records.size();
             }
         }
+        logger.info("A total of " + totalEdgeCount + " edges were considered; " + skippedEdgeCount + " edges were skipped");
+        return recordCount;
+    }
 
-        return output;
+    // If an export area is given, returns the edges intersecting it; otherwise returns null, meaning all edges
+    static BitSet findAreaEdges(GraphHopper configuredGraphHopper, ExportArea exportArea) {
+        if (exportArea == null) {
+            return null;
+        }
+        logger.info("Finding edges within export area " + exportArea.getBounds() + "...");
+        BitSet areaEdges = exportArea.findEdges(configuredGraphHopper);
+        logger.info("Found " + areaEdges.cardinality() + " edges within export area");
+        return areaEdges;
     }
 
     public static void writeStreetEdgesCsv(GraphHopper configuredGraphHopper,
@@ -168,49 +340,89 @@ public class StreetEdgeExporter {
                                             Map<Integer, Long> ghIdToOsmId,
                                             Map<Long, List<String>> osmIdToAccessFlags,
                                             Map<Long, String> osmIdToStreetName,
-                                            Map<Long, String> osmIdToHighway) {
+                                            Map<Long, String> osmIdToHighway,
+                                            OsmTagColumns extraTags,
+                                            ExportOutputOptions outputOptions,
+                                            ExportArea exportArea) {
 
-        StreetEdgeExporter exporter = new StreetEdgeExporter(configuredGraphHopper, osmIdToLaneTags, ghIdToOsmId, osmIdToAccessFlags, osmIdToStreetName, osmIdToHighway);
-        GraphHopperStorage graphHopperStorage = configuredGraphHopper.getGraphHopperStorage();
-        AllEdgesIterator edgeIterator = graphHopperStorage.getAllEdges();
-        File outputFile = new File(configuredGraphHopper.getGraphHopperLocation() + "/street_edges.csv");
+        StreetEdgeExporter exporter = new StreetEdgeExporter(configuredGraphHopper, osmIdToLaneTags, ghIdToOsmId, osmIdToAccessFlags, osmIdToStreetName, osmIdToHighway, extraTags);
+        BitSet areaEdges = findAreaEdges(configuredGraphHopper, exportArea);
+        File outputFile = outputOptions.resolveFile(new File(configuredGraphHopper.getGraphHopperLocation() + "/street_edges.csv"));
 
-        logger.info("Writing street edges...");
+        logger.info("Writing street edges to " + outputFile.getPath() + "...");
 
-        // For each bidirectional edge in pre-built graph, calculate value of each CSV column
-        // and export new line for each edge direction
-        int totalEdgeCount = 0;
-        int skippedEdgeCount = 0;
+        long rowCount;
+        ExportOutputStream outputStream;
         try {
-            FileWriter out = new FileWriter(outputFile);
-            try (CSVPrinter printer = new CSVPrinter(out, CSV_FORMAT)) {
-                while (edgeIterator.next()) {
-                    totalEdgeCount++;
-                    List<StreetEdgeExportRecord> records = exporter.generateRecords(edgeIterator);
-                    if(records.isEmpty()){
-                        skippedEdgeCount++;
-                    }
-                    for(StreetEdgeExportRecord r : records) {
-                        printer.printRecord(r.edgeId, r.startVertexId, r.endVertexId, r.startLat, r.startLon, r.endLat, r.endLon,
-                                r.geometryString, r.streetName, r.distanceMillimeters, r.osmId, r.speedCms, r.flags, r.lanes, r.highwayTag);
-                    }
-                }
+            outputStream = outputOptions.open(outputFile);
+            Writer out = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+            try (CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.withHeader(exporter.getColumnHeaders()))) {
+                rowCount = exporter.exportRecords(areaEdges, r -> printRecord(printer, r));
             }
         } catch (IOException e) {
             logger.error("IOException raised while writing street network to csv!");
             throw new RuntimeException(e);
         }
         logger.info("Done writing street network to CSV");
-        logger.info("A total of " + totalEdgeCount + " edges were considered; " + skippedEdgeCount + " edges were skipped");
         if (!outputFile.exists()) {
             logger.error("Output file can't be found! Export may not have completed successfully");
+        } else {
+            outputStream.logThroughput(logger, rowCount);
+        }
+    }
+
+    private static void printRecord(CSVPrinter printer, StreetEdgeExportRecord r) throws IOException {
+        printer.print(r.edgeId);
+        printer.print(r.startVertexId);
+        printer.print(r.endVertexId);
+        printer.print(r.startLat);
+        printer.print(r.startLon);
+        printer.print(r.endLat);
+        printer.print(r.endLon);
+        printer.print(r.geometryString);
+        printer.print(r.streetName);
+        printer.print(r.distanceMillimeters);
+        printer.print(r.osmId);
+        printer.print(r.speedCms);
+        printer.print(r.flags);
+        printer.print(r.lanes);
+        printer.print(r.highwayTag);
+        if (r.extraTagValues != null) {
+            for (String extraTagValue : r.extraTagValues) {
+                printer.print(extraTagValue);
+            }
         }
+        printer.println();
+    }
+
+    // Values of each CSV column for a record, formatted as they are written (and read back) by writeStreetEdgesCsv
+    static String[] toCsvRow(StreetEdgeExportRecord r) {
+        int extraTagCount = r.extraTagValues == null ? 0 : r.extraTagValues.length;
+        String[] row = new String[COLUMN_HEADERS.length + extraTagCount];
+        row[0] = nullToEmpty(r.edgeId);
+        row[1] = String.valueOf(r.startVertexId);
+        row[2] = String.valueOf(r.endVertexId);
+        row[3] = String.valueOf(r.startLat);
+        row[4] = String.valueOf(r.startLon);
+        row[5] = String.valueOf(r.endLat);
+        row[6] = String.valueOf(r.endLon);
+        row[7] = nullToEmpty(r.geometryString);
+        row[8] = nullToEmpty(r.streetName);
+        row[9] = String.valueOf(r.distanceMillimeters);
+        row[10] = String.valueOf(r.osmId);
+        row[11] = String.valueOf(r.speedCms);
+        row[12] = nullToEmpty(r.flags);
+        row[13] = String.valueOf(r.lanes);
+        row[14] = nullToEmpty(r.highwayTag);
+        for (int i = 0; i < extraTagCount; i++) {
+            row[COLUMN_HEADERS.length + i] = nullToEmpty(r.extraTagValues[i]);
+        }
+        return row;
     }
 
     // Taken from R5's lane parsing logic. See EdgeServiceServer.java in R5 repo
-    private static int parseLanesTag(long osmId, Map<Long, Map<String, String>> osmIdToLaneTags, String laneTag) {
+    private static int parseLanesTag(long osmId, Map<String, String> laneTagsOnEdge, String laneTag) {
         int result = -1;
-        Map<String, String> laneTagsOnEdge = OsmHelper.getLanesTag(osmId, osmIdToLaneTags);
         if (laneTagsOnEdge != null) {
             if (laneTagsOnEdge.containsKey(laneTag)) {
                 try {
@@ -224,6 +436,10 @@ public class StreetEdgeExporter {
     }
 
     static int parseLanesTag(String tagValue) {
+        // Most lane tags hold a single value, which is its own median
+        if (tagValue.indexOf(';') < 0) {
+            return (int) Double.parseDouble(tagValue);
+        }
         double[] values = Arrays.stream(tagValue.split(";"))
                 .mapToDouble(Double::parseDouble)
                 .toArray();
@@ -1,12 +1,19 @@
 package com.graphhopper.http.cli;
 
 import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.http.GraphHopperManaged;
 import com.graphhopper.http.GraphHopperServerConfiguration;
+import com.graphhopper.osminfo.OsmTagColumns;
+import com.graphhopper.replica.ExportArea;
+import com.graphhopper.replica.ExportOutputOptions;
+import com.graphhopper.replica.OsmHelper;
+import com.graphhopper.replica.StreetEdgeDiffExporter;
 import com.graphhopper.replica.StreetEdgeExporter;
 import io.dropwizard.cli.ConfiguredCommand;
 import io.dropwizard.setup.Bootstrap;
 import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
 import org.slf4j.Logger;
@@ -27,6 +34,14 @@ import java.util.Map;
  * Example of calling this command:
  * java -Xmx10g -Ddw.graphhopper.datareader.file=./region_cutout.osm.pbf \
  * -jar web/target/graphhopper-web-1.0-SNAPSHOT.jar export config-usa.yml
+ *
+ * To only export the edges intersecting part of the graph, pass either --bbox=minLon,maxLon,minLat,maxLat or
+ * --polygon=path/to/area.geojson (a GeoJSON FeatureCollection of polygons), e.g.:
+ * java -Xmx10g -jar web/target/graphhopper-web-1.0-SNAPSHOT.jar export --bbox=-94.7,-94.5,38.9,39.1 config-usa.yml
+ *
+ * To only export the edges that were added, removed or changed since a previous export, pass
+ * --diff-against=path/to/previous/street_edges.csv (optionally gzipped); see StreetEdgeDiffExporter for details.
+ * The diff is written to street_edges_diff.csv instead of the full export.
  */
 
 public class ExportCommand extends ConfiguredCommand<GraphHopperServerConfiguration> {
@@ -36,6 +51,26 @@ public class ExportCommand extends ConfiguredCommand<GraphHopperServerConfigurat
         super("export", "Generates street network CSV file from a GH graph");
     }
 
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("--bbox")
+                .dest("bbox")
+                .type(String.class)
+                .required(false)
+                .help("Only export edges intersecting this bounding box, given as minLon,maxLon,minLat,maxLat");
+        subparser.addArgument("--polygon")
+                .dest("polygon")
+                .type(String.class)
+                .required(false)
+                .help("Only export edges intersecting the polygons in this GeoJSON FeatureCollection file");
+        subparser.addArgument("--diff-against")
+                .dest("diff_against")
+                .type(String.class)
+                .required(false)
+                .help("Only export edges added, removed or changed since this previous street_edges.csv export");
+    }
+
     @Override
     protected void run(Bootstrap<GraphHopperServerConfiguration> bootstrap, Namespace namespace,
                        GraphHopperServerConfiguration configuration) {
@@ -48,6 +83,20 @@ public class ExportCommand extends ConfiguredCommand<GraphHopperServerConfigurat
                     configuredGraphHopper.getGraphHopperLocation());
         }
 
+        ExportArea exportArea = null;
+        String bbox = namespace.getString("bbox");
+        String polygonPath = namespace.getString("polygon");
+        String previousExportPath = namespace.getString("diff_against");
+        if (bbox != null && polygonPath != null) {
+            throw new IllegalArgumentException("Only one of --bbox and --polygon may be specified");
+        } else if (previousExportPath != null && (bbox != null || polygonPath != null)) {
+            throw new IllegalArgumentException("--diff-against can't be combined with --bbox or --polygon");
+        } else if (bbox != null) {
+            exportArea = ExportArea.fromBBoxString(bbox);
+        } else if (polygonPath != null) {
+            exportArea = ExportArea.fromGeoJson(new File(polygonPath), bootstrap.getObjectMapper());
+        }
+
         // Load OSM info needed for export from MapDB database file
         DB db = DBMaker.newFileDB(new File("transit_data/osm_info.db")).readOnly().make();
         Map<Long, Map<String, String>> osmIdToLaneTags = db.getHashMap("osmIdToLaneTags");
@@ -55,11 +104,23 @@ public class ExportCommand extends ConfiguredCommand<GraphHopperServerConfigurat
         Map<Long, List<String>> osmIdToAccessFlags = db.getHashMap("osmIdToAccessFlags");
         Map<Long, String> osmIdToStreetName = db.getHashMap("osmIdToStreetName");
         Map<Long, String> osmIdToHighway = db.getHashMap("osmIdToHighway");
+        OsmTagColumns extraTags = OsmHelper.readExtraTags(db);
         logger.info("Done loading OSM info needed for CSV export from MapDB file.");
 
-        // Use loaded graph data to write street network out to CSV
-        StreetEdgeExporter.writeStreetEdgesCsv(configuredGraphHopper, osmIdToLaneTags, ghIdToOsmId,
-                osmIdToAccessFlags, osmIdToStreetName, osmIdToHighway);
-        db.close();
+        // Use loaded graph data to write street network (or its changes since a previous export) out to CSV
+        GraphHopperConfig ghConfig = configuration.getGraphHopperConfiguration();
+        ExportOutputOptions outputOptions = ExportOutputOptions.fromConfig(ghConfig);
+        try {
+            if (previousExportPath != null) {
+                StreetEdgeDiffExporter.writeStreetEdgesDiffCsv(configuredGraphHopper, osmIdToLaneTags, ghIdToOsmId,
+                        osmIdToAccessFlags, osmIdToStreetName, osmIdToHighway, extraTags, outputOptions, new File(previousExportPath),
+                        ghConfig.getInt("export.diff.sort_chunk_rows", StreetEdgeDiffExporter.DEFAULT_SORT_CHUNK_ROWS));
+            } else {
+                StreetEdgeExporter.writeStreetEdgesCsv(configuredGraphHopper, osmIdToLaneTags, ghIdToOsmId,
+                        osmIdToAccessFlags, osmIdToStreetName, osmIdToHighway, extraTags, outputOptions, exportArea);
+            }
+        } finally {
+            db.close();
+        }
     }
 }
@@ -3,6 +3,8 @@ package com.graphhopper.http.cli;
 import com.graphhopper.CustomGraphHopperOSM;
 import com.graphhopper.http.GraphHopperManaged;
 import com.graphhopper.http.GraphHopperServerConfiguration;
+import com.graphhopper.osminfo.OsmInfo;
+import com.graphhopper.replica.ExportOutputOptions;
 import com.graphhopper.replica.StableEdgeIdManager;
 import com.graphhopper.replica.StreetEdgeExporter;
 import io.dropwizard.cli.ConfiguredCommand;
@@ -32,8 +34,10 @@ public class ExportNationwideCommand extends ConfiguredCommand<GraphHopperServer
         logger.info("Done building graph from OSM, parsing tags, and setting stable edge IDs");
 
         // Write processed street network out to CSV
-        StreetEdgeExporter.writeStreetEdgesCsv(gh, gh.getOsmIdToLaneTags(), gh.getGhIdToOsmId(),
-                gh.getOsmIdToAccessFlags(), gh.getOsmIdToStreetName(), gh.getOsmIdToHighwayTag());
+        OsmInfo osmInfo = gh.getOsmInfo();
+        StreetEdgeExporter.writeStreetEdgesCsv(gh, osmInfo.getOsmIdToLaneTags(), osmInfo.getGhIdToOsmId(),
+                osmInfo.getOsmIdToAccessFlags(), osmInfo.getOsmIdToStreetName(), osmInfo.getOsmIdToHighwayTag(),
+                osmInfo.getExtraTags(), ExportOutputOptions.fromConfig(configuration.getGraphHopperConfiguration()), null);
         gh.close();
     }
 }
@@ -3,6 +3,7 @@ package com.graphhopper.http.cli;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.http.GraphHopperManaged;
 import com.graphhopper.http.GraphHopperServerConfiguration;
+import com.graphhopper.replica.ExportOutputOptions;
 import com.graphhopper.replica.GtfsLinkMapper;
 import io.dropwizard.cli.ConfiguredCommand;
 import io.dropwizard.setup.Bootstrap;
@@ -19,7 +20,8 @@ public class GtfsLinkMapperCommand extends ConfiguredCommand<GraphHopperServerCo
         final GraphHopperManaged graphHopper = new GraphHopperManaged(configuration.getGraphHopperConfiguration(), bootstrap.getObjectMapper());
         GraphHopper gh = graphHopper.getGraphHopper();
         gh.load(gh.getGraphHopperLocation());
-        GtfsLinkMapper gtfsLinkMapper = new GtfsLinkMapper(gh);
+        GtfsLinkMapper gtfsLinkMapper = new GtfsLinkMapper(gh,
+                ExportOutputOptions.fromConfig(configuration.getGraphHopperConfiguration()));
         gtfsLinkMapper.setGtfsLinkMappings();
         gh.close();
     }
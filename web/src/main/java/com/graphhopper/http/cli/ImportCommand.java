@@ -18,11 +18,10 @@
 
 package com.graphhopper.http.cli;
 
-import com.graphhopper.CustomGraphHopperOSM;
 import com.graphhopper.GraphHopper;
-import com.graphhopper.CustomGraphHopperGtfs;
 import com.graphhopper.http.GraphHopperManaged;
 import com.graphhopper.http.GraphHopperServerConfiguration;
+import com.graphhopper.osminfo.OsmInfoSource;
 import com.graphhopper.replica.OsmHelper;
 import com.graphhopper.replica.StableEdgeIdManager;
 import io.dropwizard.cli.ConfiguredCommand;
@@ -40,15 +39,9 @@ public class ImportCommand extends ConfiguredCommand<GraphHopperServerConfigurat
         final GraphHopperManaged graphHopper = new GraphHopperManaged(configuration.getGraphHopperConfiguration(), bootstrap.getObjectMapper());
         GraphHopper gh = graphHopper.getGraphHopper();
         gh.importOrLoad();
-        if (gh instanceof CustomGraphHopperGtfs) {
-            CustomGraphHopperGtfs customGh = (CustomGraphHopperGtfs) gh;
-            customGh.collectOsmInfo();
-            OsmHelper.writeOsmInfoToMapDb(customGh);
-        } else {
-            CustomGraphHopperOSM customGh = (CustomGraphHopperOSM) gh;
-            customGh.collectOsmInfo();
-            OsmHelper.writeOsmInfoToMapDb(customGh);
-        }
+        OsmInfoSource osmInfoSource = (OsmInfoSource) gh;
+        osmInfoSource.collectOsmInfo();
+        OsmHelper.writeOsmInfoToMapDb(osmInfoSource.getOsmInfo());
         StableEdgeIdManager stableEdgeIdManager = new StableEdgeIdManager(gh);
         stableEdgeIdManager.setStableEdgeIds();
         gh.close();
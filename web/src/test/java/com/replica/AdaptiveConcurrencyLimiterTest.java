@@ -0,0 +1,105 @@
+package com.replica;
+
+import com.google.protobuf.StringValue;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import io.grpc.protobuf.ProtoUtils;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AdaptiveConcurrencyLimiterTest {
+    private static final String STREET_METHOD = "router.Router/RouteStreetMode";
+    private static final String MATRIX_METHOD = "router.Router/RouteMatrix";
+    private static final long FAST_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    @Test
+    public void testShedsCallsOverLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, null);
+        ServerCallHandler<StringValue, StringValue> handler = (call, headers) -> new ServerCall.Listener<StringValue>() {};
+
+        ServerCall<StringValue, StringValue> first = mockCall(STREET_METHOD);
+        ServerCall.Listener<StringValue> firstListener = limiter.interceptCall(first, new Metadata(), handler);
+        ServerCall<StringValue, StringValue> second = mockCall(STREET_METHOD);
+        limiter.interceptCall(second, new Metadata(), handler);
+        assertEquals(2, limiter.getInFlight());
+
+        ServerCall<StringValue, StringValue> shed = mockCall(STREET_METHOD);
+        limiter.interceptCall(shed, new Metadata(), handler);
+        ArgumentCaptor<Status> status = ArgumentCaptor.forClass(Status.class);
+        verify(shed).close(status.capture(), any(Metadata.class));
+        assertEquals(Status.Code.UNAVAILABLE, status.getValue().getCode());
+        verify(first, never()).close(any(Status.class), any(Metadata.class));
+        assertEquals(2, limiter.getInFlight());
+
+        // A finished call makes room for another
+        firstListener.onComplete();
+        assertEquals(1, limiter.getInFlight());
+        ServerCall<StringValue, StringValue> next = mockCall(STREET_METHOD);
+        limiter.interceptCall(next, new Metadata(), handler);
+        verify(next, never()).close(any(Status.class), any(Metadata.class));
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    public void testLimitGrowsWhileLatencyIsSteady() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100, null);
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(STREET_METHOD, FAST_NANOS, limiter.getLimit());
+        }
+        assertTrue(limiter.getLimit() > 20, "limit " + limiter.getLimit());
+
+        // but not while the limit isn't being used
+        int limit = limiter.getLimit();
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(STREET_METHOD, FAST_NANOS, 1);
+        }
+        assertEquals(limit, limiter.getLimit());
+    }
+
+    @Test
+    public void testLimitShrinksAsLatencyRises() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(50, 5, 100, null);
+        limiter.onSample(STREET_METHOD, FAST_NANOS, 1);
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(STREET_METHOD, SLOW_NANOS, limiter.getLimit());
+        }
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void testSlowMethodDoesntShrinkLimitForFastOne() {
+        // Matrix calls always take 100x longer than street routes; a mix of the two is steady latency
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100, null);
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(STREET_METHOD, FAST_NANOS, limiter.getLimit());
+            limiter.onSample(MATRIX_METHOD, SLOW_NANOS, limiter.getLimit());
+        }
+        assertTrue(limiter.getLimit() > 20, "limit " + limiter.getLimit());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServerCall<StringValue, StringValue> mockCall(String fullMethodName) {
+        ServerCall<StringValue, StringValue> call = mock(ServerCall.class);
+        when(call.getMethodDescriptor()).thenReturn(MethodDescriptor.<StringValue, StringValue>newBuilder()
+                .setType(MethodDescriptor.MethodType.UNARY)
+                .setFullMethodName(fullMethodName)
+                .setRequestMarshaller(ProtoUtils.marshaller(StringValue.getDefaultInstance()))
+                .setResponseMarshaller(ProtoUtils.marshaller(StringValue.getDefaultInstance()))
+                .build());
+        return call;
+    }
+}
@@ -0,0 +1,147 @@
+package com.replica;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.StringValue;
+import io.grpc.CallOptions;
+import io.grpc.Context;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.ServerCalls;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs a method that blocks until released behind a bulkhead with one thread and room for one
+ * queued call.
+ */
+public class BulkheadInterceptorTest {
+    private static final MethodDescriptor<StringValue, StringValue> BLOCKING_METHOD =
+            MethodDescriptor.<StringValue, StringValue>newBuilder()
+                    .setType(MethodDescriptor.MethodType.UNARY)
+                    .setFullMethodName(MethodDescriptor.generateFullMethodName("test.Blocking", "Call"))
+                    .setRequestMarshaller(ProtoUtils.marshaller(StringValue.getDefaultInstance()))
+                    .setResponseMarshaller(ProtoUtils.marshaller(StringValue.getDefaultInstance()))
+                    .build();
+
+    // Released each time a call starts running on the bulkhead
+    private final Semaphore callsStarted = new Semaphore(0);
+    private final CountDownLatch releaseCalls = new CountDownLatch(1);
+    private BulkheadInterceptor.Bulkhead bulkhead;
+    private Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        // Blocks until released, or until the call is cancelled, in which case there's no response
+        ServerServiceDefinition service = ServerServiceDefinition.builder("test.Blocking")
+                .addMethod(BLOCKING_METHOD, ServerCalls.asyncUnaryCall((request, responseObserver) -> {
+                    callsStarted.release();
+                    try {
+                        while (!releaseCalls.await(10, TimeUnit.MILLISECONDS)) {
+                            if (Context.current().isCancelled()) {
+                                return;
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    responseObserver.onNext(request);
+                    responseObserver.onCompleted();
+                }))
+                .build();
+        bulkhead = new BulkheadInterceptor.Bulkhead("test", 1, 1);
+        String serverName = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(serverName)
+                .addService(ServerInterceptors.intercept(service,
+                        new BulkheadInterceptor(null).addBulkhead(BLOCKING_METHOD.getFullMethodName(), bulkhead)))
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(serverName).build();
+    }
+
+    @AfterEach
+    public void stopServer() throws InterruptedException {
+        releaseCalls.countDown();
+        channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        bulkhead.getExecutor().shutdown();
+    }
+
+    @Test
+    public void testRejectsCallsBeyondThreadsAndQueue() throws Exception {
+        ListenableFuture<StringValue> running = call("running");
+        assertTrue(callsStarted.tryAcquire(10, TimeUnit.SECONDS));
+        ListenableFuture<StringValue> queued = call("queued");
+        awaitCallsInUse(2);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> call("rejected").get(10, TimeUnit.SECONDS));
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, Status.fromThrowable(e.getCause()).getCode());
+        assertEquals(2, bulkhead.getCallsInUse());
+
+        releaseCalls.countDown();
+        assertEquals("running", running.get(10, TimeUnit.SECONDS).getValue());
+        assertEquals("queued", queued.get(10, TimeUnit.SECONDS).getValue());
+    }
+
+    @Test
+    public void testReleasesPermitWhenCallCompletes() throws Exception {
+        releaseCalls.countDown();
+        for (int i = 0; i < 5; i++) {
+            assertEquals("call " + i, call("call " + i).get(10, TimeUnit.SECONDS).getValue());
+            awaitCallsInUse(0);
+        }
+    }
+
+    @Test
+    public void testReleasesPermitWhenCallCancelled() throws Exception {
+        ListenableFuture<StringValue> cancelled = call("cancelled");
+        assertTrue(callsStarted.tryAcquire(10, TimeUnit.SECONDS));
+        ListenableFuture<StringValue> queued = call("queued");
+        awaitCallsInUse(2);
+
+        cancelled.cancel(true);
+        queued.cancel(true);
+        awaitCallsInUse(0);
+
+        // Both permits are available again
+        ListenableFuture<StringValue> next = call("next");
+        ListenableFuture<StringValue> nextQueued = call("next queued");
+        awaitCallsInUse(2);
+        releaseCalls.countDown();
+        assertEquals("next", next.get(10, TimeUnit.SECONDS).getValue());
+        assertEquals("next queued", nextQueued.get(10, TimeUnit.SECONDS).getValue());
+    }
+
+    private ListenableFuture<StringValue> call(String message) {
+        return ClientCalls.futureUnaryCall(channel.newCall(BLOCKING_METHOD, CallOptions.DEFAULT), StringValue.of(message));
+    }
+
+    // Permits are released on the bulkhead's thread after the call closes, so wait for them
+    private void awaitCallsInUse(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (bulkhead.getCallsInUse() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, bulkhead.getCallsInUse());
+    }
+}
@@ -0,0 +1,125 @@
+package com.replica;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.graphhopper.export.CompiledPermissionLabeler;
+import com.graphhopper.export.PermissionLabelCache;
+import com.graphhopper.export.TraversalPermissionLabeler;
+import com.graphhopper.export.USTraversalPermissionLabeler;
+import com.graphhopper.export.Way;
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.osm.OSMInput;
+import com.graphhopper.reader.osm.OSMInputFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Differential tests checking that CompiledPermissionLabeler (and the PermissionLabelCache built on it) produce
+ * exactly the same access flags as TraversalPermissionLabeler
+ */
+public class CompiledPermissionLabelerTest {
+    private static final String TEST_OSM_FILE = "test-data/kansas-city-extract-mini.osm.pbf";
+
+    private static final String[] HIGHWAY_VALUES = {null, "motorway", "motorway_link", "Motorway ", "trunk_link",
+            "residential", "service", "pedestrian", "footway", "cycleway", "path", "bridleway", "steps", "platform",
+            "construction", ""};
+    private static final String[] TAG_VALUES = {"yes", " Yes ", "YES;no", "no", "0", "designated;yes", "destination",
+            "private", "limited", "use_sidepath", "dismount", "lane", "opposite_lane", "opposite", "-1", "Reverse",
+            "true", "both", "LEFT", "roundabout", "platform", "customers", "customer", "unknown", ";no", "İ", ""};
+
+    private final TraversalPermissionLabeler labeler = new USTraversalPermissionLabeler();
+
+    @Test
+    public void testMatchesLabelerOnOsmExtract() throws Exception {
+        CompiledPermissionLabeler compiledLabeler = new CompiledPermissionLabeler(labeler);
+        PermissionLabelCache cache = new PermissionLabelCache(labeler);
+        int wayCount = 0;
+        try (OSMInput input = new OSMInputFile(new File(TEST_OSM_FILE)).open()) {
+            ReaderElement next;
+            while ((next = input.getNext()) != null) {
+                if (next.isType(ReaderElement.WAY)) {
+                    ReaderWay readerWay = (ReaderWay) next;
+                    Map<String, String> consideredTags = Maps.newHashMap();
+                    for (String tag : labeler.getAllConsideredTags()) {
+                        if (readerWay.hasTag(tag)) {
+                            consideredTags.put(tag, readerWay.getTag(tag));
+                        }
+                    }
+                    List<String> expected = getExpectedFlagStrings(new Way(consideredTags));
+                    assertEquals(expected, compiledLabeler.getFlagStrings(readerWay), "Way " + readerWay.getId());
+                    assertEquals(expected, cache.getFlagStrings(readerWay), "Way " + readerWay.getId());
+                    wayCount++;
+                }
+            }
+        }
+        assertTrue(wayCount > 0);
+        assertTrue(cache.getHitCount() > 0);
+    }
+
+    @Test
+    public void testCachedLabelsDontDependOnWayOrder() throws Exception {
+        List<ReaderWay> ways = Lists.newArrayList();
+        try (OSMInput input = new OSMInputFile(new File(TEST_OSM_FILE)).open()) {
+            ReaderElement next;
+            while ((next = input.getNext()) != null) {
+                if (next.isType(ReaderElement.WAY)) {
+                    ways.add((ReaderWay) next);
+                }
+            }
+        }
+        // Each way is labeled by a fresh labeler, so no earlier way can affect its expected flags
+        List<List<String>> expected = Lists.newArrayList();
+        for (ReaderWay way : ways) {
+            Map<String, String> consideredTags = Maps.newHashMap();
+            for (String tag : labeler.getAllConsideredTags()) {
+                if (way.hasTag(tag)) {
+                    consideredTags.put(tag, way.getTag(tag));
+                }
+            }
+            List<EnumSet<TraversalPermissionLabeler.EdgeFlag>> flags = new USTraversalPermissionLabeler().getPermissions(new Way(consideredTags));
+            expected.add(Lists.newArrayList(flags.get(0).toString(), flags.get(1).toString()));
+        }
+
+        // Label the ways in reverse order, sharing one labeler and cache as the import does
+        PermissionLabelCache cache = new PermissionLabelCache(new USTraversalPermissionLabeler());
+        for (int i = ways.size() - 1; i >= 0; i--) {
+            List<String> flagStrings = cache.getFlagStrings(ways.get(i));
+            assertEquals(expected.get(i), flagStrings, "Way " + ways.get(i).getId());
+            assertThrows(UnsupportedOperationException.class, () -> flagStrings.set(0, ""));
+        }
+        assertTrue(cache.getHitCount() > 0);
+    }
+
+    @Test
+    public void testMatchesLabelerOnUnusualTagValues() {
+        CompiledPermissionLabeler compiledLabeler = new CompiledPermissionLabeler(labeler);
+        for (String highway : HIGHWAY_VALUES) {
+            for (String tag : labeler.getAllConsideredTags()) {
+                for (String value : TAG_VALUES) {
+                    Map<String, String> tags = Maps.newHashMap();
+                    if (highway != null) {
+                        tags.put("highway", highway);
+                    }
+                    tags.put(tag, value);
+                    Way way = new Way(tags);
+                    assertEquals(getExpectedFlagStrings(way),
+                            CompiledPermissionLabeler.toFlagStrings(compiledLabeler.getPermissions(way)), tags.toString());
+                }
+            }
+        }
+    }
+
+    private List<String> getExpectedFlagStrings(Way way) {
+        List<EnumSet<TraversalPermissionLabeler.EdgeFlag>> flags = labeler.getPermissions(way);
+        return Lists.newArrayList(flags.get(0).toString(), flags.get(1).toString());
+    }
+}
@@ -0,0 +1,165 @@
+package com.replica;
+
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.replica.ExportOutputOptions;
+import com.graphhopper.replica.ExportOutputStream;
+import com.graphhopper.replica.ParallelGzipOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round-trips export output through ParallelGzipOutputStream and the streams opened by ExportOutputOptions, and
+ * checks the export.* config keys are parsed
+ */
+public class ExportOutputTest {
+    private static final int BLOCK_SIZE = 1000;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 4})
+    public void testParallelGzipRoundTrip(int threads) throws IOException {
+        byte[] data = csvBytes(2000);
+        assertTrue(data.length > 50 * BLOCK_SIZE);
+        ClosingByteArrayOutputStream compressed = new ClosingByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, threads, BLOCK_SIZE)) {
+            // Single bytes, writes within a block, and writes spanning several blocks
+            out.write(data[0]);
+            out.write(data, 1, 10);
+            out.write(data, 11, 3 * BLOCK_SIZE);
+            for (int offset = 11 + 3 * BLOCK_SIZE; offset < data.length; offset += 777) {
+                out.write(data, offset, Math.min(777, data.length - offset));
+            }
+        }
+        assertTrue(compressed.closed);
+        assertArrayEquals(data, gunzip(compressed.toByteArray()));
+    }
+
+    @Test
+    public void testEmptyParallelGzipOutputIsValidGzip() throws IOException {
+        ClosingByteArrayOutputStream compressed = new ClosingByteArrayOutputStream();
+        new ParallelGzipOutputStream(compressed, 2, BLOCK_SIZE).close();
+        assertTrue(compressed.size() > 0);
+        assertArrayEquals(new byte[0], gunzip(compressed.toByteArray()));
+    }
+
+    @Test
+    public void testParallelGzipFlushWritesCompleteMembers() throws IOException {
+        byte[] data = csvBytes(200);
+        int flushedLength = 2 * BLOCK_SIZE + 123;
+        ClosingByteArrayOutputStream compressed = new ClosingByteArrayOutputStream();
+        ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, 4, BLOCK_SIZE);
+        out.write(data, 0, flushedLength);
+        out.flush();
+        // Everything written so far can be decompressed, including the partly-filled block
+        assertArrayEquals(Arrays.copyOf(data, flushedLength), gunzip(compressed.toByteArray()));
+
+        // Flushing again with nothing buffered doesn't change the output
+        int sizeAfterFlush = compressed.size();
+        out.flush();
+        assertEquals(sizeAfterFlush, compressed.size());
+
+        out.write(data, flushedLength, data.length - flushedLength);
+        out.close();
+        assertArrayEquals(data, gunzip(compressed.toByteArray()));
+        // Closing again is a no-op
+        out.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"none", "gzip"})
+    public void testOpenedStreamRoundTrip(String compression, @TempDir Path tempDir) throws IOException {
+        byte[] data = csvBytes(2000);
+        for (int threads : new int[]{1, 3}) {
+            GraphHopperConfig config = new GraphHopperConfig()
+                    .putObject("export.compression", compression)
+                    .putObject("export.compression_threads", threads)
+                    .putObject("export.buffer_size_bytes", BLOCK_SIZE);
+            ExportOutputOptions options = ExportOutputOptions.fromConfig(config);
+            File outputFile = options.resolveFile(tempDir.resolve("street_edges_" + threads + ".csv").toFile());
+            try (ExportOutputStream out = options.open(outputFile)) {
+                assertEquals(outputFile, out.getFile());
+                out.write(data, 0, 100);
+                out.write(data[100]);
+                out.write(data, 101, data.length - 101);
+            }
+            byte[] written = Files.readAllBytes(outputFile.toPath());
+            assertArrayEquals(data, compression.equals("gzip") ? gunzip(written) : written);
+        }
+    }
+
+    @Test
+    public void testParsesOptions() {
+        ExportOutputOptions defaults = ExportOutputOptions.fromConfig(new GraphHopperConfig());
+        assertEquals(ExportOutputOptions.Compression.NONE, defaults.getCompression());
+        assertEquals(new File("street_edges.csv"), defaults.resolveFile(new File("street_edges.csv")));
+
+        ExportOutputOptions gzip = ExportOutputOptions.fromConfig(new GraphHopperConfig()
+                .putObject("export.compression", " GZip "));
+        assertEquals(ExportOutputOptions.Compression.GZIP, gzip.getCompression());
+        assertEquals(new File("street_edges.csv.gz"), gzip.resolveFile(new File("street_edges.csv")));
+    }
+
+    @Test
+    public void testRejectsInvalidOptions() {
+        assertInvalid(new GraphHopperConfig().putObject("export.compression", "zip"), "export.compression");
+        assertInvalid(new GraphHopperConfig().putObject("export.compression_threads", 0), "export.compression_threads");
+        assertInvalid(new GraphHopperConfig().putObject("export.compression_threads", "four"), "export.compression_threads");
+        assertInvalid(new GraphHopperConfig().putObject("export.buffer_size_bytes", 0), "export.buffer_size_bytes");
+        assertInvalid(new GraphHopperConfig().putObject("export.buffer_size_bytes", -1), "export.buffer_size_bytes");
+        assertInvalid(new GraphHopperConfig().putObject("export.buffer_size_bytes", "1MiB"), "export.buffer_size_bytes");
+    }
+
+    private static void assertInvalid(GraphHopperConfig config, String key) {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> ExportOutputOptions.fromConfig(config));
+        assertTrue(e.getMessage().contains(key), e.getMessage());
+    }
+
+    // Rows shaped like street_edges.csv, so the data compresses as exports do
+    private static byte[] csvBytes(int rows) {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            csv.append(i * 7919L).append(',').append(i).append(',').append(i + 1)
+                    .append(",38.96,-94.70,38.95,-94.69,\"LINESTRING (-94.70 38.96, -94.69 38.95)\",Main Street,")
+                    .append(i % 500).append('\n');
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static class ClosingByteArrayOutputStream extends ByteArrayOutputStream {
+        boolean closed = false;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
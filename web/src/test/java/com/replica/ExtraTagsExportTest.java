@@ -0,0 +1,85 @@
+package com.replica;
+
+import com.google.common.collect.Maps;
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.osm.OSMInput;
+import com.graphhopper.reader.osm.OSMInputFile;
+import com.graphhopper.util.Helper;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trip of osm_info.extra_tags: collected during import, stored in osm_info.db, and exported as extra street
+ * network columns
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class ExtraTagsExportTest extends ReplicaGraphHopperTest {
+    private static final String TEST_OSM_FILE = "test-data/kansas-city-extract-mini.osm.pbf";
+    private static final List<String> EXTRA_TAGS = Arrays.asList("maxspeed", "oneway", "surface");
+
+    private File extraTagsConfig;
+
+    @BeforeAll
+    public void importWithExtraTags() throws Exception {
+        String config = new String(Files.readAllBytes(new File(TEST_GRAPHHOPPER_CONFIG_PATH).toPath()), StandardCharsets.UTF_8);
+        extraTagsConfig = new File(TRANSIT_DATA_DIR + "extra_tags_config.yaml");
+        Files.write(extraTagsConfig.toPath(), config.replace("graphhopper:\n",
+                "graphhopper:\n  osm_info.extra_tags: surface,maxspeed,oneway\n").getBytes(StandardCharsets.UTF_8));
+
+        // OSM info is only collected when the graph is imported, so import again from scratch
+        Helper.removeDir(new File(GRAPH_FILES_DIR));
+        new File(TRANSIT_DATA_DIR + "osm_info.db").delete();
+        new File(TRANSIT_DATA_DIR + "osm_info.db.p").delete();
+        new File(TRANSIT_DATA_DIR + "osm_info.db.t").delete();
+        cli.run("import", extraTagsConfig.getPath());
+    }
+
+    @Test
+    public void testExtraTagsExportedAsColumns() throws Exception {
+        Map<Long, ReaderWay> ways = Maps.newHashMap();
+        try (OSMInput input = new OSMInputFile(new File(TEST_OSM_FILE)).open()) {
+            ReaderElement next;
+            while ((next = input.getNext()) != null) {
+                if (next.isType(ReaderElement.WAY)) {
+                    ways.put(next.getId(), (ReaderWay) next);
+                }
+            }
+        }
+
+        cli.run("export", extraTagsConfig.getPath());
+        CSVParser parser = CSVParser.parse(new File(GRAPH_FILES_DIR + "street_edges.csv"), StandardCharsets.UTF_8,
+                CSVFormat.DEFAULT.withFirstRecordAsHeader());
+        List<String> headers = parser.getHeaderNames();
+        assertEquals(EXTRA_TAGS, headers.subList(headers.size() - EXTRA_TAGS.size(), headers.size()));
+
+        int valueCount = 0;
+        List<CSVRecord> records = parser.getRecords();
+        assertTrue(records.size() > 0);
+        for (CSVRecord record : records) {
+            ReaderWay way = ways.get(Long.parseLong(record.get("osmid")));
+            for (String tag : EXTRA_TAGS) {
+                String expected = way.hasTag(tag) ? way.getTag(tag) : "";
+                assertEquals(expected, record.get(tag), "Tag " + tag + " of way " + way.getId());
+                if (!expected.isEmpty()) {
+                    valueCount++;
+                }
+            }
+        }
+        assertTrue(valueCount > 0);
+    }
+}
@@ -0,0 +1,101 @@
+package com.replica;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InstrumentedExecutorTest {
+
+    @Test
+    public void testStrategyCodes() {
+        assertEquals(InstrumentedExecutor.Strategy.FIXED, InstrumentedExecutor.Strategy.fromCode(0));
+        assertEquals(InstrumentedExecutor.Strategy.WORK_STEALING, InstrumentedExecutor.Strategy.fromCode(1));
+        assertEquals(InstrumentedExecutor.Strategy.VIRTUAL, InstrumentedExecutor.Strategy.fromCode(2));
+        assertThrows(IllegalArgumentException.class, () -> InstrumentedExecutor.Strategy.fromCode(-1));
+        assertThrows(IllegalArgumentException.class, () -> InstrumentedExecutor.Strategy.fromCode(3));
+        assertThrows(IllegalArgumentException.class,
+                () -> InstrumentedExecutor.create("test", InstrumentedExecutor.Strategy.FIXED, 0));
+    }
+
+    @Test
+    public void testVirtualFallsBackToFixedWithoutJdkSupport() throws Exception {
+        boolean virtualThreadsSupported;
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            virtualThreadsSupported = true;
+        } catch (NoSuchMethodException e) {
+            virtualThreadsSupported = false;
+        }
+        InstrumentedExecutor executor = InstrumentedExecutor.create("test", InstrumentedExecutor.Strategy.VIRTUAL, 2);
+        try {
+            assertEquals(virtualThreadsSupported ? InstrumentedExecutor.Strategy.VIRTUAL : InstrumentedExecutor.Strategy.FIXED,
+                    executor.getStrategy());
+            CountDownLatch ran = new CountDownLatch(1);
+            executor.execute(ran::countDown);
+            assertTrue(ran.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCountsQueuedAndActiveTasks() throws Exception {
+        InstrumentedExecutor executor = InstrumentedExecutor.create("test", InstrumentedExecutor.Strategy.FIXED, 1);
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger completed = new AtomicInteger();
+            for (int i = 0; i < 3; i++) {
+                executor.execute(() -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    completed.incrementAndGet();
+                });
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // One thread, so one task runs while the other two wait
+            assertEquals(1, executor.getActiveTasks());
+            assertEquals(2, executor.getQueuedTasks());
+
+            release.countDown();
+            awaitIdle(executor);
+            assertEquals(3, completed.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRejectedTaskIsNotCounted() throws Exception {
+        InstrumentedExecutor executor = InstrumentedExecutor.create("test", InstrumentedExecutor.Strategy.FIXED, 1);
+        CountDownLatch ran = new CountDownLatch(1);
+        executor.execute(ran::countDown);
+        assertTrue(ran.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}));
+        awaitIdle(executor);
+    }
+
+    // Counters are decremented just after a task finishes, so give the pool a moment to catch up
+    private static void awaitIdle(InstrumentedExecutor executor) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while ((executor.getQueuedTasks() != 0 || executor.getActiveTasks() != 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.getQueuedTasks());
+        assertEquals(0, executor.getActiveTasks());
+    }
+}
@@ -0,0 +1,74 @@
+package com.replica;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.graphhopper.osminfo.AccessFlagsExtractor;
+import com.graphhopper.osminfo.ExtraTagsExtractor;
+import com.graphhopper.osminfo.HighwayTagExtractor;
+import com.graphhopper.osminfo.LaneTagsExtractor;
+import com.graphhopper.osminfo.OsmInfo;
+import com.graphhopper.osminfo.OsmInfoCollector;
+import com.graphhopper.osminfo.OsmTagColumns;
+import com.graphhopper.osminfo.StreetNameExtractor;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OsmInfoCollectorTest {
+    private static final String TEST_OSM_FILE = "test-data/kansas-city-extract-mini.osm.pbf";
+
+    @Test
+    public void testParallelCollectionMatchesSingleThreaded() {
+        OsmInfo singleThreaded = collect(1, OsmInfoCollector.DEFAULT_WAY_BATCH_SIZE);
+        // Small batches, so that the test extract's ways are spread over many batches and workers
+        OsmInfo parallel = collect(4, 7);
+
+        assertFalse(singleThreaded.getOsmIdToAccessFlags().isEmpty());
+        assertEquals(singleThreaded.getAllWayValues().keySet(), parallel.getAllWayValues().keySet());
+        assertEquals(singleThreaded.getOsmIdToLaneTags(), parallel.getOsmIdToLaneTags());
+        assertEquals(singleThreaded.getOsmIdToAccessFlags(), parallel.getOsmIdToAccessFlags());
+        assertEquals(singleThreaded.getOsmIdToStreetName(), parallel.getOsmIdToStreetName());
+        assertEquals(singleThreaded.getOsmIdToHighwayTag(), parallel.getOsmIdToHighwayTag());
+
+        OsmTagColumns singleThreadedExtraTags = singleThreaded.getExtraTags();
+        OsmTagColumns parallelExtraTags = parallel.getExtraTags();
+        assertEquals(singleThreadedExtraTags.getTags(), parallelExtraTags.getTags());
+        assertArrayEquals(singleThreadedExtraTags.getWayIds(), parallelExtraTags.getWayIds());
+        for (int i = 0; i < singleThreadedExtraTags.getTags().size(); i++) {
+            assertEquals(singleThreadedExtraTags.getTagValues(i), parallelExtraTags.getTagValues(i));
+            assertArrayEquals(singleThreadedExtraTags.getValueIds(i), parallelExtraTags.getValueIds(i));
+        }
+        Set<Long> osmIds = Sets.union(singleThreaded.getOsmIdToHighwayTag().keySet(), parallel.getOsmIdToHighwayTag().keySet());
+        String[] expectedValues = new String[singleThreadedExtraTags.getTags().size()];
+        String[] values = new String[expectedValues.length];
+        int waysWithExtraTags = 0;
+        for (long osmId : osmIds) {
+            singleThreadedExtraTags.getValues(osmId, expectedValues);
+            parallelExtraTags.getValues(osmId, values);
+            assertArrayEquals(expectedValues, values, "Way " + osmId);
+            if (Arrays.stream(values).anyMatch(Objects::nonNull)) {
+                waysWithExtraTags++;
+            }
+        }
+        assertTrue(waysWithExtraTags > 0);
+    }
+
+    private static OsmInfo collect(int workerThreads, int wayBatchSize) {
+        OsmInfo osmInfo = new OsmInfo();
+        new OsmInfoCollector(TEST_OSM_FILE, 2, workerThreads, wayBatchSize)
+                .register(new LaneTagsExtractor())
+                .register(new AccessFlagsExtractor())
+                .register(new StreetNameExtractor())
+                .register(new HighwayTagExtractor())
+                .register(new ExtraTagsExtractor(Lists.newArrayList("surface", "maxspeed", "oneway")))
+                .collect(osmInfo);
+        return osmInfo;
+    }
+}
@@ -0,0 +1,126 @@
+package com.replica;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.graphhopper.export.TraversalPermissionLabeler;
+import com.graphhopper.export.USTraversalPermissionLabeler;
+import com.graphhopper.export.Way;
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.ReaderRelation;
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.osm.OSMInput;
+import com.graphhopper.reader.osm.OSMInputFile;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the osm_info.db written during import has the same tables, with the same contents, as the single-pass
+ * collector in CustomGraphHopperOSM/CustomGraphHopperGtfs wrote before OSM tag extraction was made pluggable. The
+ * expected tables are computed here the way that collector did.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class OsmInfoTablesTest extends ReplicaGraphHopperTest {
+    private static final String TEST_OSM_FILE = "test-data/kansas-city-extract-mini.osm.pbf";
+    private static final Set<String> LANE_TAGS = Sets.newHashSet("lanes", "lanes:forward", "lanes:backward");
+
+    private final Set<Long> wayIds = Sets.newHashSet();
+    private final Map<Long, Map<String, String>> expectedLaneTags = Maps.newHashMap();
+    private final Map<Long, List<String>> expectedAccessFlags = Maps.newHashMap();
+    private final Map<Long, String> expectedStreetNames = Maps.newHashMap();
+    private final Map<Long, String> expectedHighwayTags = Maps.newHashMap();
+
+    @BeforeAll
+    public void collectExpectedTables() throws Exception {
+        TraversalPermissionLabeler flagLabeler = new USTraversalPermissionLabeler();
+        List<ReaderRelation> roadRelations = Lists.newArrayList();
+        try (OSMInput input = new OSMInputFile(new File(TEST_OSM_FILE)).open()) {
+            ReaderElement next;
+            while ((next = input.getNext()) != null) {
+                if (next.isType(ReaderElement.WAY)) {
+                    ReaderWay way = (ReaderWay) next;
+                    long osmId = way.getId();
+                    wayIds.add(osmId);
+                    String name = getName(way);
+                    if (name != null) {
+                        expectedStreetNames.put(osmId, name);
+                    }
+                    if (way.hasTag("highway")) {
+                        expectedHighwayTags.put(osmId, way.getTag("highway"));
+                    }
+                    for (String laneTag : LANE_TAGS) {
+                        if (way.hasTag(laneTag)) {
+                            expectedLaneTags.computeIfAbsent(osmId, id -> Maps.newHashMap()).put(laneTag, way.getTag(laneTag));
+                        }
+                    }
+                    Map<String, String> consideredTags = Maps.newHashMap();
+                    for (String consideredTag : flagLabeler.getAllConsideredTags()) {
+                        if (way.hasTag(consideredTag)) {
+                            consideredTags.put(consideredTag, way.getTag(consideredTag));
+                        }
+                    }
+                    List<EnumSet<TraversalPermissionLabeler.EdgeFlag>> flags = flagLabeler.getPermissions(new Way(consideredTags));
+                    expectedAccessFlags.put(osmId, Lists.newArrayList(flags.get(0).toString(), flags.get(1).toString()));
+                } else if (next.isType(ReaderElement.RELATION) && next.hasTag("route", "road")) {
+                    roadRelations.add((ReaderRelation) next);
+                }
+            }
+        }
+        for (ReaderRelation relation : roadRelations) {
+            for (ReaderRelation.Member member : relation.getMembers()) {
+                if (member.getType() == ReaderRelation.Member.WAY && !expectedStreetNames.containsKey(member.getRef())) {
+                    String name = getName(relation);
+                    if (name != null) {
+                        expectedStreetNames.put(member.getRef(), name);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTablesMatchPreviousCollector() {
+        DB db = DBMaker.newFileDB(new File(TRANSIT_DATA_DIR + "osm_info.db")).readOnly().make();
+        try {
+            // No osm_info.extra_tags in the test config, so there are no extra tables
+            assertEquals(Sets.newHashSet("ghIdToOsmId", "osmIdToLaneTags", "osmIdToAccessFlags", "osmIdToStreetName",
+                    "osmIdToHighway"), db.getAll().keySet());
+
+            assertEquals(expectedLaneTags, Maps.newHashMap(db.<Long, Map<String, String>>getHashMap("osmIdToLaneTags")));
+            assertEquals(expectedAccessFlags, Maps.newHashMap(db.<Long, List<String>>getHashMap("osmIdToAccessFlags")));
+            assertEquals(expectedStreetNames, Maps.newHashMap(db.<Long, String>getHashMap("osmIdToStreetName")));
+            assertEquals(expectedHighwayTags, Maps.newHashMap(db.<Long, String>getHashMap("osmIdToHighway")));
+
+            Map<Integer, Long> ghIdToOsmId = db.getHashMap("ghIdToOsmId");
+            assertFalse(ghIdToOsmId.isEmpty());
+            for (long osmId : ghIdToOsmId.values()) {
+                assertTrue(wayIds.contains(osmId), "Edge mapped to unknown way " + osmId);
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    private static String getName(ReaderElement wayOrRelation) {
+        if (wayOrRelation.hasTag("name")) {
+            return wayOrRelation.getTag("name");
+        } else if (wayOrRelation.hasTag("ref")) {
+            return wayOrRelation.getTag("ref");
+        } else {
+            return null;
+        }
+    }
+}
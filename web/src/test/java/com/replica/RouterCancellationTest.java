@@ -0,0 +1,141 @@
+package com.replica;
+
+import com.graphhopper.routing.GHMatrixAPI;
+import com.graphhopper.routing.MatrixAPI;
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import router.RouterOuterClass.MatrixRouteReply;
+import router.RouterOuterClass.MatrixRouteRequest;
+import router.RouterOuterClass.Point;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that RouterImpl stops work on calls whose context is cancelled or past its deadline, and
+ * completes them with the matching status
+ */
+public class RouterCancellationTest extends ReplicaGraphHopperTest {
+    private static final double[][] MATRIX_POINTS = {
+            {38.96637569955874, -94.70833304570988},
+            {38.959204519370815, -94.69174071738964},
+            {38.97, -94.70},
+            {38.96, -94.68}
+    };
+    private static final MatrixRouteRequest MATRIX_REQUEST = createMatrixRequest();
+
+    private static MatrixAPI matrixAPI;
+    // Cancelled by the matrix API once it's calculated the matrix, if set
+    private static final AtomicReference<Context.CancellableContext> cancelAfterCalc = new AtomicReference<>();
+    private static RouterImpl router;
+    private static ScheduledExecutorService deadlineScheduler;
+
+    @BeforeAll
+    public static void createRouter() {
+        MatrixAPI ghMatrixAPI = new GHMatrixAPI(graphHopperManaged.getGraphHopper(), graphHopperConfiguration);
+        matrixAPI = mock(MatrixAPI.class);
+        when(matrixAPI.calc(any())).thenAnswer(invocation -> {
+            Object response = ghMatrixAPI.calc(invocation.getArgument(0));
+            Context.CancellableContext context = cancelAfterCalc.getAndSet(null);
+            if (context != null) {
+                context.cancel(null);
+            }
+            return response;
+        });
+        router = new RouterImpl(graphHopperManaged.getGraphHopper(), null, matrixAPI, null, null, null, null,
+                TEST_REGION_NAME);
+        deadlineScheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterAll
+    public static void stopDeadlineScheduler() {
+        deadlineScheduler.shutdownNow();
+    }
+
+    private static MatrixRouteRequest createMatrixRequest() {
+        MatrixRouteRequest.Builder request = MatrixRouteRequest.newBuilder()
+                .addOutArrays("times")
+                .addOutArrays("distances")
+                .setMode("car");
+        for (double[] point : MATRIX_POINTS) {
+            request.addFromPoints(Point.newBuilder().setLat(point[0]).setLon(point[1]).build());
+            request.addToPoints(Point.newBuilder().setLat(point[0]).setLon(point[1]).build());
+        }
+        return request.build();
+    }
+
+    @Test
+    public void testMatrixCompletesInLiveContext() {
+        RecordingObserver observer = new RecordingObserver();
+        Context.current().withCancellation().run(() -> router.routeMatrix(MATRIX_REQUEST, observer));
+
+        assertNull(observer.error.get());
+        assertEquals(MATRIX_POINTS.length, observer.reply.get().getTimesCount());
+        assertEquals(MATRIX_POINTS.length, observer.reply.get().getDistancesCount());
+    }
+
+    @Test
+    public void testCancelledMatrixCallEndsWithCancelled() {
+        Context.CancellableContext context = Context.current().withCancellation();
+        context.cancel(null);
+        RecordingObserver observer = new RecordingObserver();
+        context.run(() -> router.routeMatrix(MATRIX_REQUEST, observer));
+
+        assertNull(observer.reply.get());
+        assertEquals(Status.Code.CANCELLED, Status.fromThrowable(observer.error.get()).getCode());
+    }
+
+    @Test
+    public void testMatrixCallCancelledWhileCalculatingEndsWithCancelled() {
+        Context.CancellableContext context = Context.current().withCancellation();
+        cancelAfterCalc.set(context);
+        RecordingObserver observer = new RecordingObserver();
+        context.run(() -> router.routeMatrix(MATRIX_REQUEST, observer));
+
+        assertNull(observer.reply.get());
+        assertEquals(Status.Code.CANCELLED, Status.fromThrowable(observer.error.get()).getCode());
+    }
+
+    @Test
+    public void testExpiredMatrixCallEndsWithDeadlineExceeded() {
+        Context.CancellableContext context = Context.current()
+                .withDeadline(Deadline.after(-1, TimeUnit.SECONDS), deadlineScheduler);
+        RecordingObserver observer = new RecordingObserver();
+        context.run(() -> router.routeMatrix(MATRIX_REQUEST, observer));
+
+        assertNull(observer.reply.get());
+        assertEquals(Status.Code.DEADLINE_EXCEEDED, Status.fromThrowable(observer.error.get()).getCode());
+    }
+
+    private static class RecordingObserver implements StreamObserver<MatrixRouteReply> {
+        final AtomicReference<MatrixRouteReply> reply = new AtomicReference<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        @Override
+        public void onNext(MatrixRouteReply value) {
+            reply.set(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error.set(t);
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
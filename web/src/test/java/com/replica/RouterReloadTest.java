@@ -0,0 +1,129 @@
+package com.replica;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.util.MutableHandlerRegistry;
+import org.junit.jupiter.api.Test;
+import router.RouterGrpc;
+import router.RouterOuterClass.Point;
+import router.RouterOuterClass.StreetRouteReply;
+import router.RouterOuterClass.StreetRouteRequest;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Swaps router instances behind an in-process server, as RouterServer does to reload the graph,
+ * while calls are running on the previous instance
+ */
+public class RouterReloadTest extends ReplicaGraphHopperTest {
+    private static final String LINK_MAPPINGS_PATH = TRANSIT_DATA_DIR + "gtfs_link_mappings.db";
+    private static final StreetRouteRequest REQUEST = StreetRouteRequest.newBuilder()
+            .addPoints(Point.newBuilder().setLat(38.96637569955874).setLon(-94.70833304570988).build())
+            .addPoints(Point.newBuilder().setLat(38.959204519370815).setLon(-94.69174071738964).build())
+            .setProfile("car")
+            .build();
+
+    // Released as each call reaches the gate, which holds it (before it's routed) until opened
+    private final Semaphore callsAtGate = new Semaphore(0);
+    private final CountDownLatch openGate = new CountDownLatch(1);
+    private final ServerInterceptor gate = new ServerInterceptor() {
+        @Override
+        public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                     ServerCallHandler<ReqT, RespT> next) {
+            return new SimpleForwardingServerCallListener<ReqT>(next.startCall(call, headers)) {
+                @Override
+                public void onHalfClose() {
+                    callsAtGate.release();
+                    Uninterruptibles.awaitUninterruptibly(openGate);
+                    super.onHalfClose();
+                }
+            };
+        }
+    };
+
+    @Test
+    public void testReloadWaitsForCallsInFlight() throws Exception {
+        RouterInstance first = RouterInstance.load(graphHopperConfiguration, LINK_MAPPINGS_PATH, null, TEST_REGION_NAME);
+        RouterInstance second = RouterInstance.load(graphHopperConfiguration, LINK_MAPPINGS_PATH, null, TEST_REGION_NAME);
+        MutableHandlerRegistry registry = new MutableHandlerRegistry();
+        ExecutorService serverExecutor = Executors.newFixedThreadPool(8);
+        String serverName = InProcessServerBuilder.generateName();
+        Server server = InProcessServerBuilder.forName(serverName)
+                .fallbackHandlerRegistry(registry)
+                .executor(serverExecutor)
+                .build()
+                .start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+        ExecutorService closeExecutor = Executors.newSingleThreadExecutor();
+        try {
+            registry.addService(first.bindService(gate));
+            RouterGrpc.RouterFutureStub stub = RouterGrpc.newFutureStub(channel);
+            List<ListenableFuture<StreetRouteReply>> calls = IntStream.range(0, 4)
+                    .mapToObj(i -> stub.routeStreetMode(REQUEST)).collect(Collectors.toList());
+            assertTrue(callsAtGate.tryAcquire(4, 10, TimeUnit.SECONDS));
+            // Counted as soon as they were dispatched, though none has reached the router yet
+            assertEquals(4, first.getInFlightCalls());
+
+            // Reload: new calls are served by the second instance while the first one drains
+            registry.addService(second.bindService());
+            Future<?> closed = closeExecutor.submit(() -> {
+                first.close();
+                return null;
+            });
+            assertEquals(1, stub.routeStreetMode(REQUEST).get(10, TimeUnit.SECONDS).getPathsCount());
+            assertEquals(0, second.getInFlightCalls());
+
+            // A call cancelled by its client is still in flight until the router is done with it
+            calls.get(0).cancel(true);
+            Thread.sleep(500);
+            assertFalse(closed.isDone());
+            assertEquals(4, first.getInFlightCalls());
+
+            openGate.countDown();
+            assertThrows(CancellationException.class, () -> calls.get(0).get());
+            for (ListenableFuture<StreetRouteReply> call : calls.subList(1, calls.size())) {
+                assertEquals(1, call.get(10, TimeUnit.SECONDS).getPathsCount());
+            }
+            closed.get(10, TimeUnit.SECONDS);
+            assertEquals(0, first.getInFlightCalls());
+
+            // A call dispatched to the closed instance fails with a status the client can retry on
+            registry.addService(first.bindService());
+            StatusRuntimeException e = assertThrows(StatusRuntimeException.class,
+                    () -> RouterGrpc.newBlockingStub(channel).routeStreetMode(REQUEST));
+            assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+        } finally {
+            openGate.countDown();
+            channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            serverExecutor.shutdownNow();
+            closeExecutor.shutdownNow();
+            second.close();
+        }
+    }
+}
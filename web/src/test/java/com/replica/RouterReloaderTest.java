@@ -0,0 +1,153 @@
+package com.replica;
+
+import com.google.protobuf.StringValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCalls;
+import io.grpc.util.MutableHandlerRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import router.RouterGrpc;
+import router.RouterOuterClass.Point;
+import router.RouterOuterClass.StreetRouteRequest;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reloads the test graph through the router.RouterAdmin/ReloadGraph RPC, served from an in-process
+ * server alongside the router, as RouterServer does with GRAPH_RELOAD_RPC set
+ */
+public class RouterReloaderTest extends ReplicaGraphHopperTest {
+    private static final String GRAPH_LOCATION = GRAPH_FILES_DIR;
+    private static final String LINK_MAPPINGS_PATH = TRANSIT_DATA_DIR + "gtfs_link_mappings.db";
+    private static final StreetRouteRequest REQUEST = StreetRouteRequest.newBuilder()
+            .addPoints(Point.newBuilder().setLat(38.96637569955874).setLon(-94.70833304570988).build())
+            .addPoints(Point.newBuilder().setLat(38.959204519370815).setLon(-94.69174071738964).build())
+            .setProfile("car")
+            .build();
+
+    // The loader records each graph it's asked to load, then waits to be allowed to finish loading it
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AtomicReference<String> loadedGraphLocation = new AtomicReference<>();
+    private final CountDownLatch finishLoading = new CountDownLatch(1);
+    private RouterInstance first;
+    private RouterReloader reloader;
+    private Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    public void startServer() throws Exception {
+        MutableHandlerRegistry registry = new MutableHandlerRegistry();
+        first = RouterInstance.load(graphHopperConfiguration, LINK_MAPPINGS_PATH, null, TEST_REGION_NAME);
+        registry.addService(first.bindService());
+        reloader = new RouterReloader(first, registry, new ServerInterceptor[0], TRANSIT_DATA_DIR, LINK_MAPPINGS_PATH,
+                (graphLocation, linkMappingsPath) -> {
+                    loads.incrementAndGet();
+                    loadedGraphLocation.set(graphLocation);
+                    finishLoading.await();
+                    return RouterInstance.load(graphHopperConfiguration, linkMappingsPath, null, TEST_REGION_NAME);
+                });
+        String serverName = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(serverName)
+                .addService(RouterAdminService.bindService(reloader))
+                .fallbackHandlerRegistry(registry)
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(serverName).build();
+    }
+
+    @AfterEach
+    public void stopServer() throws Exception {
+        finishLoading.countDown();
+        await(() -> !reloader.isReloadInProgress());
+        channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        reloader.shutdown();
+        reloader.getRouterInstance().close();
+    }
+
+    @Test
+    public void testReloadSwapsInGraphAndRejectsConcurrentReload() throws Exception {
+        String message = reload(GRAPH_LOCATION, null).getValue();
+        assertTrue(message.contains(Paths.get(GRAPH_LOCATION).toRealPath().toString()), message);
+        await(() -> loads.get() == 1);
+        assertTrue(reloader.isReloadInProgress());
+
+        assertInvalid(Status.Code.FAILED_PRECONDITION, GRAPH_LOCATION, null);
+        assertEquals(1, loads.get());
+        // The current graph is served while the new one loads
+        assertEquals(1, RouterGrpc.newBlockingStub(channel).routeStreetMode(REQUEST).getPathsCount());
+        assertSame(first, reloader.getRouterInstance());
+
+        finishLoading.countDown();
+        await(() -> !reloader.isReloadInProgress());
+        assertNotSame(first, reloader.getRouterInstance());
+        assertEquals(Paths.get(GRAPH_LOCATION).toRealPath().toString(), loadedGraphLocation.get());
+        assertEquals(0, first.getInFlightCalls());
+        assertEquals(1, RouterGrpc.newBlockingStub(channel).routeStreetMode(REQUEST).getPathsCount());
+    }
+
+    @Test
+    public void testRejectsPathsWithoutImportedGraph() throws Exception {
+        Files.createDirectories(Paths.get(TRANSIT_DATA_DIR, "empty_graph"));
+
+        // Outside the root
+        assertInvalid(Status.Code.INVALID_ARGUMENT, ".", null);
+        assertInvalid(Status.Code.INVALID_ARGUMENT, GRAPH_LOCATION + "../..", null);
+        assertInvalid(Status.Code.INVALID_ARGUMENT, TRANSIT_DATA_DIR, null);
+        assertInvalid(Status.Code.INVALID_ARGUMENT, GRAPH_LOCATION, "elsewhere/gtfs_link_mappings.db");
+        // Under the root, but with no graph to load
+        assertInvalid(Status.Code.INVALID_ARGUMENT, TRANSIT_DATA_DIR + "no_such_graph", null);
+        assertInvalid(Status.Code.INVALID_ARGUMENT, TRANSIT_DATA_DIR + "empty_graph", null);
+        assertInvalid(Status.Code.INVALID_ARGUMENT, "", null);
+
+        assertEquals(0, loads.get());
+        assertFalse(reloader.isReloadInProgress());
+        assertSame(first, reloader.getRouterInstance());
+    }
+
+    private StringValue reload(String graphLocation, String linkMappingsPath) {
+        Struct.Builder request = Struct.newBuilder()
+                .putFields("graph_location", Value.newBuilder().setStringValue(graphLocation).build());
+        if (linkMappingsPath != null) {
+            request.putFields("link_mappings_db", Value.newBuilder().setStringValue(linkMappingsPath).build());
+        }
+        return ClientCalls.blockingUnaryCall(channel, RouterAdminService.RELOAD_GRAPH_METHOD, CallOptions.DEFAULT,
+                request.build());
+    }
+
+    private void assertInvalid(Status.Code expected, String graphLocation, String linkMappingsPath) {
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class, () -> reload(graphLocation, linkMappingsPath));
+        assertEquals(expected, e.getStatus().getCode(), graphLocation);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
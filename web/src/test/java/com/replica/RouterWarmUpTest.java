@@ -0,0 +1,80 @@
+package com.replica;
+
+import com.google.common.collect.Lists;
+import com.graphhopper.util.shapes.BBox;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RouterWarmUpTest {
+
+    @Test
+    public void testReadsOdPairsAfterHeader(@TempDir Path tempDir) throws IOException {
+        Path odFile = tempDir.resolve("od_pairs.csv");
+        Files.write(odFile, Arrays.asList(
+                "from_lat,from_lon,to_lat,to_lon",
+                "38.96637569955874,-94.70833304570988,38.959204519370815,-94.69174071738964",
+                "",
+                "38.97,-94.7,38.96,-94.68"));
+
+        List<double[]> odPairs = RouterWarmUp.readOdPairs(odFile.toString());
+        assertEquals(2, odPairs.size());
+        assertArrayEquals(new double[]{38.96637569955874, -94.70833304570988, 38.959204519370815, -94.69174071738964},
+                odPairs.get(0));
+        assertArrayEquals(new double[]{38.97, -94.7, 38.96, -94.68}, odPairs.get(1));
+    }
+
+    @Test
+    public void testRandomOdPairsAreWithinBounds() {
+        BBox bounds = new BBox(-94.8, -94.6, 38.9, 39.1);
+        List<double[]> odPairs = RouterWarmUp.randomOdPairs(bounds, 1000);
+        assertEquals(1000, odPairs.size());
+        for (double[] odPair : odPairs) {
+            assertTrue(bounds.contains(odPair[0], odPair[1]), Arrays.toString(odPair));
+            assertTrue(bounds.contains(odPair[2], odPair[3]), Arrays.toString(odPair));
+        }
+        // Seeded, so every warm-up of a graph routes the same pairs
+        assertArrayEquals(odPairs.get(0), RouterWarmUp.randomOdPairs(bounds, 1).get(0));
+        assertEquals(0, RouterWarmUp.randomOdPairs(bounds, 0).size());
+    }
+
+    @Test
+    public void testPercentiles() {
+        List<Double> latencies = Lists.newArrayList();
+        for (int i = 1; i <= 100; i++) {
+            latencies.add((double) i);
+        }
+        assertEquals(50, RouterWarmUp.percentile(latencies, 0.5));
+        assertEquals(90, RouterWarmUp.percentile(latencies, 0.9));
+        assertEquals(99, RouterWarmUp.percentile(latencies, 0.99));
+        assertEquals(100, RouterWarmUp.percentile(latencies, 1));
+        assertEquals(7, RouterWarmUp.percentile(Lists.newArrayList(7.0), 0.5));
+        assertEquals(7, RouterWarmUp.percentile(Lists.newArrayList(7.0), 0.99));
+    }
+
+    @Test
+    public void testReportsEachQueryType() {
+        RouterWarmUp warmUp = new RouterWarmUp(null, null);
+        // Recorded out of order, as latencies are
+        for (int i = 100; i >= 1; i--) {
+            warmUp.record("car", i, i % 10 == 0);
+        }
+        warmUp.record("car_matrix", 250, false);
+
+        List<String> report = warmUp.report();
+        assertEquals(2, report.size());
+        assertEquals("Warm-up latency for car: 100 queries (10 errors); p50 50.0 ms, p90 90.0 ms, p99 99.0 ms, max 100.0 ms",
+                report.get(0));
+        assertEquals("Warm-up latency for car_matrix: 1 queries (0 errors); p50 250.0 ms, p90 250.0 ms, p99 250.0 ms, max 250.0 ms",
+                report.get(1));
+    }
+}
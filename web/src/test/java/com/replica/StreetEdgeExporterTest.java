@@ -1,28 +1,52 @@
 package com.replica;
 
 import com.graphhopper.GraphHopper;
+import com.graphhopper.replica.LineStringWktWriter;
+import com.graphhopper.replica.StreetEdgeDiffExporter;
 import com.graphhopper.replica.StreetEdgeExportRecord;
 import com.graphhopper.replica.StreetEdgeExporter;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.PointList;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class StreetEdgeExporterTest extends ReplicaGraphHopperTest {
+    // stableEdgeId through highway, before any extra OSM tag columns
+    private static final int STANDARD_COLUMN_COUNT = 15;
 
     @Test
     public void testExportEndToEnd() throws IOException {
@@ -34,6 +58,190 @@ public class StreetEdgeExporterTest extends ReplicaGraphHopperTest {
         assertEquals(1869, records.size());
     }
 
+    @Test
+    public void testExportWithinBBox() throws IOException {
+        cli.run("export", "--bbox=-94.72,-94.68,38.95,38.97", TEST_GRAPHHOPPER_CONFIG_PATH);
+        File expectedOutputLocation = new File(GRAPH_FILES_DIR + "street_edges.csv");
+        CSVParser parser = CSVParser.parse(expectedOutputLocation, StandardCharsets.UTF_8, StreetEdgeExporter.CSV_FORMAT);
+        List<CSVRecord> records = parser.getRecords();
+        assertTrue(records.size() > 0);
+        assertTrue(records.size() < 1869);
+        assertAllGeometriesIntersect(new GeometryFactory().toGeometry(new Envelope(-94.72, -94.68, 38.95, 38.97)));
+    }
+
+    @Test
+    public void testExportWithinPolygon() throws IOException {
+        // Triangle covering part of the same area as the bbox test
+        File polygonFile = new File(TRANSIT_DATA_DIR + "export_area.geojson");
+        String geoJson = "{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\",\"properties\":{},"
+                + "\"geometry\":{\"type\":\"Polygon\",\"coordinates\":"
+                + "[[[-94.72,38.95],[-94.68,38.95],[-94.70,38.97],[-94.72,38.95]]]}}]}";
+        Files.write(polygonFile.toPath(), geoJson.getBytes(StandardCharsets.UTF_8));
+
+        cli.run("export", "--polygon=" + polygonFile.getPath(), TEST_GRAPHHOPPER_CONFIG_PATH);
+        List<CSVRecord> records = assertAllGeometriesIntersect(new GeometryFactory().createPolygon(new Coordinate[]{
+                new Coordinate(-94.72, 38.95), new Coordinate(-94.68, 38.95),
+                new Coordinate(-94.70, 38.97), new Coordinate(-94.72, 38.95)}));
+        assertTrue(records.size() > 0);
+        assertTrue(records.size() < 1869);
+    }
+
+    private List<CSVRecord> assertAllGeometriesIntersect(Geometry area) throws IOException {
+        File outputLocation = new File(GRAPH_FILES_DIR + "street_edges.csv");
+        CSVParser parser = CSVParser.parse(outputLocation, StandardCharsets.UTF_8, CSVFormat.DEFAULT.withFirstRecordAsHeader());
+        List<CSVRecord> records = parser.getRecords();
+        WKTReader wktReader = new WKTReader();
+        for (CSVRecord record : records) {
+            try {
+                Geometry geometry = wktReader.read(record.get("geometry"));
+                assertTrue(area.intersects(geometry), "Edge " + record.get("stableEdgeId") + " doesn't intersect export area");
+            } catch (ParseException e) {
+                throw new AssertionError("Invalid geometry for edge " + record.get("stableEdgeId"), e);
+            }
+        }
+        return records;
+    }
+
+    @Test
+    public void testDiffAgainstIdenticalExportIsEmpty() throws IOException {
+        cli.run("export", TEST_GRAPHHOPPER_CONFIG_PATH);
+        File previousExport = new File(TRANSIT_DATA_DIR + "previous_street_edges.csv");
+        Files.copy(new File(GRAPH_FILES_DIR + "street_edges.csv").toPath(), previousExport.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+
+        cli.run("export", "--diff-against=" + previousExport.getPath(), TEST_GRAPHHOPPER_CONFIG_PATH);
+        File diffOutputLocation = new File(GRAPH_FILES_DIR + "street_edges_diff.csv");
+        CSVParser parser = CSVParser.parse(diffOutputLocation, StandardCharsets.UTF_8, CSVFormat.DEFAULT.withFirstRecordAsHeader());
+        assertEquals(0, parser.getRecords().size());
+    }
+
+    @Test
+    public void testDiffAgainstEditedExport() throws IOException {
+        // A small sort chunk size makes the diff spill sorted chunks to disk and merge them
+        File smallChunkConfig = writeConfigWithSmallSortChunks();
+        cli.run("export", TEST_GRAPHHOPPER_CONFIG_PATH);
+        CSVParser exportParser = CSVParser.parse(new File(GRAPH_FILES_DIR + "street_edges.csv"), StandardCharsets.UTF_8,
+                CSVFormat.DEFAULT.withFirstRecordAsHeader());
+        List<String> headers = exportParser.getHeaderNames();
+        List<CSVRecord> exportedRecords = exportParser.getRecords();
+        Set<String> exportedIds = exportedRecords.stream().map(r -> r.get("stableEdgeId")).collect(Collectors.toSet());
+
+        // Drop one row (so it's ADDED in the current graph), change another's street name (so it's CHANGED), and add
+        // a row for an edge that isn't in the graph (so it's REMOVED)
+        CSVRecord droppedRecord = exportedRecords.get(10);
+        CSVRecord changedRecord = exportedRecords.get(500);
+        String removedId = "12345";
+        assertFalse(exportedIds.contains(removedId));
+        File previousExport = new File(TRANSIT_DATA_DIR + "edited_street_edges.csv");
+        try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(previousExport.toPath(), StandardCharsets.UTF_8),
+                CSVFormat.DEFAULT.withHeader(headers.toArray(new String[0])))) {
+            for (CSVRecord record : exportedRecords) {
+                if (record == droppedRecord) {
+                    continue;
+                }
+                List<String> values = new ArrayList<>();
+                record.forEach(values::add);
+                if (record == changedRecord) {
+                    values.set(headers.indexOf("streetName"), "Edited Street");
+                }
+                printer.printRecord(values);
+            }
+            List<String> removedValues = new ArrayList<>();
+            changedRecord.forEach(removedValues::add);
+            removedValues.set(headers.indexOf("stableEdgeId"), removedId);
+            printer.printRecord(removedValues);
+        }
+
+        cli.run("export", "--diff-against=" + previousExport.getPath(), smallChunkConfig.getPath());
+        CSVParser diffParser = CSVParser.parse(new File(GRAPH_FILES_DIR + "street_edges_diff.csv"), StandardCharsets.UTF_8,
+                CSVFormat.DEFAULT.withFirstRecordAsHeader());
+        Map<String, CSVRecord> diffRecordsByChange = new HashMap<>();
+        for (CSVRecord record : diffParser.getRecords()) {
+            assertNull(diffRecordsByChange.put(record.get("change"), record), "Expected one row per change type");
+        }
+        assertEquals(3, diffRecordsByChange.size());
+
+        CSVRecord added = diffRecordsByChange.get(StreetEdgeDiffExporter.Change.ADDED.name());
+        assertEquals(droppedRecord.toMap(), withoutChangeColumn(added));
+
+        CSVRecord removed = diffRecordsByChange.get(StreetEdgeDiffExporter.Change.REMOVED.name());
+        Map<String, String> expectedRemoved = changedRecord.toMap();
+        expectedRemoved.put("stableEdgeId", removedId);
+        assertEquals(expectedRemoved, withoutChangeColumn(removed));
+
+        CSVRecord changed = diffRecordsByChange.get(StreetEdgeDiffExporter.Change.CHANGED.name());
+        assertEquals(changedRecord.toMap(), withoutChangeColumn(changed));
+    }
+
+    @Test
+    public void testDiffPairsRowsWithSharedStableIds() throws IOException {
+        cli.run("export", TEST_GRAPHHOPPER_CONFIG_PATH);
+        CSVParser exportParser = CSVParser.parse(new File(GRAPH_FILES_DIR + "street_edges.csv"), StandardCharsets.UTF_8,
+                CSVFormat.DEFAULT.withFirstRecordAsHeader());
+        List<String> headers = exportParser.getHeaderNames();
+        List<CSVRecord> exportedRecords = exportParser.getRecords();
+
+        // Give the previous export two extra rows with the same stable ID as an existing one, as parallel edges have:
+        // one for another OSM way that sorts before it, and one that's identical apart from its GH vertices. Both are
+        // REMOVED, without shifting the pairing of the original row, which is unchanged
+        CSVRecord sharedRecord = exportedRecords.get(100);
+        List<String> otherWayValues = new ArrayList<>();
+        sharedRecord.forEach(otherWayValues::add);
+        otherWayValues.set(headers.indexOf("osmid"), "0");
+        otherWayValues.set(headers.indexOf("streetName"), "Parallel Street");
+        List<String> otherVerticesValues = new ArrayList<>();
+        sharedRecord.forEach(otherVerticesValues::add);
+        otherVerticesValues.set(headers.indexOf("startVertex"), "-1");
+        otherVerticesValues.set(headers.indexOf("endVertex"), "-2");
+        File previousExport = new File(TRANSIT_DATA_DIR + "shared_id_street_edges.csv");
+        try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(previousExport.toPath(), StandardCharsets.UTF_8),
+                CSVFormat.DEFAULT.withHeader(headers.toArray(new String[0])))) {
+            for (CSVRecord record : exportedRecords) {
+                printer.printRecord(record);
+            }
+            printer.printRecord(otherWayValues);
+            printer.printRecord(otherVerticesValues);
+        }
+
+        Optional<Throwable> error = cli.run("export", "--diff-against=" + previousExport.getPath(), TEST_GRAPHHOPPER_CONFIG_PATH);
+        assertFalse(error.isPresent());
+        CSVParser diffParser = CSVParser.parse(new File(GRAPH_FILES_DIR + "street_edges_diff.csv"), StandardCharsets.UTF_8,
+                CSVFormat.DEFAULT.withFirstRecordAsHeader());
+        List<CSVRecord> diffRecords = diffParser.getRecords();
+        assertEquals(2, diffRecords.size());
+        for (CSVRecord record : diffRecords) {
+            assertEquals(StreetEdgeDiffExporter.Change.REMOVED.name(), record.get("change"));
+            assertEquals(sharedRecord.get("stableEdgeId"), record.get("stableEdgeId"));
+        }
+        // In sort order, by OSM way ID. Either of the two copies of the original edge may be the one left over
+        assertEquals("Parallel Street", diffRecords.get(0).get("streetName"));
+        assertEquals(sharedRecord.get("osmid"), diffRecords.get(1).get("osmid"));
+        assertEquals(sharedRecord.get("geometry"), diffRecords.get(1).get("geometry"));
+        assertEquals(sharedRecord.get("streetName"), diffRecords.get(1).get("streetName"));
+
+        // and the current graph's own rows with shared stable IDs, if any, pair up with themselves
+        Files.copy(new File(GRAPH_FILES_DIR + "street_edges.csv").toPath(), previousExport.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        cli.run("export", "--diff-against=" + previousExport.getPath(), TEST_GRAPHHOPPER_CONFIG_PATH);
+        diffParser = CSVParser.parse(new File(GRAPH_FILES_DIR + "street_edges_diff.csv"), StandardCharsets.UTF_8,
+                CSVFormat.DEFAULT.withFirstRecordAsHeader());
+        assertEquals(0, diffParser.getRecords().size());
+    }
+
+    private static File writeConfigWithSmallSortChunks() throws IOException {
+        String config = new String(Files.readAllBytes(new File(TEST_GRAPHHOPPER_CONFIG_PATH).toPath()), StandardCharsets.UTF_8);
+        File smallChunkConfig = new File(TRANSIT_DATA_DIR + "small_sort_chunks_config.yaml");
+        Files.write(smallChunkConfig.toPath(), config.replace("graphhopper:\n",
+                "graphhopper:\n  export.diff.sort_chunk_rows: 100\n").getBytes(StandardCharsets.UTF_8));
+        return smallChunkConfig;
+    }
+
+    private static Map<String, String> withoutChangeColumn(CSVRecord diffRecord) {
+        Map<String, String> values = diffRecord.toMap();
+        values.remove("change");
+        return values;
+    }
+
     @Test
     public void testExportSingleRecord() throws Exception {
         // TODO copied from ExportCommand
@@ -65,4 +273,63 @@ public class StreetEdgeExporterTest extends ReplicaGraphHopperTest {
         assertEquals(record0.startLat, record1.endLat);
         assertEquals(record0.startLon, record1.endLon);
     }
+
+    @Test
+    public void testExportMatchesPerEdgeRecords() throws IOException {
+        // The export command's loop memoizes per-way values and reuses records; it must write the same rows as
+        // calling the allocating generateRecords() for each edge
+        cli.run("export", TEST_GRAPHHOPPER_CONFIG_PATH);
+        CSVParser parser = CSVParser.parse(new File(GRAPH_FILES_DIR + "street_edges.csv"), StandardCharsets.UTF_8,
+                CSVFormat.DEFAULT.withFirstRecordAsHeader());
+        List<CSVRecord> exportedRecords = parser.getRecords();
+
+        DB db = DBMaker.newFileDB(new File(TRANSIT_DATA_DIR + "osm_info.db")).readOnly().make();
+        try {
+            StreetEdgeExporter exporter = new StreetEdgeExporter(graphHopperManaged.getGraphHopper(),
+                    db.getHashMap("osmIdToLaneTags"), db.getHashMap("ghIdToOsmId"), db.getHashMap("osmIdToAccessFlags"),
+                    db.getHashMap("osmIdToStreetName"), db.getHashMap("osmIdToHighway"));
+            AllEdgesIterator edgeIterator = graphHopperManaged.getGraphHopper().getGraphHopperStorage().getAllEdges();
+            int row = 0;
+            while (edgeIterator.next()) {
+                for (StreetEdgeExportRecord record : exporter.generateRecords(edgeIterator)) {
+                    assertTrue(row < exportedRecords.size(), "More records than exported rows");
+                    CSVRecord exported = exportedRecords.get(row++);
+                    List<String> exportedValues = new ArrayList<>();
+                    for (int i = 0; i < STANDARD_COLUMN_COUNT; i++) {
+                        exportedValues.add(exported.get(i));
+                    }
+                    assertEquals(csvValues(record), exportedValues, "Row " + row);
+                }
+            }
+            assertEquals(exportedRecords.size(), row);
+        } finally {
+            db.close();
+        }
+    }
+
+    private static List<String> csvValues(StreetEdgeExportRecord r) {
+        return Arrays.asList(r.edgeId, String.valueOf(r.startVertexId), String.valueOf(r.endVertexId),
+                String.valueOf(r.startLat), String.valueOf(r.startLon), String.valueOf(r.endLat), String.valueOf(r.endLon),
+                nullToEmpty(r.geometryString), nullToEmpty(r.streetName), String.valueOf(r.distanceMillimeters),
+                String.valueOf(r.osmId), String.valueOf(r.speedCms), nullToEmpty(r.flags), String.valueOf(r.lanes),
+                nullToEmpty(r.highwayTag));
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    @Test
+    public void testWktWriterMatchesJtsOutput() {
+        GraphHopperStorage graphHopperStorage = graphHopperManaged.getGraphHopper().getGraphHopperStorage();
+        AllEdgesIterator edgeIterator = graphHopperStorage.getAllEdges();
+        LineStringWktWriter wktWriter = new LineStringWktWriter();
+        while (edgeIterator.next()) {
+            PointList wayGeometry = edgeIterator.fetchWayGeometry(FetchMode.ALL);
+            wktWriter.setGeometry(wayGeometry);
+            assertEquals(wayGeometry.toLineString(false).toString(), wktWriter.write(false));
+            wayGeometry.reverse();
+            assertEquals(wayGeometry.toLineString(false).toString(), wktWriter.write(true));
+        }
+    }
 }
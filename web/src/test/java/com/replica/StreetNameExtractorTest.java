@@ -0,0 +1,80 @@
+package com.replica;
+
+import com.google.common.collect.Maps;
+import com.graphhopper.osminfo.StreetNameExtractor;
+import com.graphhopper.reader.ReaderRelation;
+import com.graphhopper.reader.ReaderWay;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class StreetNameExtractorTest {
+
+    @Test
+    public void testBackfillsNamesFromFirstRoadRelation() {
+        StreetNameExtractor extractor = new StreetNameExtractor();
+        Map<Long, String> osmIdToStreetName = Maps.newHashMap();
+        // Way 1 is unnamed and in two named road relations; way 2 has its own name
+        for (ReaderWay way : new ReaderWay[]{way(1, null), way(2, "Main Street"), way(3, null), way(4, null), way(5, null)}) {
+            String name = extractor.extract(way);
+            if (name != null) {
+                osmIdToStreetName.put(way.getId(), name);
+            }
+        }
+
+        extractor.onRelation(relation(10, "road", "name", "First Road", 1, 2));
+        extractor.onRelation(relation(11, "road", "name", "Second Road", 1, 3));
+        extractor.onRelation(relation(12, "bus", "name", "Bus Route", 4));
+        extractor.onRelation(relation(13, "road", "ref", "US 69", 4));
+        extractor.finish(osmIdToStreetName);
+
+        assertEquals("First Road", osmIdToStreetName.get(1L));
+        assertEquals("Main Street", osmIdToStreetName.get(2L));
+        assertEquals("Second Road", osmIdToStreetName.get(3L));
+        assertEquals("US 69", osmIdToStreetName.get(4L));
+        assertFalse(osmIdToStreetName.containsKey(5L));
+    }
+
+    @Test
+    public void testBackfillsNamesForLargeRelations() {
+        // More members than the initial capacity of the member arrays
+        long[] memberWayIds = new long[3000];
+        for (int i = 0; i < memberWayIds.length; i++) {
+            memberWayIds[i] = 1000 + i;
+        }
+        StreetNameExtractor extractor = new StreetNameExtractor();
+        extractor.onRelation(relation(10, "road", "name", "Long Road", memberWayIds));
+        Map<Long, String> osmIdToStreetName = Maps.newHashMap();
+        extractor.finish(osmIdToStreetName);
+
+        assertEquals(memberWayIds.length, osmIdToStreetName.size());
+        for (long memberWayId : memberWayIds) {
+            assertEquals("Long Road", osmIdToStreetName.get(memberWayId));
+        }
+    }
+
+    private static ReaderWay way(long id, String name) {
+        ReaderWay way = new ReaderWay(id);
+        way.setTag("highway", "residential");
+        if (name != null) {
+            way.setTag("name", name);
+        }
+        return way;
+    }
+
+    private static ReaderRelation relation(long id, String route, String nameTag, String name, long... memberWayIds) {
+        ReaderRelation relation = new ReaderRelation(id);
+        relation.setTag("type", "route");
+        relation.setTag("route", route);
+        relation.setTag(nameTag, name);
+        for (long memberWayId : memberWayIds) {
+            relation.add(new ReaderRelation.Member(ReaderRelation.Member.WAY, memberWayId, ""));
+        }
+        // A node member, which should be ignored
+        relation.add(new ReaderRelation.Member(ReaderRelation.Member.NODE, 100 + id, "stop"));
+        return relation;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2020  Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.grpcweb;
+
+import com.google.protobuf.StringValue;
+import io.grpc.CallOptions;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GrpcServiceConnectionManagerTest {
+  private static final String SERVICE_NAME = "test.Echo";
+  private static final MethodDescriptor<StringValue, StringValue> ECHO_METHOD =
+      MethodDescriptor.<StringValue, StringValue>newBuilder()
+          .setType(MethodDescriptor.MethodType.UNARY)
+          .setFullMethodName(MethodDescriptor.generateFullMethodName(SERVICE_NAME, "Echo"))
+          .setRequestMarshaller(ProtoUtils.marshaller(StringValue.getDefaultInstance()))
+          .setResponseMarshaller(ProtoUtils.marshaller(StringValue.getDefaultInstance()))
+          .build();
+
+  private final Set<SocketAddress> mRemoteAddresses = ConcurrentHashMap.newKeySet();
+  private Server mServer;
+
+  private static ServerServiceDefinition echoService() {
+    return ServerServiceDefinition.builder(SERVICE_NAME)
+        .addMethod(ECHO_METHOD, ServerCalls.asyncUnaryCall((request, responseObserver) -> {
+          responseObserver.onNext(request);
+          responseObserver.onCompleted();
+        }))
+        .build();
+  }
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    // Records the client end of the connection each call arrives on
+    ServerInterceptor remoteAddressRecorder = new ServerInterceptor() {
+      @Override
+      public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+          Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+        mRemoteAddresses.add(call.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR));
+        return next.startCall(call, headers);
+      }
+    };
+    mServer = NettyServerBuilder.forPort(0)
+        .addService(ServerInterceptors.intercept(echoService(), remoteAddressRecorder))
+        .build()
+        .start();
+  }
+
+  @AfterEach
+  public void stopServer() throws InterruptedException {
+    mServer.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testPooledChannelsSpreadCallsOverConnections() throws Exception {
+    GrpcServiceConnectionManager connectionManager =
+        GrpcServiceConnectionManager.forPort(mServer.getPort(), 3, 2, 10_000, null);
+    List<String> callbackThreads = new CopyOnWriteArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      StringValue reply = echo(connectionManager, "call " + i,
+          () -> callbackThreads.add(Thread.currentThread().getName())).get(10, TimeUnit.SECONDS);
+      assertEquals("call " + i, reply.getValue());
+    }
+
+    // Round-robin over 3 channels, each with its own connection
+    assertEquals(3, mRemoteAddresses.size());
+    assertEquals(6, callbackThreads.size());
+    for (String callbackThread : callbackThreads) {
+      assertTrue(callbackThread.startsWith("grpc-web-proxy-"), callbackThread);
+    }
+    assertEquals(6, connectionManager.getTotalCalls());
+    assertEquals(0, connectionManager.getInFlightCalls());
+
+    connectionManager.shutdown();
+    StatusRuntimeException e = assertThrows(StatusRuntimeException.class,
+        () -> ClientCalls.blockingUnaryCall(connectionManager.getChannel(), ECHO_METHOD,
+            CallOptions.DEFAULT, StringValue.of("after shutdown")));
+    assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+  }
+
+  @Test
+  public void testInProcessCallbacksDontRunOnServiceThreads() throws Exception {
+    String serverName = InProcessServerBuilder.generateName();
+    ExecutorService serviceExecutor =
+        Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "router-service"));
+    Server inProcessServer = InProcessServerBuilder.forName(serverName)
+        .addService(echoService())
+        .executor(serviceExecutor)
+        .build()
+        .start();
+    GrpcServiceConnectionManager connectionManager =
+        GrpcServiceConnectionManager.forInProcessServer(serverName, 2, 10_000, null);
+    try {
+      // A slow browser client: its response callback blocks until released
+      CountDownLatch slowClientWriting = new CountDownLatch(1);
+      CountDownLatch releaseSlowClient = new CountDownLatch(1);
+      CompletableFuture<StringValue> slowCall = echo(connectionManager, "slow client", () -> {
+        slowClientWriting.countDown();
+        try {
+          releaseSlowClient.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      assertTrue(slowClientWriting.await(10, TimeUnit.SECONDS));
+
+      // The service's only thread is still free to serve other calls
+      List<String> callbackThreads = new CopyOnWriteArrayList<>();
+      StringValue reply = echo(connectionManager, "fast client",
+          () -> callbackThreads.add(Thread.currentThread().getName())).get(10, TimeUnit.SECONDS);
+      assertEquals("fast client", reply.getValue());
+      assertTrue(callbackThreads.get(0).startsWith("grpc-web-proxy-"), callbackThreads.get(0));
+
+      releaseSlowClient.countDown();
+      assertEquals("slow client", slowCall.get(10, TimeUnit.SECONDS).getValue());
+      assertEquals(0, connectionManager.getInFlightCalls());
+    } finally {
+      connectionManager.shutdown();
+      inProcessServer.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+      serviceExecutor.shutdownNow();
+    }
+  }
+
+  // Makes a call, running onResponse in its response callback; completes once the call is closed
+  private static CompletableFuture<StringValue> echo(
+      GrpcServiceConnectionManager connectionManager, String message, Runnable onResponse) {
+    CompletableFuture<StringValue> result = new CompletableFuture<>();
+    ClientCalls.asyncUnaryCall(
+        connectionManager.getChannel().newCall(ECHO_METHOD, CallOptions.DEFAULT),
+        StringValue.of(message),
+        new StreamObserver<StringValue>() {
+          private StringValue mReply;
+
+          @Override
+          public void onNext(StringValue value) {
+            onResponse.run();
+            mReply = value;
+          }
+
+          @Override
+          public void onError(Throwable t) {
+            result.completeExceptionally(t);
+          }
+
+          @Override
+          public void onCompleted() {
+            result.complete(mReply);
+          }
+        });
+    return result;
+  }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2020  Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.grpcweb;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.protobuf.Int32Value;
+import com.google.protobuf.StringValue;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.ServerCalls;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Proxies a server-streaming method of an in-process service through both grpc-web front ends
+ * (RequestHandler behind the servlet, and NettyGrpcWebServer), checking that each streamed message
+ * is written as its own DATA frame, and that the next message is only requested from the service
+ * once the previous one has been written to the client.
+ */
+public class GrpcWebStreamingTest {
+  private static final String BINARY = "application/grpc-web+proto";
+  private static final String TEXT = "application/grpc-web-text";
+  private static final String SERVICE_NAME = "test.Counter";
+  private static final MethodDescriptor<Int32Value, StringValue> COUNT_METHOD =
+      MethodDescriptor.<Int32Value, StringValue>newBuilder()
+          .setType(MethodDescriptor.MethodType.SERVER_STREAMING)
+          .setFullMethodName(MethodDescriptor.generateFullMethodName(SERVICE_NAME, "Count"))
+          .setRequestMarshaller(ProtoUtils.marshaller(Int32Value.getDefaultInstance()))
+          .setResponseMarshaller(ProtoUtils.marshaller(StringValue.getDefaultInstance()))
+          .build();
+
+  // Messages the service has sent, which it only does while the client is ready for more
+  private final AtomicInteger mSentMessages = new AtomicInteger();
+  private ServerServiceDefinition mService;
+  private String mServerName;
+  private Server mServer;
+  private GrpcServiceConnectionManager mConnectionManager;
+  private RequestHandler mRequestHandler;
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    // Streams "message 0" ... "message <n - 1>" for a request of n
+    mService = ServerServiceDefinition.builder(SERVICE_NAME)
+        .addMethod(COUNT_METHOD, ServerCalls.asyncServerStreamingCall((request, responseObserver) -> {
+          ServerCallStreamObserver<StringValue> serverObserver =
+              (ServerCallStreamObserver<StringValue>) responseObserver;
+          serverObserver.setOnReadyHandler(new Runnable() {
+            private int mNext = 0;
+            private boolean mCompleted = false;
+
+            @Override
+            public void run() {
+              while (serverObserver.isReady() && mNext < request.getValue()) {
+                serverObserver.onNext(StringValue.of("message " + mNext++));
+                mSentMessages.incrementAndGet();
+              }
+              if (mNext == request.getValue() && !mCompleted) {
+                mCompleted = true;
+                serverObserver.onCompleted();
+              }
+            }
+          });
+        }))
+        .build();
+    mServerName = InProcessServerBuilder.generateName();
+    mServer = InProcessServerBuilder.forName(mServerName)
+        .addService(mService)
+        .build()
+        .start();
+    mConnectionManager =
+        GrpcServiceConnectionManager.forInProcessServer(mServerName, 2, 10_000, null);
+    RpcMethodRegistry rpcMethodRegistry = new RpcMethodRegistry();
+    rpcMethodRegistry.register(mService.getServiceDescriptor());
+    mRequestHandler = new RequestHandler(mConnectionManager, new MessageHandler(), rpcMethodRegistry);
+  }
+
+  @AfterEach
+  public void stopServer() throws InterruptedException {
+    mConnectionManager.shutdown();
+    mServer.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {BINARY, TEXT})
+  public void testServletWritesOneFramePerMessage(String contentType) throws Exception {
+    ServletExchange exchange = new ServletExchange(contentType, requestBody(contentType, 5), () -> {});
+    mRequestHandler.handle(exchange.mReq, exchange.mResp);
+
+    // Each message is flushed as soon as it's written, then the trailer ends the response
+    List<byte[]> segments = exchange.getFlushedSegments();
+    assertEquals(6, segments.size());
+    for (int i = 0; i < 5; i++) {
+      byte[] payload = readSingleFrame(segments.get(i), contentType, MessageFramer.Type.DATA);
+      assertEquals("message " + i, StringValue.parseFrom(payload).getValue());
+    }
+    byte[] trailer = readSingleFrame(segments.get(5), contentType, MessageFramer.Type.TRAILER);
+    assertEquals("grpc-status:0\r\n", new String(trailer, StandardCharsets.US_ASCII));
+    assertEquals(5, mSentMessages.get());
+  }
+
+  @Test
+  public void testServletRequestsOneMessageAtATime() throws Exception {
+    // A slow browser client: the first flush blocks until released
+    CountDownLatch firstFlush = new CountDownLatch(1);
+    CountDownLatch releaseClient = new CountDownLatch(1);
+    ServletExchange exchange = new ServletExchange(BINARY, requestBody(BINARY, 5), () -> {
+      firstFlush.countDown();
+      Uninterruptibles.awaitUninterruptibly(releaseClient);
+    });
+    CompletableFuture<Void> handled = CompletableFuture.runAsync(
+        () -> mRequestHandler.handle(exchange.mReq, exchange.mResp));
+    assertTrue(firstFlush.await(10, TimeUnit.SECONDS));
+
+    // Give the service time to run ahead, were it allowed to
+    Thread.sleep(200);
+    assertEquals(1, mSentMessages.get());
+
+    releaseClient.countDown();
+    handled.get(10, TimeUnit.SECONDS);
+    assertEquals(5, mSentMessages.get());
+    assertEquals(6, exchange.getFlushedSegments().size());
+    assertEquals(0, mConnectionManager.getInFlightCalls());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {BINARY, TEXT})
+  public void testNettyWritesOneChunkPerMessage(String contentType) throws Exception {
+    GrpcPortNumRelay.setInProcessServerName(mServerName, 2, 10_000, null);
+    GrpcPortNumRelay.registerServices(mService.getServiceDescriptor());
+    int port;
+    try (ServerSocket serverSocket = new ServerSocket(0)) {
+      port = serverSocket.getLocalPort();
+    }
+    EventLoopGroup eventLoopGroup = new NioEventLoopGroup(1);
+    NettyGrpcWebServer grpcWebServer =
+        new NettyGrpcWebServer(port, eventLoopGroup, eventLoopGroup, NioServerSocketChannel.class)
+            .start();
+    try (Socket socket = new Socket("localhost", port)) {
+      byte[] body = requestBody(contentType, 5);
+      OutputStream out = socket.getOutputStream();
+      out.write(("POST /api/" + COUNT_METHOD.getFullMethodName() + " HTTP/1.1\r\n"
+          + "Host: localhost\r\n"
+          + "Content-Type: " + contentType + "\r\n"
+          + "Content-Length: " + body.length + "\r\n"
+          + "Connection: close\r\n"
+          + "\r\n").getBytes(StandardCharsets.US_ASCII));
+      out.write(body);
+      out.flush();
+
+      InputStream in = socket.getInputStream();
+      assertEquals("HTTP/1.1 200 OK", readLine(in));
+      List<String> headers = new ArrayList<>();
+      for (String header = readLine(in); !header.isEmpty(); header = readLine(in)) {
+        headers.add(header.toLowerCase());
+      }
+      assertTrue(headers.contains("transfer-encoding: chunked"), headers.toString());
+
+      // One HTTP chunk per message, then one for the trailer
+      List<byte[]> chunks = readChunks(in);
+      assertEquals(6, chunks.size());
+      for (int i = 0; i < 5; i++) {
+        byte[] payload = readSingleFrame(chunks.get(i), contentType, MessageFramer.Type.DATA);
+        assertEquals("message " + i, StringValue.parseFrom(payload).getValue());
+      }
+      byte[] trailer = readSingleFrame(chunks.get(5), contentType, MessageFramer.Type.TRAILER);
+      assertEquals("grpc-status:0\r\n", new String(trailer, StandardCharsets.US_ASCII));
+      assertEquals(5, mSentMessages.get());
+    } finally {
+      grpcWebServer.stop();
+      GrpcPortNumRelay.shutdown();
+      eventLoopGroup.shutdownGracefully().sync();
+    }
+  }
+
+  private static byte[] requestBody(String contentType, int count) {
+    byte[] message = Int32Value.of(count).toByteArray();
+    byte[] frame = new byte[MessageFramer.PREFIX_LENGTH + message.length];
+    MessageFramer.writePrefix(frame, MessageFramer.Type.DATA, message.length);
+    System.arraycopy(message, 0, frame, MessageFramer.PREFIX_LENGTH, message.length);
+    return TEXT.equals(contentType) ? Base64.getEncoder().encode(frame) : frame;
+  }
+
+  // Checks that bytes hold exactly one (separately encoded, for grpc-web-text) frame of the given
+  // type, and returns its payload
+  private static byte[] readSingleFrame(byte[] bytes, String contentType, MessageFramer.Type type) {
+    byte[] frame = TEXT.equals(contentType) ? Base64.getDecoder().decode(bytes) : bytes;
+    assertTrue(frame.length >= MessageFramer.PREFIX_LENGTH);
+    assertEquals(type.value, frame[0]);
+    int length = ((frame[1] & 0xff) << 24) | ((frame[2] & 0xff) << 16) | ((frame[3] & 0xff) << 8)
+        | (frame[4] & 0xff);
+    assertEquals(MessageFramer.PREFIX_LENGTH + length, frame.length);
+    return Arrays.copyOfRange(frame, MessageFramer.PREFIX_LENGTH, frame.length);
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != '\n') {
+      if (b == -1) {
+        throw new IOException("unexpected end of response");
+      }
+      line.write(b);
+    }
+    String s = line.toString("US-ASCII");
+    return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+  }
+
+  // Reads the chunks of a chunked HTTP response body, up to the terminating empty chunk
+  private static List<byte[]> readChunks(InputStream in) throws IOException {
+    List<byte[]> chunks = new ArrayList<>();
+    while (true) {
+      String sizeLine = readLine(in);
+      int extension = sizeLine.indexOf(';');
+      int size = Integer.parseInt(extension < 0 ? sizeLine : sizeLine.substring(0, extension), 16);
+      if (size == 0) {
+        return chunks;
+      }
+      byte[] chunk = new byte[size];
+      int read = 0;
+      while (read < size) {
+        int n = in.read(chunk, read, size - read);
+        if (n == -1) {
+          throw new IOException("unexpected end of response");
+        }
+        read += n;
+      }
+      assertEquals("", readLine(in));
+      chunks.add(chunk);
+    }
+  }
+
+  /**
+   * A mock servlet request for the Count method, and a response that records its body and where
+   * it was flushed.
+   */
+  private static class ServletExchange {
+    final HttpServletRequest mReq = mock(HttpServletRequest.class);
+    final HttpServletResponse mResp = mock(HttpServletResponse.class);
+    private final ByteArrayOutputStream mBody = new ByteArrayOutputStream();
+    // Length of the response body at each flush
+    private final List<Integer> mFlushes = new CopyOnWriteArrayList<>();
+
+    ServletExchange(String contentType, byte[] requestBody, Runnable onFlush) throws IOException {
+      ByteArrayInputStream in = new ByteArrayInputStream(requestBody);
+      when(mReq.getContentType()).thenReturn(contentType);
+      when(mReq.getPathInfo()).thenReturn("/" + COUNT_METHOD.getFullMethodName());
+      when(mReq.getContentLength()).thenReturn(requestBody.length);
+      when(mReq.getHeaderNames()).thenReturn(Collections.<String>emptyEnumeration());
+      when(mReq.getInputStream()).thenReturn(new ServletInputStream() {
+        @Override
+        public int read() {
+          return in.read();
+        }
+
+        @Override
+        public boolean isFinished() {
+          return in.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+          return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+        }
+      });
+      when(mResp.getOutputStream()).thenReturn(new ServletOutputStream() {
+        @Override
+        public void write(int b) {
+          mBody.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+          mBody.write(b, off, len);
+        }
+
+        @Override
+        public boolean isReady() {
+          return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+      });
+      doAnswer(invocation -> {
+        mFlushes.add(mBody.size());
+        onFlush.run();
+        return null;
+      }).when(mResp).flushBuffer();
+    }
+
+    /**
+     * Returns the response body split at each flush, followed by whatever was written after the
+     * last flush.
+     */
+    List<byte[]> getFlushedSegments() {
+      byte[] body = mBody.toByteArray();
+      List<byte[]> segments = new ArrayList<>();
+      int start = 0;
+      for (int flush : mFlushes) {
+        segments.add(Arrays.copyOfRange(body, start, flush));
+        start = flush;
+      }
+      segments.add(Arrays.copyOfRange(body, start, body.length));
+      return segments;
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2020  Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.grpcweb;
+
+import com.google.common.base.Strings;
+import com.google.protobuf.StringValue;
+import io.grpcweb.MessageHandler.ContentType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessageDeframerTest {
+  private static final byte TRAILER_BYTE = (byte) 0x80;
+  private static final StringValue MESSAGE = StringValue.of("a message split across frames");
+
+  @Test
+  public void testReadsSingleFrame() throws IOException {
+    byte[] body = frame(MessageDeframer.DATA_BYTE, MESSAGE.toByteArray());
+    MessageDeframer deframer = new MessageDeframer();
+
+    assertTrue(deframer.processInput(new ByteArrayInputStream(body), ContentType.GRPC_WEB_BINARY, body.length));
+    assertEquals(1, deframer.getNumberOfFrames());
+    assertEquals(MESSAGE.getSerializedSize(), deframer.getLength());
+    assertEquals(MESSAGE, StringValue.parseFrom(deframer.newMessageInput()));
+    assertArrayEquals(MESSAGE.toByteArray(), deframer.getMessageBytes());
+  }
+
+  @Test
+  public void testConcatenatesFrames() throws IOException {
+    byte[] body = splitIntoFrames(MESSAGE.toByteArray(), 3);
+    MessageDeframer deframer = new MessageDeframer();
+
+    assertTrue(deframer.processInput(new ByteArrayInputStream(body), ContentType.GRPC_WEB_BINARY, -1));
+    assertEquals(3, deframer.getNumberOfFrames());
+    assertEquals(MESSAGE.getSerializedSize(), deframer.getLength());
+    assertEquals(MESSAGE, StringValue.parseFrom(deframer.newMessageInput()));
+    assertArrayEquals(MESSAGE.toByteArray(), deframer.getMessageBytes());
+  }
+
+  @Test
+  public void testDecodesGrpcWebText() throws IOException {
+    byte[] body = Base64.getEncoder().encode(splitIntoFrames(MESSAGE.toByteArray(), 2));
+    MessageDeframer deframer = new MessageDeframer();
+
+    assertTrue(deframer.processInput(new ByteArrayInputStream(body), ContentType.GRPC_WEB_TEXT, body.length));
+    assertEquals(2, deframer.getNumberOfFrames());
+    assertEquals(MESSAGE, StringValue.parseFrom(deframer.newMessageInput()));
+  }
+
+  @Test
+  public void testRejectsInvalidGrpcWebText() {
+    byte[] body = "not base64!".getBytes(StandardCharsets.US_ASCII);
+    assertFalse(new MessageDeframer().processInput(new ByteArrayInputStream(body), ContentType.GRPC_WEB_TEXT, body.length));
+  }
+
+  @Test
+  public void testRejectsTruncatedFrames() {
+    byte[] frame = frame(MessageDeframer.DATA_BYTE, MESSAGE.toByteArray());
+    // Shorter than a frame prefix
+    assertFalse(process(Arrays.copyOf(frame, 4)));
+    // Fewer message bytes than the prefix says
+    assertFalse(process(Arrays.copyOf(frame, frame.length - 1)));
+
+    // A complete frame followed by a truncated one: only the complete frame is read
+    byte[] second = frame(MessageDeframer.DATA_BYTE, MESSAGE.toByteArray());
+    MessageDeframer deframer = new MessageDeframer();
+    assertTrue(deframer.processInput(new ByteArrayInputStream(concat(frame, Arrays.copyOf(second, 8))),
+        ContentType.GRPC_WEB_BINARY, -1));
+    assertEquals(1, deframer.getNumberOfFrames());
+    assertArrayEquals(MESSAGE.toByteArray(), deframer.getMessageBytes());
+  }
+
+  @Test
+  public void testStopsAtNonDataFrame() throws IOException {
+    byte[] trailer = frame(TRAILER_BYTE, "grpc-status:0\r\n".getBytes(StandardCharsets.US_ASCII));
+    MessageDeframer deframer = new MessageDeframer();
+    assertTrue(deframer.processInput(
+        new ByteArrayInputStream(concat(frame(MessageDeframer.DATA_BYTE, MESSAGE.toByteArray()), trailer)),
+        ContentType.GRPC_WEB_BINARY, -1));
+    assertEquals(1, deframer.getNumberOfFrames());
+    assertEquals(MESSAGE, StringValue.parseFrom(deframer.newMessageInput()));
+
+    // No DATA frame before it
+    assertFalse(process(concat(trailer, frame(MessageDeframer.DATA_BYTE, MESSAGE.toByteArray()))));
+  }
+
+  @Test
+  public void testIgnoresWrongSizeHint() throws IOException {
+    StringValue large = StringValue.of(Strings.repeat("x", 200_000));
+    byte[] body = frame(MessageDeframer.DATA_BYTE, large.toByteArray());
+    for (int sizeHint : new int[] {-1, 0, 10, body.length, Integer.MAX_VALUE}) {
+      MessageDeframer deframer = new MessageDeframer();
+      assertTrue(deframer.processInput(new ByteArrayInputStream(body), ContentType.GRPC_WEB_BINARY, sizeHint));
+      assertEquals(large, StringValue.parseFrom(deframer.newMessageInput()));
+    }
+  }
+
+  @Test
+  public void testRejectsInputOverLimit() {
+    // A single frame claiming to hold all the bytes, which are zeros
+    byte[] prefix = frame(MessageDeframer.DATA_BYTE, new byte[0]);
+    int length = MessageDeframer.MAX_INPUT_BYTES + 1 - prefix.length;
+    prefix[1] = (byte) (length >>> 24);
+    prefix[2] = (byte) (length >>> 16);
+    prefix[3] = (byte) (length >>> 8);
+    prefix[4] = (byte) length;
+    assertFalse(new MessageDeframer().processInput(new PrefixedZeros(prefix, MessageDeframer.MAX_INPUT_BYTES + 1),
+        ContentType.GRPC_WEB_BINARY, MessageDeframer.MAX_INPUT_BYTES + 1));
+
+    // but a body of exactly the limit is read
+    length--;
+    prefix[4] = (byte) length;
+    MessageDeframer deframer = new MessageDeframer();
+    assertTrue(deframer.processInput(new PrefixedZeros(prefix, MessageDeframer.MAX_INPUT_BYTES),
+        ContentType.GRPC_WEB_BINARY, -1));
+    assertEquals(length, deframer.getLength());
+  }
+
+  private static boolean process(byte[] body) {
+    return new MessageDeframer().processInput(new ByteArrayInputStream(body), ContentType.GRPC_WEB_BINARY, body.length);
+  }
+
+  private static byte[] frame(byte type, byte[] message) {
+    byte[] frame = new byte[message.length + 5];
+    frame[0] = type;
+    frame[1] = (byte) (message.length >>> 24);
+    frame[2] = (byte) (message.length >>> 16);
+    frame[3] = (byte) (message.length >>> 8);
+    frame[4] = (byte) message.length;
+    System.arraycopy(message, 0, frame, 5, message.length);
+    return frame;
+  }
+
+  private static byte[] splitIntoFrames(byte[] message, int frames) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int frameLength = (message.length + frames - 1) / frames;
+    for (int offset = 0; offset < message.length; offset += frameLength) {
+      byte[] frame = frame(MessageDeframer.DATA_BYTE,
+          Arrays.copyOfRange(message, offset, Math.min(offset + frameLength, message.length)));
+      out.write(frame, 0, frame.length);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] concat(byte[] first, byte[] second) {
+    byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, bytes, first.length, second.length);
+    return bytes;
+  }
+
+  /** The given prefix followed by zeros, up to length bytes in all */
+  private static class PrefixedZeros extends InputStream {
+    private final byte[] mPrefix;
+    private final int mLength;
+    private int mPosition = 0;
+
+    PrefixedZeros(byte[] prefix, int length) {
+      mPrefix = prefix;
+      mLength = length;
+    }
+
+    @Override
+    public int read() {
+      if (mPosition == mLength) {
+        return -1;
+      }
+      int b = mPosition < mPrefix.length ? mPrefix[mPosition] & 0xff : 0;
+      mPosition++;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (mPosition == mLength) {
+        return -1;
+      }
+      int n = Math.min(len, mLength - mPosition);
+      for (int i = 0; i < n; i++) {
+        b[off + i] = mPosition + i < mPrefix.length ? mPrefix[mPosition + i] : 0;
+      }
+      mPosition += n;
+      return n;
+    }
+  }
+}
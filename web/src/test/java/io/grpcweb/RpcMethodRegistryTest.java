@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020  Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.grpcweb;
+
+import com.google.protobuf.StringValue;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServiceDescriptor;
+import io.grpc.protobuf.ProtoUtils;
+import org.junit.jupiter.api.Test;
+import router.RouterGrpc;
+import router.RouterOuterClass.Point;
+import router.RouterOuterClass.StreetRouteRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class RpcMethodRegistryTest {
+  private static final MethodDescriptor.Marshaller<String> STRING_MARSHALLER =
+      new MethodDescriptor.Marshaller<String>() {
+        @Override
+        public InputStream stream(String value) {
+          return new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String parse(InputStream stream) {
+          throw new UnsupportedOperationException();
+        }
+      };
+
+  @Test
+  public void testLooksUpRegisteredMethodsInEitherCase() throws Exception {
+    RpcMethodRegistry registry = new RpcMethodRegistry();
+    registry.register(RouterGrpc.getServiceDescriptor());
+
+    RpcMethodRegistry.RpcMethod method = registry.lookup("router.Router/RouteStreetMode");
+    assertNotNull(method);
+    assertSame(RouterGrpc.getRouteStreetModeMethod(), method.getDescriptor());
+    // grpc-web clients may send the method name as it's named in the generated stub
+    assertSame(method, registry.lookup("router.Router/routeStreetMode"));
+
+    StreetRouteRequest request = StreetRouteRequest.newBuilder()
+        .addPoints(Point.newBuilder().setLat(38.96).setLon(-94.70).build())
+        .setProfile("car")
+        .build();
+    assertEquals(request, method.getRequestParser().parseFrom(request.toByteArray()));
+
+    for (MethodDescriptor<?, ?> descriptor : RouterGrpc.getServiceDescriptor().getMethods()) {
+      assertSame(descriptor, registry.lookup(descriptor.getFullMethodName()).getDescriptor());
+    }
+  }
+
+  @Test
+  public void testFindsUnregisteredServiceByItsGrpcClass() {
+    RpcMethodRegistry registry = new RpcMethodRegistry();
+
+    RpcMethodRegistry.RpcMethod method = registry.lookup("router.Router/routePt");
+    assertNotNull(method);
+    assertSame(RouterGrpc.getRoutePtMethod(), method.getDescriptor());
+    // and registers the rest of the service's methods along with it
+    assertSame(RouterGrpc.getRouteMatrixMethod(), registry.lookup("router.Router/RouteMatrix").getDescriptor());
+  }
+
+  @Test
+  public void testUnknownMethodsAreNull() {
+    RpcMethodRegistry registry = new RpcMethodRegistry();
+    registry.register(RouterGrpc.getServiceDescriptor());
+
+    assertNull(registry.lookup("no.such.Service/Call"));
+    assertNull(registry.lookup("router.Router/NoSuchMethod"));
+    assertNull(registry.lookup("router.Router/"));
+    assertNull(registry.lookup("router.Router"));
+    assertNull(registry.lookup(""));
+  }
+
+  @Test
+  public void testSkipsNonProtobufMethods() {
+    MethodDescriptor<String, String> stringMethod = MethodDescriptor.<String, String>newBuilder()
+        .setType(MethodDescriptor.MethodType.UNARY)
+        .setFullMethodName(MethodDescriptor.generateFullMethodName("test.Mixed", "Strings"))
+        .setRequestMarshaller(STRING_MARSHALLER)
+        .setResponseMarshaller(STRING_MARSHALLER)
+        .build();
+    MethodDescriptor<StringValue, StringValue> protoMethod = MethodDescriptor.<StringValue, StringValue>newBuilder()
+        .setType(MethodDescriptor.MethodType.UNARY)
+        .setFullMethodName(MethodDescriptor.generateFullMethodName("test.Mixed", "Proto"))
+        .setRequestMarshaller(ProtoUtils.marshaller(StringValue.getDefaultInstance()))
+        .setResponseMarshaller(ProtoUtils.marshaller(StringValue.getDefaultInstance()))
+        .build();
+    RpcMethodRegistry registry = new RpcMethodRegistry();
+    registry.register(ServiceDescriptor.newBuilder("test.Mixed")
+        .addMethod(stringMethod)
+        .addMethod(protoMethod)
+        .build());
+
+    assertNull(registry.lookup("test.Mixed/Strings"));
+    assertSame(protoMethod, registry.lookup("test.Mixed/proto").getDescriptor());
+  }
+}